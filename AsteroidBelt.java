@@ -0,0 +1,107 @@
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import com.jogamp.common.nio.Buffers;
+
+/**
+ * A belt or ring of particles around a body, declared in the .sol file.
+ *
+ * Particles are not bodies: they have no mass, no texture and nothing orbits
+ * them, so there can be millions of them. Each moves on its own circle in the
+ * body's orbit plane, between the inner and outer radius, with a small tilt that
+ * gives the belt its thickness, and with the period Kepler's third law gives its
+ * radius, starting from the inner period. That makes a particle's position a
+ * function of time alone: the renderer keeps the elements of every particle in a
+ * static buffer and the vertex shader places them each frame, so nothing is
+ * written per frame and time can run backwards or jump like it does for bodies.
+ *
+ * To keep float time precise in the shader, every particle does a whole number of
+ * orbits in the belt's repeat period, REPEAT_ORBITS inner orbits, and the shader
+ * only ever sees the time modulo that period.
+ */
+public class AsteroidBelt {
+    public static final int MAX_PARTICLES = 1 << 24;
+    // floats per particle: radius, phase at time 0 in turns, turns per repeat period, tilt height, node angle
+    public static final int ELEMENT_FLOATS = 5;
+    public static final int REPEAT_ORBITS = 4096;
+    private static final double TWO_PI = 2.0 * Math.PI;
+
+    public SolarBody orbiting;
+    public int count;
+    public float innerRadius;
+    public float outerRadius;
+    public float thickness;
+    public float innerPeriod;
+    public float particleSize;
+    public float[] color;
+
+    /**
+     * @param innerPeriod orbital period at the inner radius, negative for a belt
+     *                    that turns the other way
+     * @param color       red, green and blue of the particles before lighting
+     */
+    public AsteroidBelt(SolarBody orbiting, int count, float innerRadius, float outerRadius, float thickness,
+                        float innerPeriod, float particleSize, float[] color) {
+        this.orbiting = orbiting;
+        this.count = count;
+        this.innerRadius = innerRadius;
+        this.outerRadius = outerRadius;
+        this.thickness = thickness;
+        this.innerPeriod = innerPeriod;
+        this.particleSize = particleSize;
+        this.color = color;
+    }
+
+    /** Time after which every particle is back where it started. */
+    public double getRepeatPeriod() {
+        return REPEAT_ORBITS * Math.abs((double) innerPeriod);
+    }
+
+    /**
+     * Where the given time falls in the repeat period, from 0 to 1, the time the
+     * shader works with.
+     */
+    public float repeatTime(double time) {
+        double phase = time / getRepeatPeriod();
+        return (float) (phase - Math.floor(phase));
+    }
+
+    /**
+     * The elements of every particle, ELEMENT_FLOATS each, for the vertex shader. The
+     * same seed always gives the same belt.
+     */
+    public FloatBuffer elements(long seed) {
+        Random random = new Random(seed);
+        FloatBuffer elements = Buffers.newDirectFloatBuffer(count * ELEMENT_FLOATS);
+        double innerSq = (double) innerRadius * innerRadius;
+        double outerSq = (double) outerRadius * outerRadius;
+        for (int p = 0; p < count; p++) {
+            // uniform over the belt's area, not its radius, so the inner edge is not crowded
+            double radius = Math.sqrt(innerSq + random.nextDouble() * (outerSq - innerSq));
+            double periods = Math.pow(radius / innerRadius, 1.5);
+            long turns = Math.max(1, Math.round(REPEAT_ORBITS / periods));
+            elements.put((float) radius)
+                    .put(random.nextFloat())
+                    .put(innerPeriod < 0 ? -turns : turns)
+                    .put((float) (0.5 * thickness * (random.nextDouble() + random.nextDouble() - 1)))
+                    .put((float) (random.nextDouble() * TWO_PI));
+        }
+        elements.flip();
+        return elements;
+    }
+
+    public SolarBody getParent() {
+        return orbiting;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public String toString() {
+        return "belt of " + count + " particles from " + innerRadius + " to " + outerRadius
+                + "\nthickness: " + thickness
+                + "\ninner period: " + innerPeriod
+                + "\nparticle size: " + particleSize;
+    }
+}
@@ -0,0 +1,321 @@
+import java.util.Arrays;
+
+/**
+ * Octree over point masses for Barnes-Hut gravity.
+ *
+ * Nodes live in parallel primitive arrays and are rebuilt from scratch for every
+ * set of positions. Each leaf keeps a short linked list of up to LEAF_CAPACITY
+ * bodies (more only at MAX_DEPTH, where bodies sitting on top of each other stop
+ * subdividing), and every node knows its total mass and centre of mass. Bodies
+ * then treat any node that looks smaller than theta from where they are as a
+ * single point at that centre of mass, so one acceleration costs O(log n)
+ * instead of O(n).
+ *
+ * Units have G = 1. build() is single threaded; once built, the tree is only read,
+ * so accelerations() may run on any number of threads at once.
+ */
+public class BarnesHutTree {
+    private static final int LEAF_CAPACITY = 8;
+    private static final int MAX_DEPTH = 32;
+    private static final int NONE = -1;
+
+    private int numNodes;
+    private double[] centerX = new double[64], centerY = new double[64], centerZ = new double[64];
+    private double[] halfSize = new double[64];
+    private double[] mass = new double[64];
+    private double[] comX = new double[64], comY = new double[64], comZ = new double[64];
+    private int[] firstChild = new int[64]; // the eight children are consecutive, NONE for a leaf
+    private int[] firstBody = new int[64];  // a leaf's list of bodies
+    private int[] count = new int[64];      // bodies in a leaf's list
+    private int[] depth = new int[64];
+    private int[] nextBody = new int[0];
+    private int[] leaves = new int[64];
+    private int numLeaves;
+
+    private double[] x, y, z, m;
+
+    /**
+     * Builds the tree over the first n bodies. The arrays are kept, not copied, and
+     * must not change until the tree is rebuilt.
+     */
+    public void build(double[] x, double[] y, double[] z, double[] m, int n) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.m = m;
+        if (nextBody.length < n) {
+            nextBody = new int[n];
+        }
+
+        double minX = Double.POSITIVE_INFINITY, minY = minX, minZ = minX;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, x[i]);
+            maxX = Math.max(maxX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxY = Math.max(maxY, y[i]);
+            minZ = Math.min(minZ, z[i]);
+            maxZ = Math.max(maxZ, z[i]);
+        }
+        numNodes = 0;
+        double half = Math.max(maxX - minX, Math.max(maxY - minY, maxZ - minZ)) * 0.5;
+        // a little slack so bodies on the far faces still land inside
+        half = half > 0 ? half * 1.0001 : 1;
+        newNode((minX + maxX) * 0.5, (minY + maxY) * 0.5, (minZ + maxZ) * 0.5, half, 0);
+        for (int i = 0; i < n; i++) {
+            insert(i);
+        }
+        summarize();
+        listLeaves();
+    }
+
+    private int newNode(double cx, double cy, double cz, double half, int nodeDepth) {
+        if (numNodes == centerX.length) {
+            int capacity = numNodes * 2;
+            centerX = Arrays.copyOf(centerX, capacity);
+            centerY = Arrays.copyOf(centerY, capacity);
+            centerZ = Arrays.copyOf(centerZ, capacity);
+            halfSize = Arrays.copyOf(halfSize, capacity);
+            mass = Arrays.copyOf(mass, capacity);
+            comX = Arrays.copyOf(comX, capacity);
+            comY = Arrays.copyOf(comY, capacity);
+            comZ = Arrays.copyOf(comZ, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            firstBody = Arrays.copyOf(firstBody, capacity);
+            count = Arrays.copyOf(count, capacity);
+            depth = Arrays.copyOf(depth, capacity);
+        }
+        int node = numNodes++;
+        centerX[node] = cx;
+        centerY[node] = cy;
+        centerZ[node] = cz;
+        halfSize[node] = half;
+        firstChild[node] = NONE;
+        firstBody[node] = NONE;
+        count[node] = 0;
+        depth[node] = nodeDepth;
+        return node;
+    }
+
+    private int octant(int node, int body) {
+        return (x[body] >= centerX[node] ? 1 : 0) | (y[body] >= centerY[node] ? 2 : 0) | (z[body] >= centerZ[node] ? 4 : 0);
+    }
+
+    private void insert(int body) {
+        int node = 0;
+        while (firstChild[node] != NONE) {
+            node = firstChild[node] + octant(node, body);
+        }
+        nextBody[body] = firstBody[node];
+        firstBody[node] = body;
+        if (++count[node] > LEAF_CAPACITY && depth[node] < MAX_DEPTH) {
+            split(node);
+        }
+    }
+
+    /**
+     * Turns a full leaf into eight children and hands its bodies down. A child that
+     * is still over capacity is split again straight away.
+     */
+    private void split(int node) {
+        while (true) {
+            double quarter = halfSize[node] * 0.5;
+            int children = numNodes;
+            for (int k = 0; k < 8; k++) {
+                newNode(centerX[node] + ((k & 1) != 0 ? quarter : -quarter),
+                        centerY[node] + ((k & 2) != 0 ? quarter : -quarter),
+                        centerZ[node] + ((k & 4) != 0 ? quarter : -quarter), quarter, depth[node] + 1);
+            }
+            firstChild[node] = children;
+            int body = firstBody[node];
+            firstBody[node] = NONE;
+            count[node] = 0;
+            int crowded = NONE;
+            while (body != NONE) {
+                int next = nextBody[body];
+                int child = children + octant(node, body);
+                nextBody[body] = firstBody[child];
+                firstBody[child] = body;
+                if (++count[child] > LEAF_CAPACITY) {
+                    crowded = child;
+                }
+                body = next;
+            }
+            if (crowded == NONE || depth[crowded] >= MAX_DEPTH) {
+                return;
+            }
+            node = crowded;
+        }
+    }
+
+    /**
+     * Fills in every node's mass and centre of mass. Children always come after
+     * their parent, so a backwards pass sees them first.
+     */
+    private void summarize() {
+        for (int node = numNodes - 1; node >= 0; node--) {
+            double total = 0, sx = 0, sy = 0, sz = 0;
+            if (firstChild[node] == NONE) {
+                for (int body = firstBody[node]; body != NONE; body = nextBody[body]) {
+                    total += m[body];
+                    sx += m[body] * x[body];
+                    sy += m[body] * y[body];
+                    sz += m[body] * z[body];
+                }
+            } else {
+                for (int child = firstChild[node]; child < firstChild[node] + 8; child++) {
+                    total += mass[child];
+                    sx += mass[child] * comX[child];
+                    sy += mass[child] * comY[child];
+                    sz += mass[child] * comZ[child];
+                }
+            }
+            mass[node] = total;
+            if (total > 0) {
+                comX[node] = sx / total;
+                comY[node] = sy / total;
+                comZ[node] = sz / total;
+            } else {
+                comX[node] = centerX[node];
+                comY[node] = centerY[node];
+                comZ[node] = centerZ[node];
+            }
+        }
+    }
+
+    /**
+     * Lists the leaves that hold bodies, depth first, so consecutive leaves are
+     * close in space and a range of them makes a compact piece of work.
+     */
+    private void listLeaves() {
+        int[] stack = new int[8 * MAX_DEPTH + 8];
+        int top = 0;
+        numLeaves = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (firstChild[node] != NONE) {
+                for (int child = firstChild[node] + 7; child >= firstChild[node]; child--) {
+                    stack[top++] = child;
+                }
+            } else if (count[node] > 0) {
+                if (numLeaves == leaves.length) {
+                    leaves = Arrays.copyOf(leaves, numLeaves * 2);
+                }
+                leaves[numLeaves++] = node;
+            }
+        }
+    }
+
+    /**
+     * Gravitational acceleration of every body in leaves from (inclusive) to to
+     * (exclusive), numbered 0 to getLeafCount(), written into ax, ay and az by body
+     * index.
+     *
+     * The tree is walked once per leaf rather than once per body: a node is used as
+     * a point only when it is far enough from every body in the leaf, and every body
+     * in the leaf then runs down the same flat list of masses. That turns most of
+     * the pointer chasing into a tight loop over arrays.
+     *
+     * @param theta     opening angle: a node is used as a single point once its width
+     *                  is less than theta times its distance
+     * @param softening length added in quadrature to every distance, so close
+     *                  encounters do not blow up
+     */
+    public void accelerations(int from, int to, double theta, double softening,
+                              double[] ax, double[] ay, double[] az) {
+        double theta2 = theta * theta;
+        double eps2 = softening * softening;
+        int[] stack = new int[8 * MAX_DEPTH + 8];
+        // interaction list: node centres of mass and bodies alike, as point masses
+        int capacity = 256;
+        double[] px = new double[capacity], py = new double[capacity], pz = new double[capacity];
+        double[] pm = new double[capacity];
+        for (int l = from; l < to; l++) {
+            int leaf = leaves[l];
+            // the box the leaf's bodies actually fill, usually much smaller than its cell
+            double minX = Double.POSITIVE_INFINITY, minY = minX, minZ = minX;
+            double maxX = Double.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+            for (int i = firstBody[leaf]; i != NONE; i = nextBody[i]) {
+                minX = Math.min(minX, x[i]);
+                maxX = Math.max(maxX, x[i]);
+                minY = Math.min(minY, y[i]);
+                maxY = Math.max(maxY, y[i]);
+                minZ = Math.min(minZ, z[i]);
+                maxZ = Math.max(maxZ, z[i]);
+            }
+            double cx = (minX + maxX) * 0.5, cy = (minY + maxY) * 0.5, cz = (minZ + maxZ) * 0.5;
+            double hx = (maxX - minX) * 0.5, hy = (maxY - minY) * 0.5, hz = (maxZ - minZ) * 0.5;
+            int numPoints = 0;
+            int top = 0;
+            stack[top++] = 0;
+            while (top > 0) {
+                int node = stack[--top];
+                if (mass[node] == 0) {
+                    continue;
+                }
+                // distance from the centre of mass to the nearest point of that box
+                double dx = Math.max(0, Math.abs(comX[node] - cx) - hx);
+                double dy = Math.max(0, Math.abs(comY[node] - cy) - hy);
+                double dz = Math.max(0, Math.abs(comZ[node] - cz) - hz);
+                double half = halfSize[node];
+                boolean far = 4 * half * half < theta2 * (dx * dx + dy * dy + dz * dz);
+                int needed = numPoints + (far ? 1 : count[node]);
+                if (needed > capacity) {
+                    capacity = Math.max(capacity * 2, needed);
+                    px = Arrays.copyOf(px, capacity);
+                    py = Arrays.copyOf(py, capacity);
+                    pz = Arrays.copyOf(pz, capacity);
+                    pm = Arrays.copyOf(pm, capacity);
+                }
+                if (far) {
+                    px[numPoints] = comX[node];
+                    py[numPoints] = comY[node];
+                    pz[numPoints] = comZ[node];
+                    pm[numPoints++] = mass[node];
+                } else if (firstChild[node] == NONE) {
+                    for (int body = firstBody[node]; body != NONE; body = nextBody[body]) {
+                        px[numPoints] = x[body];
+                        py[numPoints] = y[body];
+                        pz[numPoints] = z[body];
+                        pm[numPoints++] = m[body];
+                    }
+                } else {
+                    for (int child = firstChild[node]; child < firstChild[node] + 8; child++) {
+                        stack[top++] = child;
+                    }
+                }
+            }
+
+            for (int i = firstBody[leaf]; i != NONE; i = nextBody[i]) {
+                double bx = x[i], by = y[i], bz = z[i];
+                double sumX = 0, sumY = 0, sumZ = 0;
+                for (int p = 0; p < numPoints; p++) {
+                    double dx = px[p] - bx, dy = py[p] - by, dz = pz[p] - bz;
+                    double r2 = dx * dx + dy * dy + dz * dz + eps2;
+                    // the body itself is on the list; with softening it adds exactly
+                    // nothing, without it the distance is zero and it is skipped
+                    if (r2 == 0) {
+                        continue;
+                    }
+                    double s = pm[p] / (r2 * Math.sqrt(r2));
+                    sumX += dx * s;
+                    sumY += dy * s;
+                    sumZ += dz * s;
+                }
+                ax[i] = sumX;
+                ay[i] = sumY;
+                az[i] = sumZ;
+            }
+        }
+    }
+
+    /** Leaves holding bodies, the range accelerations() splits work over. */
+    public int getLeafCount() {
+        return numLeaves;
+    }
+
+    public int getNodeCount() {
+        return numNodes;
+    }
+}
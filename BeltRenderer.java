@@ -0,0 +1,125 @@
+import java.nio.FloatBuffer;
+
+import static com.jogamp.opengl.GL4.*;
+import com.jogamp.opengl.*;
+import com.jogamp.common.nio.Buffers;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+
+/**
+ * Draws the AsteroidBelts of a scene as points.
+ *
+ * Each belt's particle elements go into a vertex buffer once, in the constructor,
+ * and are never touched again: the vertex shader works out every particle's
+ * position from its elements and the time, so a frame costs a few uniforms and
+ * one draw call per belt however many particles there are. Points are shaded as
+ * small spheres with the same clustered lights as the bodies.
+ *
+ * A belt moves with the orbit frame of the body it surrounds, which is pinned in
+ * the scene graph so the belt keeps its place while the body is out of view.
+ */
+public class BeltRenderer {
+    private static final String VERTEX_SHADER_FILE = "belt-vertex.glsl", FRAGMENT_SHADER_FILE = "belt-fragment.glsl";
+    private static final int ORBIT_ATTRIB = 0, NODE_ATTRIB = 1;
+
+    private final ShaderProgram program;
+    private final AsteroidBelt[] belts;
+    private final int[] parents;
+    private final int[] vaos, vbos;
+    private final Matrix4f beltMatrix = new Matrix4f();
+    private final float[] beltValues = new float[SceneGraph.MATRIX_SIZE];
+    private final float[] center = new float[3];
+    private final int beltMatrixLocation, repeatTimeLocation, particleSizeLocation, pointScaleLocation,
+            beltColorLocation;
+    private long drawnParticles;
+
+    /**
+     * Needs a current GL context. Binds the shaders' Frame and Lighting blocks and
+     * light list samplers to the same binding points and texture units as the
+     * body shaders use.
+     *
+     * @param parents scene graph index of the body each belt goes around
+     */
+    public BeltRenderer(AsteroidBelt[] belts, int[] parents, SceneGraph sceneGraph, ShaderProgramCache cache,
+                        int frameBinding, int lightingBinding, int lightsUnit, int clustersUnit, int lightIndicesUnit) {
+        GL4 gl = (GL4) GLContext.getCurrentGL();
+        this.belts = belts;
+        this.parents = parents;
+        program = new ShaderProgram(VERTEX_SHADER_FILE, FRAGMENT_SHADER_FILE, cache);
+        program.bindUniformBlock("Frame", frameBinding);
+        program.bindUniformBlock("Lighting", lightingBinding);
+        program.use();
+        gl.glUniform1i(program.getUniformLocation("lights"), lightsUnit);
+        gl.glUniform1i(program.getUniformLocation("clusters"), clustersUnit);
+        gl.glUniform1i(program.getUniformLocation("lightIndices"), lightIndicesUnit);
+        beltMatrixLocation = program.getUniformLocation("beltMatrix");
+        repeatTimeLocation = program.getUniformLocation("repeatTime");
+        particleSizeLocation = program.getUniformLocation("particleSize");
+        pointScaleLocation = program.getUniformLocation("pointScale");
+        beltColorLocation = program.getUniformLocation("beltColor");
+
+        vaos = new int[belts.length];
+        vbos = new int[belts.length];
+        gl.glGenVertexArrays(belts.length, vaos, 0);
+        gl.glGenBuffers(belts.length, vbos, 0);
+        int stride = AsteroidBelt.ELEMENT_FLOATS * Buffers.SIZEOF_FLOAT;
+        for (int b = 0; b < belts.length; b++) {
+            sceneGraph.pin(parents[b]);
+            // seeded by position in the file, so a belt looks the same on every run
+            FloatBuffer elements = belts[b].elements(b);
+            gl.glBindVertexArray(vaos[b]);
+            gl.glBindBuffer(GL_ARRAY_BUFFER, vbos[b]);
+            gl.glBufferData(GL_ARRAY_BUFFER, (long) elements.limit() * Buffers.SIZEOF_FLOAT, elements, GL_STATIC_DRAW);
+            gl.glVertexAttribPointer(ORBIT_ATTRIB, 4, GL_FLOAT, false, stride, 0);
+            gl.glEnableVertexAttribArray(ORBIT_ATTRIB);
+            gl.glVertexAttribPointer(NODE_ATTRIB, 1, GL_FLOAT, false, stride, 4 * Buffers.SIZEOF_FLOAT);
+            gl.glEnableVertexAttribArray(NODE_ATTRIB);
+        }
+        gl.glBindVertexArray(0);
+    }
+
+    /**
+     * Draws every belt in view, where the transforms and their time put it. Needs
+     * the Frame and Lighting blocks and the light list filled in for this frame.
+     *
+     * @param pointScale pixels per world unit at a view depth of 1
+     */
+    public void draw(GLStateTracker glState, TransformSnapshot transforms, FrustumIntersection frustum,
+                     float pointScale) {
+        GL4 gl = glState.getGL();
+        float[] frames = transforms.getFrames();
+        double time = transforms.getTime();
+        drawnParticles = 0;
+        glState.useProgram(program.getId());
+        glState.enable(GL_PROGRAM_POINT_SIZE);
+        gl.glUniform1f(pointScaleLocation, pointScale);
+        for (int b = 0; b < belts.length; b++) {
+            AsteroidBelt belt = belts[b];
+            transforms.getPosition(parents[b], center, 0);
+            float reach = belt.outerRadius + 0.5f * belt.thickness + belt.particleSize;
+            if (frustum != null && !frustum.testSphere(center[0], center[1], center[2], reach)) {
+                continue;
+            }
+            beltMatrix.set(frames, parents[b] * SceneGraph.MATRIX_SIZE).setTranslation(center[0], center[1], center[2]);
+            gl.glUniformMatrix4fv(beltMatrixLocation, 1, false, beltMatrix.get(beltValues), 0);
+            gl.glUniform1f(repeatTimeLocation, belt.repeatTime(time));
+            gl.glUniform1f(particleSizeLocation, belt.particleSize);
+            gl.glUniform3f(beltColorLocation, belt.color[0], belt.color[1], belt.color[2]);
+            glState.bindVertexArray(vaos[b]);
+            gl.glDrawArrays(GL_POINTS, 0, belt.count);
+            drawnParticles += belt.count;
+        }
+    }
+
+    /** Particles the last draw() sent to the GPU. */
+    public long getDrawnParticles() {
+        return drawnParticles;
+    }
+
+    public void dispose() {
+        GL4 gl = (GL4) GLContext.getCurrentGL();
+        gl.glDeleteBuffers(vbos.length, vbos, 0);
+        gl.glDeleteVertexArrays(vaos.length, vaos, 0);
+        gl.glDeleteProgram(program.getId());
+    }
+}
@@ -0,0 +1,122 @@
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/**
+ * Watches for bodies coming within a set distance of each other, for collision
+ * alerts in large catalogs.
+ *
+ * Every check() moves the bodies to their current positions in a SpatialIndex
+ * whose cells are as big as the alert distance, so finding the close pairs only
+ * compares bodies in neighbouring cells, and reports the pairs that were not
+ * close at the previous check. A pair that stays close is reported once, and
+ * again only after it has separated and come back.
+ *
+ * check() belongs to whichever thread updates the simulation; the counts may be
+ * read from any thread.
+ */
+public class CloseApproachMonitor {
+    private final Simulation simulation;
+    private final double distance;
+    private final SpatialIndex index;
+    private final double[] x, y, z;
+    private final PrintStream out;
+    // close pairs as (smaller index << 32 | larger index), sorted, at this check and the last
+    private long[] close = new long[16], previous = new long[16];
+    private int numPrevious;
+    private volatile int closePairs;
+    private volatile long approaches;
+
+    public CloseApproachMonitor(Simulation simulation, double distance, PrintStream out) {
+        if (!(distance > 0) || Double.isInfinite(distance)) {
+            throw new IllegalArgumentException("The close approach distance has to be positive, not " + distance);
+        }
+        this.simulation = simulation;
+        this.distance = distance;
+        this.out = out;
+        int n = simulation.getBodies().length;
+        index = new SpatialIndex(n, distance);
+        x = new double[n];
+        y = new double[n];
+        z = new double[n];
+    }
+
+    /**
+     * A monitor printing to System.out the approaches closer than
+     * -Dsolarsystem.closeApproach, or null if that is unset.
+     */
+    public static CloseApproachMonitor fromProperties(Simulation simulation) {
+        String distance = System.getProperty("solarsystem.closeApproach");
+        if (distance == null) {
+            return null;
+        }
+        try {
+            return new CloseApproachMonitor(simulation, Double.parseDouble(distance.trim()), System.out);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("solarsystem.closeApproach should be a number, not " + distance);
+        }
+    }
+
+    /**
+     * Finds the pairs within the distance at the simulation's current time and
+     * prints the ones that have just come that close.
+     *
+     * @return the number of new approaches
+     */
+    public int check() {
+        simulation.currentPositions(x, y, z);
+        index.update(x, y, z);
+        int pairs = index.closeApproaches(distance);
+        int[] results = index.getResults();
+        if (close.length < pairs) {
+            close = new long[Math.max(pairs, close.length * 2)];
+        }
+        for (int p = 0; p < pairs; p++) {
+            close[p] = (long) results[2 * p] << 32 | results[2 * p + 1];
+        }
+        Arrays.sort(close, 0, pairs);
+
+        int found = 0;
+        SolarBody[] bodies = simulation.getBodies();
+        for (int p = 0, q = 0; p < pairs; p++) {
+            while (q < numPrevious && previous[q] < close[p]) {
+                q++;
+            }
+            if (q < numPrevious && previous[q] == close[p]) {
+                continue;
+            }
+            int a = (int) (close[p] >>> 32), b = (int) close[p];
+            double dx = x[a] - x[b], dy = y[a] - y[b], dz = z[a] - z[b];
+            out.println("t " + String.format("%.3f", simulation.getTime()) + ": bodies " + a + " ("
+                    + bodies[a].getTextureFile() + ") and " + b + " (" + bodies[b].getTextureFile() + ") within "
+                    + String.format("%.4g", Math.sqrt(dx * dx + dy * dy + dz * dz)));
+            found++;
+        }
+
+        long[] swap = previous;
+        previous = close;
+        close = swap;
+        numPrevious = pairs;
+        closePairs = pairs;
+        approaches += found;
+        return found;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    /** Pairs within the distance at the last check. */
+    public int getClosePairs() {
+        return closePairs;
+    }
+
+    /** Approaches reported so far. */
+    public long getApproaches() {
+        return approaches;
+    }
+
+    /** The index as of the last check, for other queries on the thread that calls check(). */
+    public SpatialIndex getIndex() {
+        return index;
+    }
+}
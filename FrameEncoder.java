@@ -0,0 +1,136 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Writes rendered frames to numbered files on a pool of threads, so encoding one
+ * frame overlaps rendering and reading back the next ones.
+ *
+ * Frames arrive as RGBA rows bottom up, the way glReadPixels returns them, in
+ * buffers lent out by take(). There are a fixed number of buffers, so when the
+ * encoders fall behind take() blocks and the renderer waits instead of piling up
+ * frames in memory. PNG drops the alpha channel; RAW writes the RGBA bytes top
+ * down with no header.
+ */
+public class FrameEncoder implements AutoCloseable {
+    public enum Format { PNG, RAW }
+
+    private final Path directory;
+    private final Format format;
+    private final int width, height;
+    private final ExecutorService pool;
+    private final BlockingQueue<byte[]> free;
+    private final AtomicReference<IOException> failure = new AtomicReference<IOException>();
+
+    /**
+     * @param threads encoder threads; each can hold two frames, so that many
+     *                buffers times two are allocated up front
+     */
+    public FrameEncoder(Path directory, Format format, int width, int height, int threads) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "frame-encoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.free = new ArrayBlockingQueue<byte[]>(2 * threads);
+        for (int b = 0; b < 2 * threads; b++) {
+            free.add(new byte[width * height * 4]);
+        }
+    }
+
+    /**
+     * A buffer for one frame, waiting for an encoder to give one back if none is
+     * free.
+     */
+    public byte[] take() throws IOException, InterruptedException {
+        checkFailure();
+        return free.take();
+    }
+
+    /**
+     * Copies a frame out of a mapped pixel buffer into a buffer from take() and
+     * queues it to be written as the given frame number.
+     */
+    public void submit(ByteBuffer pixels, int frameNumber) throws IOException, InterruptedException {
+        byte[] frame = take();
+        pixels.get(frame);
+        pool.execute(() -> {
+            try {
+                write(frame, frameNumber);
+            } catch (IOException e) {
+                failure.compareAndSet(null, e);
+            } catch (UncheckedIOException e) {
+                failure.compareAndSet(null, e.getCause());
+            } finally {
+                free.add(frame);
+            }
+        });
+    }
+
+    private void write(byte[] frame, int frameNumber) throws IOException {
+        String name = String.format("frame%06d.%s", frameNumber, format == Format.PNG ? "png" : "rgba");
+        int rowBytes = width * 4;
+        if (format == Format.RAW) {
+            byte[] flipped = new byte[frame.length];
+            for (int row = 0; row < height; row++) {
+                System.arraycopy(frame, (height - 1 - row) * rowBytes, flipped, row * rowBytes, rowBytes);
+            }
+            Files.write(directory.resolve(name), flipped);
+            return;
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] rgb = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for (int row = 0; row < height; row++) {
+            int in = (height - 1 - row) * rowBytes;
+            int out = row * width;
+            for (int x = 0; x < width; x++, in += 4) {
+                rgb[out + x] = (frame[in] & 0xff) << 16 | (frame[in + 1] & 0xff) << 8 | (frame[in + 2] & 0xff);
+            }
+        }
+        if (!ImageIO.write(image, "png", directory.resolve(name).toFile())) {
+            throw new IOException("No PNG writer available");
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        IOException e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for every queued frame to be written.
+     *
+     * @throws InterruptedIOException if interrupted while waiting, with the
+     *                                thread's interrupt flag set again
+     */
+    @Override
+    public void close() throws IOException {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing the last frames");
+        }
+        checkFailure();
+    }
+}
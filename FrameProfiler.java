@@ -0,0 +1,215 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+import static com.jogamp.opengl.GL4.*;
+import com.jogamp.opengl.*;
+
+/**
+ * Times the phases of display() on the CPU and the GPU and keeps a
+ * LatencyHistogram of each.
+ *
+ * CPU time is System.nanoTime() around each phase. GPU time comes from a
+ * GL_TIME_ELAPSED query per phase per frame. Results of a query only arrive a
+ * frame or two after it was issued, so there is a ring of QUERY_FRAMES frames'
+ * worth of query objects: each frame reads back whichever older queries have
+ * finished, asking GL_QUERY_RESULT_AVAILABLE first so it never waits on the GPU,
+ * and a query still unfinished when its slot comes round again is counted as
+ * dropped rather than waited for. Timer queries cannot nest, so phases must not
+ * overlap.
+ *
+ * Every frame also drains glGetError, which nothing else does per frame.
+ *
+ * Recording happens on the GL thread. The summaries, overlayText() and the
+ * exports are safe from any other thread.
+ */
+public class FrameProfiler {
+    // frames of queries in flight before a slot is reused
+    public static final int QUERY_FRAMES = 4;
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    private final GL4 gl;
+    private final String[] phases;
+    private final LatencyHistogram[] cpu, gpu;
+    private final LatencyHistogram frameCpu = new LatencyHistogram();
+    private final int[] queries;     // QUERY_FRAMES rows of one query per phase
+    private final boolean[] pending; // issued and not read back yet
+    private final long[] cpuStarts;
+    private final int[] available = new int[1];
+    private final long[] elapsed = new long[1];
+    private long frames, frameStart;
+    private int slot;
+    private long droppedQueries, errorFrames;
+
+    /**
+     * Needs a current GL context, the one display() will run in.
+     *
+     * @param phases names of the phases, which begin() and end() refer to by index
+     */
+    public FrameProfiler(GL4 gl, String... phases) {
+        this.gl = gl;
+        this.phases = phases.clone();
+        cpu = new LatencyHistogram[phases.length];
+        gpu = new LatencyHistogram[phases.length];
+        for (int p = 0; p < phases.length; p++) {
+            cpu[p] = new LatencyHistogram();
+            gpu[p] = new LatencyHistogram();
+        }
+        queries = new int[QUERY_FRAMES * phases.length];
+        pending = new boolean[queries.length];
+        cpuStarts = new long[phases.length];
+        gl.glGenQueries(queries.length, queries, 0);
+    }
+
+    /**
+     * A profiler if -Dsolarsystem.profile or -Dsolarsystem.overlay asks for one,
+     * null otherwise.
+     */
+    public static FrameProfiler fromProperties(GL4 gl, String... phases) {
+        if (System.getProperty("solarsystem.profile") == null && !Boolean.getBoolean("solarsystem.overlay")) {
+            return null;
+        }
+        return new FrameProfiler(gl, phases);
+    }
+
+    /**
+     * Starts a frame: reads back every finished query and moves on to the next
+     * ring slot.
+     */
+    public synchronized void beginFrame() {
+        frameStart = System.nanoTime();
+        collect(false);
+        slot = (slot + 1) % QUERY_FRAMES;
+        // whatever in this slot is still unfinished is QUERY_FRAMES frames old: drop it
+        for (int p = 0; p < phases.length; p++) {
+            int q = slot * phases.length + p;
+            if (pending[q]) {
+                pending[q] = false;
+                droppedQueries++;
+            }
+        }
+    }
+
+    public void begin(int phase) {
+        cpuStarts[phase] = System.nanoTime();
+        gl.glBeginQuery(GL_TIME_ELAPSED, queries[slot * phases.length + phase]);
+    }
+
+    public synchronized void end(int phase) {
+        gl.glEndQuery(GL_TIME_ELAPSED);
+        pending[slot * phases.length + phase] = true;
+        cpu[phase].record(System.nanoTime() - cpuStarts[phase]);
+    }
+
+    public synchronized void endFrame() {
+        if (Utils.checkOpenGLError()) {
+            errorFrames++;
+        }
+        frameCpu.record(System.nanoTime() - frameStart);
+        frames++;
+    }
+
+    /**
+     * Reads back finished queries; with wait set, also the unfinished ones, which
+     * stalls until the GPU catches up.
+     */
+    private void collect(boolean wait) {
+        for (int q = 0; q < queries.length; q++) {
+            if (!pending[q]) {
+                continue;
+            }
+            if (!wait) {
+                gl.glGetQueryObjectiv(queries[q], GL_QUERY_RESULT_AVAILABLE, available, 0);
+                if (available[0] == 0) {
+                    continue;
+                }
+            }
+            gl.glGetQueryObjecti64v(queries[q], GL_QUERY_RESULT, elapsed, 0);
+            gpu[q % phases.length].record(elapsed[0]);
+            pending[q] = false;
+        }
+    }
+
+    /** Frees the query objects. Needs the GL context current. */
+    public synchronized void dispose() {
+        collect(true);
+        gl.glDeleteQueries(queries.length, queries, 0);
+    }
+
+    public synchronized long getFrames() {
+        return frames;
+    }
+
+    public synchronized long getDroppedQueries() {
+        return droppedQueries;
+    }
+
+    /**
+     * One line per phase with CPU and GPU p50/p99/max in milliseconds, for the
+     * on-screen overlay.
+     */
+    public synchronized String overlayText() {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.ROOT, "frame cpu %s", summary(frameCpu)));
+        for (int p = 0; p < phases.length; p++) {
+            text.append(String.format(Locale.ROOT, "\n%s cpu %s gpu %s", phases[p], summary(cpu[p]), summary(gpu[p])));
+        }
+        return text.toString();
+    }
+
+    private static String summary(LatencyHistogram histogram) {
+        return String.format(Locale.ROOT, "%.2f/%.2f/%.2f", millis(histogram.getPercentile(50)),
+                millis(histogram.getPercentile(99)), millis(histogram.getMax()));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"frames\": ").append(frames)
+                .append(",\n  \"droppedGpuQueries\": ").append(droppedQueries)
+                .append(",\n  \"glErrorFrames\": ").append(errorFrames)
+                .append(",\n  \"frame\": {\"cpu\": ").append(json(frameCpu)).append("}")
+                .append(",\n  \"phases\": [");
+        for (int p = 0; p < phases.length; p++) {
+            json.append(p == 0 ? "\n" : ",\n").append("    {\"name\": \"").append(phases[p])
+                    .append("\", \"cpu\": ").append(json(cpu[p])).append(", \"gpu\": ").append(json(gpu[p])).append("}");
+        }
+        return json.append("\n  ]\n}\n").toString();
+    }
+
+    private static String json(LatencyHistogram histogram) {
+        return String.format(Locale.ROOT, "{\"count\": %d, \"meanMs\": %.4f, \"p50Ms\": %.4f, \"p99Ms\": %.4f, \"maxMs\": %.4f}",
+                histogram.getCount(), histogram.getMean() / NANOS_PER_MILLI, millis(histogram.getPercentile(50)),
+                millis(histogram.getPercentile(99)), millis(histogram.getMax()));
+    }
+
+    /** One row per phase and clock, after a header row. */
+    public synchronized String toCsv() {
+        StringBuilder csv = new StringBuilder("phase,clock,count,mean_ms,p50_ms,p99_ms,max_ms\n");
+        csv.append(csv("frame", "cpu", frameCpu));
+        for (int p = 0; p < phases.length; p++) {
+            csv.append(csv(phases[p], "cpu", cpu[p])).append(csv(phases[p], "gpu", gpu[p]));
+        }
+        return csv.toString();
+    }
+
+    private static String csv(String phase, String clock, LatencyHistogram histogram) {
+        return String.format(Locale.ROOT, "%s,%s,%d,%.4f,%.4f,%.4f,%.4f\n", phase, clock, histogram.getCount(),
+                histogram.getMean() / NANOS_PER_MILLI, millis(histogram.getPercentile(50)),
+                millis(histogram.getPercentile(99)), millis(histogram.getMax()));
+    }
+
+    /**
+     * Writes the histograms to a file, as CSV if its name ends in .csv and as JSON
+     * otherwise.
+     */
+    public void export(String fileName) throws IOException {
+        String text = fileName.endsWith(".csv") ? toCsv() : toJson();
+        Files.write(Paths.get(fileName), text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,125 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+import static com.jogamp.opengl.GL4.*;
+import com.jogamp.opengl.*;
+
+/**
+ * Reads every frame back from the GPU without waiting for it, for HeadlessRenderer.
+ *
+ * Added to a drawable after the listener that draws, so it runs at the end of each
+ * display(). glReadPixels into a bound pixel pack buffer only queues the copy;
+ * there is a ring of RING_SIZE such buffers, each with a fence behind its copy.
+ * Frames are mapped and handed to a FrameEncoder once their fence has passed, a
+ * frame or two later, so the GPU keeps rendering while older frames come back.
+ * Only when every buffer is still in flight does display() wait, for the oldest.
+ */
+public class FrameReadback implements GLEventListener {
+    public static final int RING_SIZE = 3;
+
+    private final FrameEncoder encoder;
+    private final int width, height;
+    private final int[] buffers = new int[RING_SIZE];
+    private final long[] fences = new long[RING_SIZE]; // 0 when the buffer is free
+    private final int[] frameNumbers = new int[RING_SIZE];
+    private int next, frameNumber;
+    private long stalls;
+
+    public FrameReadback(FrameEncoder encoder, int width, int height) {
+        this.encoder = encoder;
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public void init(GLAutoDrawable drawable) {
+        GL4 gl = drawable.getGL().getGL4();
+        gl.glGenBuffers(RING_SIZE, buffers, 0);
+        for (int buffer : buffers) {
+            gl.glBindBuffer(GL_PIXEL_PACK_BUFFER, buffer);
+            gl.glBufferData(GL_PIXEL_PACK_BUFFER, (long) width * height * 4, null, GL_STREAM_READ);
+        }
+        gl.glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+    }
+
+    @Override
+    public void display(GLAutoDrawable drawable) {
+        GL4 gl = drawable.getGL().getGL4();
+        // hand on whatever has arrived, oldest first, to keep the frames in order
+        for (int k = 0; k < RING_SIZE; k++) {
+            int slot = (next + k) % RING_SIZE;
+            if (fences[slot] == 0) {
+                continue;
+            }
+            if (gl.glClientWaitSync(fences[slot], 0, 0) == GL_TIMEOUT_EXPIRED) {
+                break;
+            }
+            finish(gl, slot);
+        }
+        if (fences[next] != 0) {
+            stalls++;
+            finish(gl, next);
+        }
+
+        gl.glBindBuffer(GL_PIXEL_PACK_BUFFER, buffers[next]);
+        gl.glPixelStorei(GL_PACK_ALIGNMENT, 4);
+        gl.glReadPixels(0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, 0);
+        gl.glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+        fences[next] = gl.glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        frameNumbers[next] = frameNumber++;
+        // the fence only counts once the GPU has been told about it
+        gl.glFlush();
+        next = (next + 1) % RING_SIZE;
+    }
+
+    /**
+     * Maps a buffer, waiting for its copy if that has not finished, and passes the
+     * frame to the encoder.
+     */
+    private void finish(GL4 gl, int slot) {
+        gl.glClientWaitSync(fences[slot], GL_SYNC_FLUSH_COMMANDS_BIT, Long.MAX_VALUE);
+        gl.glDeleteSync(fences[slot]);
+        fences[slot] = 0;
+        gl.glBindBuffer(GL_PIXEL_PACK_BUFFER, buffers[slot]);
+        ByteBuffer pixels = gl.glMapBufferRange(GL_PIXEL_PACK_BUFFER, 0, (long) width * height * 4, GL_MAP_READ_BIT);
+        try {
+            encoder.submit(pixels, frameNumbers[slot]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            gl.glUnmapBuffer(GL_PIXEL_PACK_BUFFER);
+            gl.glBindBuffer(GL_PIXEL_PACK_BUFFER, 0);
+        }
+    }
+
+    /** Frames that had to wait for the GPU because the whole ring was in flight. */
+    public long getStalls() {
+        return stalls;
+    }
+
+    public int getFrames() {
+        return frameNumber;
+    }
+
+    /**
+     * Hands on every frame still in flight, then frees the buffers.
+     */
+    @Override
+    public void dispose(GLAutoDrawable drawable) {
+        GL4 gl = drawable.getGL().getGL4();
+        for (int k = 0; k < RING_SIZE; k++) {
+            int slot = (next + k) % RING_SIZE;
+            if (fences[slot] != 0) {
+                finish(gl, slot);
+            }
+        }
+        gl.glDeleteBuffers(RING_SIZE, buffers, 0);
+    }
+
+    @Override
+    public void reshape(GLAutoDrawable drawable, int x, int y, int width, int height) {
+    }
+}
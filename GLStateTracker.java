@@ -0,0 +1,188 @@
+import java.util.*;
+
+import static com.jogamp.opengl.GL4.*;
+import com.jogamp.opengl.*;
+
+/**
+ * Thin wrapper around a GL4 handle that remembers the binds, enables and texture
+ * bindings it has already made and skips the ones that would not change anything.
+ * Every call through the tracker is counted as either issued or elided, and the
+ * counts are kept per frame.
+ *
+ * The tracker only knows about state changed through it. Anything that touches the
+ * same state directly on the GL4 handle (texture loading, for example) has to be
+ * followed by invalidate().
+ */
+public class GLStateTracker {
+    private static final int UNKNOWN = -1;
+    private static final int MAX_TEXTURE_UNITS = 32;
+    private static final int MAX_CAPABILITIES = 16;
+
+    private final GL4 gl;
+
+    private int program, vertexArray, arrayBuffer, elementArrayBuffer;
+    private int activeTextureUnit, frontFace, depthFunc;
+    private final int[] boundTextures2D = new int[MAX_TEXTURE_UNITS];
+    private final int[] boundTexturesArray = new int[MAX_TEXTURE_UNITS];
+
+    // enable/disable state, a tiny linear map so lookups never box
+    private final int[] capabilities = new int[MAX_CAPABILITIES];
+    private final int[] capabilityStates = new int[MAX_CAPABILITIES];
+    private int numCapabilities;
+
+    private int issuedCalls, elidedCalls;
+    private int lastFrameIssued, lastFrameElided;
+
+    public GLStateTracker(GL4 gl) {
+        this.gl = gl;
+        invalidate();
+    }
+
+    public GL4 getGL() {
+        return gl;
+    }
+
+    /**
+     * Forgets everything the tracker knows, so the next call of each kind is issued.
+     */
+    public void invalidate() {
+        program = vertexArray = arrayBuffer = elementArrayBuffer = UNKNOWN;
+        activeTextureUnit = frontFace = depthFunc = UNKNOWN;
+        Arrays.fill(boundTextures2D, UNKNOWN);
+        Arrays.fill(boundTexturesArray, UNKNOWN);
+        numCapabilities = 0;
+    }
+
+    /**
+     * Closes the counters of the previous frame and starts counting a new one.
+     */
+    public void beginFrame() {
+        lastFrameIssued = issuedCalls;
+        lastFrameElided = elidedCalls;
+        issuedCalls = 0;
+        elidedCalls = 0;
+    }
+
+    /** Calls that reached GL during the last completed frame. */
+    public int getIssuedCalls() {
+        return lastFrameIssued;
+    }
+
+    /** Calls skipped as redundant during the last completed frame. */
+    public int getElidedCalls() {
+        return lastFrameElided;
+    }
+
+    private boolean changed(int current, int requested) {
+        if (current == requested) {
+            elidedCalls++;
+            return false;
+        }
+        issuedCalls++;
+        return true;
+    }
+
+    public void useProgram(int id) {
+        if (changed(program, id)) {
+            gl.glUseProgram(id);
+            program = id;
+        }
+    }
+
+    public void bindVertexArray(int id) {
+        if (changed(vertexArray, id)) {
+            gl.glBindVertexArray(id);
+            vertexArray = id;
+            // the element buffer binding belongs to the vertex array
+            elementArrayBuffer = UNKNOWN;
+        }
+    }
+
+    public void bindBuffer(int target, int id) {
+        if (target == GL_ARRAY_BUFFER) {
+            if (changed(arrayBuffer, id)) {
+                gl.glBindBuffer(target, id);
+                arrayBuffer = id;
+            }
+        } else if (target == GL_ELEMENT_ARRAY_BUFFER) {
+            if (changed(elementArrayBuffer, id)) {
+                gl.glBindBuffer(target, id);
+                elementArrayBuffer = id;
+            }
+        } else {
+            issuedCalls++;
+            gl.glBindBuffer(target, id);
+        }
+    }
+
+    public void activeTexture(int unit) {
+        if (changed(activeTextureUnit, unit)) {
+            gl.glActiveTexture(unit);
+            activeTextureUnit = unit;
+        }
+    }
+
+    /**
+     * Binds a texture on the active unit. GL_TEXTURE_2D and GL_TEXTURE_2D_ARRAY are
+     * tracked per unit, other targets always go through.
+     */
+    public void bindTexture(int target, int id) {
+        int unit = activeTextureUnit == UNKNOWN ? UNKNOWN : activeTextureUnit - GL_TEXTURE0;
+        int[] bound = target == GL_TEXTURE_2D ? boundTextures2D
+                : target == GL_TEXTURE_2D_ARRAY ? boundTexturesArray : null;
+        if (bound == null || unit < 0 || unit >= MAX_TEXTURE_UNITS) {
+            issuedCalls++;
+            gl.glBindTexture(target, id);
+            return;
+        }
+        if (changed(bound[unit], id)) {
+            gl.glBindTexture(target, id);
+            bound[unit] = id;
+        }
+    }
+
+    public void enable(int capability) {
+        if (setCapability(capability, 1)) {
+            gl.glEnable(capability);
+        }
+    }
+
+    public void disable(int capability) {
+        if (setCapability(capability, 0)) {
+            gl.glDisable(capability);
+        }
+    }
+
+    private boolean setCapability(int capability, int state) {
+        for (int i = 0; i < numCapabilities; i++) {
+            if (capabilities[i] == capability) {
+                if (!changed(capabilityStates[i], state)) {
+                    return false;
+                }
+                capabilityStates[i] = state;
+                return true;
+            }
+        }
+        issuedCalls++;
+        if (numCapabilities < MAX_CAPABILITIES) {
+            capabilities[numCapabilities] = capability;
+            capabilityStates[numCapabilities] = state;
+            numCapabilities++;
+        }
+        return true;
+    }
+
+    public void frontFace(int mode) {
+        if (changed(frontFace, mode)) {
+            gl.glFrontFace(mode);
+            frontFace = mode;
+        }
+    }
+
+    public void depthFunc(int func) {
+        if (changed(depthFunc, func)) {
+            gl.glDepthFunc(func);
+            depthFunc = func;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Newtonian N-body dynamics for the bodies of a scene, as an alternative to the
+ * fixed circular orbits.
+ *
+ * State is kept as primitive arrays in double precision. Each step is one
+ * kick-drift-kick leapfrog: symplectic and time reversible, so orbits do not
+ * slowly gain or lose energy the way they do under explicit Euler. Accelerations
+ * come from a BarnesHutTree rebuilt after every drift, and are computed in
+ * parallel on the common fork/join pool.
+ *
+ * fromOrbits() starts the bodies where the orbits have them at time 0.
+ * The .sol format has no masses, so they are derived from the orbits with
+ * Kepler's third law: a parent whose children orbit it with semi-major axis a
+ * and mean angular rate w has mass w^2 a^3 (G = 1). Bodies nothing orbits get their
+ * parent's density.
+ */
+public class GravitySimulation {
+    public static final double DEFAULT_THETA = 0.5;
+    // softening as a fraction of the shortest orbit in the scene
+    public static final double DEFAULT_SOFTENING_FRACTION = 0.01;
+    // heaviest a body derived by fromOrbits may be, as a fraction of its parent
+    public static final double MAX_SATELLITE_FRACTION = 0.01;
+    // octree leaves per fork/join task, a few hundred bodies
+    private static final int FORCE_BATCH = 64;
+
+    private final int size;
+    private final double[] x, y, z;
+    private final double[] vx, vy, vz;
+    private final double[] ax, ay, az;
+    private final double[] mass;
+    private final double theta, softening;
+    private final BarnesHutTree tree = new BarnesHutTree();
+
+    /**
+     * Takes ownership of the arrays, which all need one entry per body.
+     */
+    public GravitySimulation(double[] x, double[] y, double[] z, double[] vx, double[] vy, double[] vz,
+                             double[] mass, double theta, double softening) {
+        size = mass.length;
+        if (x.length != size || y.length != size || z.length != size
+                || vx.length != size || vy.length != size || vz.length != size) {
+            throw new IllegalArgumentException("All body columns must have the same length");
+        }
+        if (theta < 0 || softening < 0) {
+            throw new IllegalArgumentException("theta and softening can not be negative");
+        }
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.vx = vx;
+        this.vy = vy;
+        this.vz = vz;
+        this.mass = mass;
+        this.theta = theta;
+        this.softening = softening;
+        this.ax = new double[size];
+        this.ay = new double[size];
+        this.az = new double[size];
+        computeAccelerations();
+    }
+
+    /**
+     * Bodies placed where the scene graph's orbits have them at time 0, with
+     * masses derived from those orbits and each body moving around its parent at
+     * the speed its orbit needs there.
+     */
+    public static GravitySimulation fromOrbits(SceneGraph sceneGraph, double theta) {
+        int n = sceneGraph.size();
+        sceneGraph.update(0);
+        float[] frames = sceneGraph.getFrames();
+        double[] x = new double[n], y = new double[n], z = new double[n];
+        // every orbit frame is its parent's turned about Y, so angular rates add up the tree
+        double[] rate = new double[n];
+        double[] keplerMass = new double[n];
+        int[] numChildren = new int[n];
+        double shortestOrbit = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            int f = i * SceneGraph.MATRIX_SIZE;
+            x[i] = frames[f + 12];
+            y[i] = frames[f + 13];
+            z[i] = frames[f + 14];
+            int parent = sceneGraph.getParent(i);
+            if (parent == SceneGraph.NO_PARENT) {
+                continue;
+            }
+            rate[i] = rate[parent] + 2 * Math.PI / sceneGraph.getOrbitalPeriod(i);
+            // rate[i] is how fast the offset to the parent turns on average, the rate
+            // Kepler needs; distance is the semi-major axis
+            double distance = Math.abs(sceneGraph.getDistance(i));
+            keplerMass[parent] += rate[i] * rate[i] * distance * distance * distance;
+            numChildren[parent]++;
+            if (distance > 0) {
+                shortestOrbit = Math.min(shortestOrbit, distance);
+            }
+        }
+
+        // Hand-made scenes rarely agree with gravity (a moon far out and fast can
+        // "weigh" its planet more than the sun), so a body never outweighs
+        // MAX_SATELLITE_FRACTION of its parent.
+        double[] mass = new double[n];
+        for (int i = 0; i < n; i++) {
+            int parent = sceneGraph.getParent(i);
+            if (numChildren[i] > 0) {
+                mass[i] = keplerMass[i] / numChildren[i];
+            } else if (parent != SceneGraph.NO_PARENT && sceneGraph.getRadius(parent) != 0) {
+                double ratio = sceneGraph.getRadius(i) / sceneGraph.getRadius(parent);
+                mass[i] = mass[parent] * Math.abs(ratio * ratio * ratio);
+            } else {
+                mass[i] = 1;
+            }
+            if (parent != SceneGraph.NO_PARENT) {
+                mass[i] = Math.min(mass[i], mass[parent] * MAX_SATELLITE_FRACTION);
+            }
+        }
+        // everything orbiting inside a body's orbit pulls on it roughly as if it sat
+        // on its parent, like rings of mass do
+        double[] subtreeMass = mass.clone();
+        for (int i = n - 1; i >= 0; i--) {
+            if (sceneGraph.getParent(i) != SceneGraph.NO_PARENT) {
+                subtreeMass[sceneGraph.getParent(i)] += subtreeMass[i];
+            }
+        }
+
+        // Velocities follow from the masses rather than the periods: each body gets
+        // the vis-viva speed for its distance and semi-major axis around its parent
+        // plus whatever orbits the parent closer in, so orbits stay bound even where
+        // the periods had to give. The direction is the one the orbit is moving in.
+        // children grouped by parent, innermost orbit first, so a running sum gives
+        // each one the mass of its siblings further in
+        Integer[] children = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            children[i] = i;
+        }
+        Arrays.sort(children, Comparator.<Integer>comparingInt(sceneGraph::getParent)
+                .thenComparingDouble(i -> Math.abs(sceneGraph.getDistance(i))));
+        double[] inner = new double[n];
+        for (int k = 1; k < n; k++) {
+            int previous = children[k - 1], i = children[k];
+            if (sceneGraph.getParent(previous) == sceneGraph.getParent(i)) {
+                // siblings on the very same orbit do not count as inside each other
+                boolean sameOrbit = Math.abs(sceneGraph.getDistance(previous)) == Math.abs(sceneGraph.getDistance(i));
+                inner[i] = sameOrbit ? inner[previous] : inner[previous] + subtreeMass[previous];
+            }
+        }
+
+        double[] orbitX = new double[n], orbitY = new double[n], orbitZ = new double[n];
+        sceneGraph.velocities(0, orbitX, orbitY, orbitZ);
+        double[] vx = new double[n], vy = new double[n], vz = new double[n];
+        for (int i = 0; i < n; i++) {
+            int parent = sceneGraph.getParent(i);
+            if (parent == SceneGraph.NO_PARENT) {
+                continue;
+            }
+            double semiMajorAxis = Math.abs(sceneGraph.getDistance(i));
+            double enclosed = mass[parent] + subtreeMass[i] + inner[i];
+            double dx = x[i] - x[parent], dy = y[i] - y[parent], dz = z[i] - z[parent];
+            double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+            double ux = orbitX[i] - orbitX[parent], uy = orbitY[i] - orbitY[parent], uz = orbitZ[i] - orbitZ[parent];
+            double orbitSpeed = Math.sqrt(ux * ux + uy * uy + uz * uz);
+            double scale = distance > 0 && orbitSpeed > 0
+                    ? Math.sqrt(enclosed * (2 / distance - 1 / semiMajorAxis)) / orbitSpeed : 0;
+            vx[i] = vx[parent] + scale * ux;
+            vy[i] = vy[parent] + scale * uy;
+            vz[i] = vz[parent] + scale * uz;
+        }
+
+        // the roots start still and everything else moving, so take out the net
+        // momentum or the whole system drifts off
+        double totalMass = 0, px = 0, py = 0, pz = 0;
+        for (int i = 0; i < n; i++) {
+            totalMass += mass[i];
+            px += mass[i] * vx[i];
+            py += mass[i] * vy[i];
+            pz += mass[i] * vz[i];
+        }
+        for (int i = 0; i < n && totalMass > 0; i++) {
+            vx[i] -= px / totalMass;
+            vy[i] -= py / totalMass;
+            vz[i] -= pz / totalMass;
+        }
+        double softening = Double.isInfinite(shortestOrbit) ? 0 : shortestOrbit * DEFAULT_SOFTENING_FRACTION;
+        return new GravitySimulation(x, y, z, vx, vy, vz, mass, theta, softening);
+    }
+
+    /**
+     * Advances every body by dt: half a kick, a full drift, new accelerations, and
+     * the other half kick.
+     */
+    public void step(double dt) {
+        double halfDt = dt * 0.5;
+        for (int i = 0; i < size; i++) {
+            vx[i] += ax[i] * halfDt;
+            vy[i] += ay[i] * halfDt;
+            vz[i] += az[i] * halfDt;
+            x[i] += vx[i] * dt;
+            y[i] += vy[i] * dt;
+            z[i] += vz[i] * dt;
+        }
+        computeAccelerations();
+        for (int i = 0; i < size; i++) {
+            vx[i] += ax[i] * halfDt;
+            vy[i] += ay[i] * halfDt;
+            vz[i] += az[i] * halfDt;
+        }
+    }
+
+    private void computeAccelerations() {
+        if (size == 0) {
+            return;
+        }
+        tree.build(x, y, z, mass, size);
+        ForkJoinPool.commonPool().invoke(new ForceTask(0, tree.getLeafCount()));
+    }
+
+    /** Splits a range of leaves in half until it is small enough to do directly. */
+    @SuppressWarnings("serial") // serializable only because ForkJoinTask is, never serialized
+    private final class ForceTask extends RecursiveAction {
+        private final int from, to;
+
+        ForceTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= FORCE_BATCH) {
+                tree.accelerations(from, to, theta, softening, ax, ay, az);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ForceTask(from, middle), new ForceTask(middle, to));
+        }
+    }
+
+    /** Kinetic plus potential energy, by direct summation. O(n^2), for checking small scenes. */
+    public double totalEnergy() {
+        double energy = 0;
+        double eps2 = softening * softening;
+        for (int i = 0; i < size; i++) {
+            energy += 0.5 * mass[i] * (vx[i] * vx[i] + vy[i] * vy[i] + vz[i] * vz[i]);
+            for (int j = i + 1; j < size; j++) {
+                double dx = x[j] - x[i], dy = y[j] - y[i], dz = z[j] - z[i];
+                energy -= mass[i] * mass[j] / Math.sqrt(dx * dx + dy * dy + dz * dz + eps2);
+            }
+        }
+        return energy;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double[] getX() { return x; }
+    public double[] getY() { return y; }
+    public double[] getZ() { return z; }
+    public double[] getMasses() { return mass; }
+    public double getTheta() { return theta; }
+    public double getSoftening() { return softening; }
+}
@@ -0,0 +1,95 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+import com.jogamp.opengl.*;
+
+/**
+ * Renders an animation of a .sol scene straight to image files, with no window
+ * and no display.
+ *
+ * The scene draws into the framebuffer object of an offscreen GLAutoDrawable,
+ * which any GL 4.1 driver can provide, Mesa's software rasterizer included. Each
+ * display() stands for one frame of 1 / fps seconds of real time, so the output
+ * does not depend on how fast it is rendered, and -Dsolarsystem.timeWarp sets how
+ * much simulation time that is. FrameReadback pipelines the readback and a
+ * FrameEncoder writes the files on every core, so frames come out as fast as the
+ * slowest of rendering, readback and encoding allows.
+ *
+ * Usage: java HeadlessRenderer file.sol outputDirectory frames [fps]
+ * with -Dsolarsystem.frameSize=WIDTHxHEIGHT (800x800) and
+ * -Dsolarsystem.frameFormat=png|raw (png).
+ */
+public class HeadlessRenderer {
+    public static final double DEFAULT_FPS = 60;
+    private static final String DEFAULT_FRAME_SIZE = "800x800";
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: java HeadlessRenderer <file.sol> <outputDirectory> <frames> [fps]");
+            System.exit(0);
+        }
+        String[] size = System.getProperty("solarsystem.frameSize", DEFAULT_FRAME_SIZE).split("x");
+        if (size.length != 2) {
+            throw new IllegalArgumentException("solarsystem.frameSize should be WIDTHxHEIGHT, not "
+                    + System.getProperty("solarsystem.frameSize"));
+        }
+        int width = Integer.parseInt(size[0].trim());
+        int height = Integer.parseInt(size[1].trim());
+        FrameEncoder.Format format = FrameEncoder.Format.valueOf(
+                System.getProperty("solarsystem.frameFormat", "png").toUpperCase(Locale.ROOT));
+        int frames = Integer.parseInt(args[2]);
+        double fps = args.length > 3 ? Double.parseDouble(args[3]) : DEFAULT_FPS;
+        if (width <= 0 || height <= 0 || frames < 0 || !(fps > 0)) {
+            throw new IllegalArgumentException("The frame size, frame count and fps have to be positive");
+        }
+
+        try {
+            SolarSystem scene = new SolarSystem(SolFile.read(args[0]), 1 / fps);
+            long start = System.nanoTime();
+            FrameReadback readback;
+            try (FrameEncoder encoder = new FrameEncoder(Paths.get(args[1]), format, width, height,
+                    Runtime.getRuntime().availableProcessors())) {
+                readback = render(scene, encoder, width, height, frames);
+            }
+            double seconds = (System.nanoTime() - start) * 1e-9;
+            System.out.printf(Locale.ROOT, "%d frames in %.2f s, %.1f frames/s, %d readback stalls%n",
+                    readback.getFrames(), seconds, readback.getFrames() / seconds, readback.getStalls());
+        } catch (FileNotFoundException e) {
+            System.err.println("Could not find your .sol file!");
+        } catch (FileSystemException e) {
+            System.err.println(e.getMessage());
+        } catch (InterruptedIOException e) {
+            // the encoder has already set the interrupt flag again
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Could not write the frames: " + e.getMessage());
+        }
+    }
+
+    private static FrameReadback render(SolarSystem scene, FrameEncoder encoder, int width, int height, int frames) {
+        GLProfile profile = GLProfile.getMaxProgrammableCore(true);
+        GLCapabilities caps = new GLCapabilities(profile);
+        caps.setOnscreen(false);
+        caps.setFBO(true);
+        caps.setDoubleBuffered(false);
+        caps.setDepthBits(24);
+        GLOffscreenAutoDrawable drawable = GLDrawableFactory.getFactory(profile)
+                .createOffscreenAutoDrawable(null, caps, null, width, height);
+        FrameReadback readback = new FrameReadback(encoder, width, height);
+        try {
+            drawable.addGLEventListener(scene);
+            drawable.addGLEventListener(readback);
+            for (int f = 0; f < frames; f++) {
+                drawable.display();
+            }
+        } finally {
+            // disposes the listeners, which hands on the frames still being read back
+            drawable.destroy();
+        }
+        return readback;
+    }
+}
@@ -0,0 +1,114 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Solves Kepler's equation M = E - e sin E for the eccentric anomaly E of an
+ * elliptical orbit, many times per frame.
+ *
+ * Iterating from scratch for every body every frame is slow and its cost varies
+ * with e and M. Instead E(M) is tabulated once per eccentricity, over half an
+ * orbit (E(2 pi - M) = 2 pi - E(M) covers the other half). Tables exist only at
+ * TABLE_ECCENTRICITIES evenly spaced eccentricities, are built the first time an
+ * orbit needs them and shared by every orbit after that, so a catalog of any
+ * size costs at most TABLE_ECCENTRICITIES tables. A solver looks E up in the two
+ * tables around its own eccentricity, interpolating in both directions, and
+ * finishes with a fixed number of Newton steps on its exact eccentricity. The
+ * steps roughly square the error each time, so the result is as good as a full
+ * iterative solve at a fixed, small cost.
+ */
+public class KeplerSolver {
+    // samples of E over M in [0, pi] per table
+    public static final int TABLE_SIZE = 512;
+    // tables at e = 0, 1 / TABLE_ECCENTRICITIES, 2 / TABLE_ECCENTRICITIES, ...
+    public static final int TABLE_ECCENTRICITIES = 64;
+    // orbits closer to parabolic than this are not supported
+    public static final double MAX_ECCENTRICITY = 0.99;
+
+    private static final double TWO_PI = 2.0 * Math.PI;
+    private static final AtomicReferenceArray<double[]> TABLES = new AtomicReferenceArray<double[]>(TABLE_ECCENTRICITIES + 1);
+
+    private final double e;
+    private final double[] lower, upper;
+    private final double weight; // of the upper table
+    private final int newtonSteps;
+
+    public KeplerSolver(double eccentricity) {
+        if (!(eccentricity >= 0 && eccentricity <= MAX_ECCENTRICITY)) {
+            throw new IllegalArgumentException("Eccentricity " + eccentricity + " is not in [0, " + MAX_ECCENTRICITY + "]");
+        }
+        e = eccentricity;
+        double position = eccentricity * TABLE_ECCENTRICITIES;
+        int index = Math.min((int) position, TABLE_ECCENTRICITIES - 1);
+        lower = table(index);
+        upper = table(index + 1);
+        weight = position - index;
+        // the tables are least accurate near periapsis of very eccentric orbits,
+        // where E changes fastest with M
+        newtonSteps = eccentricity < 0.5 ? 1 : eccentricity < 0.9 ? 2 : 3;
+    }
+
+    private static double[] table(int index) {
+        double[] table = TABLES.get(index);
+        if (table == null) {
+            table = new double[TABLE_SIZE + 1];
+            double eccentricity = (double) index / TABLE_ECCENTRICITIES;
+            for (int k = 0; k <= TABLE_SIZE; k++) {
+                table[k] = solve(eccentricity, Math.PI * k / TABLE_SIZE);
+            }
+            // two threads may build the same table, either copy will do
+            TABLES.compareAndSet(index, null, table);
+            table = TABLES.get(index);
+        }
+        return table;
+    }
+
+    /**
+     * Reference solver: Newton's method until E stops changing, started from
+     * pi for eccentric orbits where M + e sin M can overshoot.
+     */
+    public static double solve(double eccentricity, double meanAnomaly) {
+        double E = eccentricity < 0.8 ? meanAnomaly + eccentricity * Math.sin(meanAnomaly) : Math.PI;
+        for (int i = 0; i < 100; i++) {
+            double step = (E - eccentricity * Math.sin(E) - meanAnomaly) / (1 - eccentricity * Math.cos(E));
+            E -= step;
+            if (Math.abs(step) < 1e-15) {
+                break;
+            }
+        }
+        return E;
+    }
+
+    public double getEccentricity() {
+        return e;
+    }
+
+    /**
+     * The eccentric anomaly for a mean anomaly in [0, 2 pi), with its cosine and
+     * sine, written into out[0], out[1] and out[2].
+     */
+    public void eccentricAnomaly(double meanAnomaly, double[] out) {
+        boolean mirrored = meanAnomaly > Math.PI;
+        double M = mirrored ? TWO_PI - meanAnomaly : meanAnomaly;
+        double position = M * (TABLE_SIZE / Math.PI);
+        int k = Math.min((int) position, TABLE_SIZE - 1);
+        double f = position - k;
+        double low = lower[k] + f * (lower[k + 1] - lower[k]);
+        double high = upper[k] + f * (upper[k + 1] - upper[k]);
+        double E = low + weight * (high - low);
+        double cos = 0, sin = 0, delta = 0;
+        for (int i = 0; i < newtonSteps; i++) {
+            cos = Math.cos(E);
+            sin = Math.sin(E);
+            delta = -(E - e * sin - M) / (1 - e * cos);
+            E += delta;
+        }
+        // the last step moved E a little past where cos and sin were taken; a second
+        // order update brings them along without calling cos and sin again
+        double halfDelta2 = 0.5 * delta * delta;
+        double newCos = cos - delta * sin - halfDelta2 * cos;
+        sin = sin + delta * cos - halfDelta2 * sin;
+        cos = newCos;
+        out[0] = mirrored ? TWO_PI - E : E;
+        out[1] = cos;
+        out[2] = mirrored ? -sin : sin;
+    }
+}
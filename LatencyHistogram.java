@@ -0,0 +1,98 @@
+import java.util.Arrays;
+
+/**
+ * Histogram of durations in nanoseconds with a fixed relative precision, for
+ * percentiles of frame and phase times.
+ *
+ * Buckets are log-linear: every power of two is split into SUB_BUCKETS equal
+ * buckets, so any recorded value is known to within about 3% whatever its size,
+ * and recording is a few shifts and an increment with no allocation. Values past
+ * about half an hour land in the last bucket.
+ *
+ * Not thread safe.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // the last power of two with buckets of its own is 2^(MAX_SHIFT + SUB_BUCKET_BITS), about 2^40 ns
+    private static final int MAX_SHIFT = 35;
+    private static final int NUM_BUCKETS = (MAX_SHIFT + 2) * SUB_BUCKETS;
+
+    private final long[] counts = new long[NUM_BUCKETS];
+    private long count, sum, max, min = Long.MAX_VALUE;
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[bucket(value)]++;
+        count++;
+        sum += value;
+        max = Math.max(max, value);
+        min = Math.min(min, value);
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        if (shift > MAX_SHIFT) {
+            return NUM_BUCKETS - 1;
+        }
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /** The largest value that lands in the bucket. */
+    private static long highestIn(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        return ((long) (bucket - shift * SUB_BUCKETS + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public long getMin() {
+        return count > 0 ? min : 0;
+    }
+
+    public double getMean() {
+        return count > 0 ? (double) sum / count : 0;
+    }
+
+    /**
+     * The value below which the given percentage of recorded values fall, to the
+     * histogram's precision, and never more than the largest value recorded.
+     *
+     * @param percentile from 0 to 100
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("A percentile is from 0 to 100, not " + percentile);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int b = 0; b < NUM_BUCKETS; b++) {
+            seen += counts[b];
+            if (seen >= rank) {
+                return Math.max(getMin(), Math.min(highestIn(b), max));
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = sum = max = 0;
+        min = Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,248 @@
+import java.util.Arrays;
+
+import org.joml.Matrix4f;
+
+/**
+ * Sorts point lights into clusters of the view frustum, so a fragment only
+ * evaluates the lights that can reach it.
+ *
+ * The frustum is cut into tiles of tileSize pixels on screen and numSlices slices
+ * in depth. Slices are spaced exponentially between the near and far planes, so a
+ * slice is as deep as it is wide wherever it is, and a fragment finds its slice
+ * with one log:
+ *
+ *     slice = floor(log(viewDepth) * sliceScale + sliceBias)
+ *
+ * Each light reaches out to a fixed range. Its sphere is bounded by the tiles its
+ * projected bounding box covers and the slices its depth interval covers, and its
+ * index goes into every cluster of that block. That is conservative, a light may
+ * land in a corner cluster its sphere misses, but never the other way round.
+ *
+ * The result is two flat int arrays ready to upload: getClusters() holds a (first,
+ * count) pair per cluster, indexing into getIndices(), which holds the light
+ * indices of every cluster one after another. Clusters are numbered
+ * (slice * tilesY + tileY) * tilesX + tileX, with tile (0, 0) at the bottom left,
+ * where gl_FragCoord counts from.
+ */
+public class LightClusters {
+    public static final int DEFAULT_TILE_SIZE = 64;
+    public static final int DEFAULT_SLICES = 16;
+    // a light's range ends where its attenuation falls to this, the shader fades it to 0 there
+    public static final float CUTOFF = 1 / 256f;
+
+    private final int tileSize, numSlices;
+    private int width, height, tilesX, tilesY, numClusters;
+    private float near, far, sliceScale, sliceBias;
+
+    private int[] clusters = new int[0];
+    private int[] counts = new int[0];
+    private int[] indices = new int[64];
+    private int numIndices;
+    // per light: first and last tile x, tile y and slice, or an empty block when out of view
+    private int[] blocks = new int[6 * 8];
+
+    public LightClusters(int tileSize, int numSlices) {
+        if (tileSize <= 0 || numSlices <= 0) {
+            throw new IllegalArgumentException("The tile size and slice count have to be positive");
+        }
+        this.tileSize = tileSize;
+        this.numSlices = numSlices;
+    }
+
+    /**
+     * How far a light with the given linear attenuation reaches before it falls to
+     * CUTOFF, infinite without attenuation.
+     */
+    public static float range(float linearAttenuation) {
+        return linearAttenuation > 0 ? (1 / CUTOFF - 1) / linearAttenuation : Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Sets the viewport and the near and far planes of the projection, which fix the
+     * cluster grid.
+     */
+    public void resize(int width, int height, float near, float far) {
+        if (width <= 0 || height <= 0 || !(near > 0 && far > near)) {
+            throw new IllegalArgumentException("Bad viewport " + width + "x" + height + " or depth range " + near
+                    + " to " + far);
+        }
+        this.width = width;
+        this.height = height;
+        this.near = near;
+        this.far = far;
+        tilesX = (width + tileSize - 1) / tileSize;
+        tilesY = (height + tileSize - 1) / tileSize;
+        numClusters = tilesX * tilesY * numSlices;
+        clusters = new int[2 * numClusters];
+        counts = new int[numClusters];
+        double logRatio = Math.log(far / (double) near);
+        sliceScale = (float) (numSlices / logRatio);
+        sliceBias = (float) (-numSlices * Math.log(near) / logRatio);
+    }
+
+    /**
+     * Rebuilds the clusters for this frame.
+     *
+     * @param positions x, y, z of each light in world space
+     * @param ranges    how far each light reaches, see range()
+     */
+    public void assign(Matrix4f view, Matrix4f projection, float[] positions, float[] ranges, int numLights) {
+        if (numClusters == 0) {
+            throw new IllegalStateException("resize() has to set the viewport first");
+        }
+        if (blocks.length < 6 * numLights) {
+            blocks = new int[6 * numLights];
+        }
+        Arrays.fill(counts, 0);
+        for (int l = 0; l < numLights; l++) {
+            int b = 6 * l;
+            bound(view, projection, positions[3 * l], positions[3 * l + 1], positions[3 * l + 2], ranges[l], b);
+            for (int s = blocks[b + 4]; s <= blocks[b + 5]; s++) {
+                for (int y = blocks[b + 2]; y <= blocks[b + 3]; y++) {
+                    int row = (s * tilesY + y) * tilesX;
+                    for (int x = blocks[b]; x <= blocks[b + 1]; x++) {
+                        counts[row + x]++;
+                    }
+                }
+            }
+        }
+        int first = 0;
+        for (int c = 0; c < numClusters; c++) {
+            clusters[2 * c] = first;
+            clusters[2 * c + 1] = 0;
+            first += counts[c];
+        }
+        numIndices = first;
+        if (indices.length < numIndices) {
+            indices = new int[Math.max(numIndices, indices.length * 2)];
+        }
+        // lights go in in index order, so every cluster lists its lights in order
+        for (int l = 0; l < numLights; l++) {
+            int b = 6 * l;
+            for (int s = blocks[b + 4]; s <= blocks[b + 5]; s++) {
+                for (int y = blocks[b + 2]; y <= blocks[b + 3]; y++) {
+                    int row = (s * tilesY + y) * tilesX;
+                    for (int x = blocks[b]; x <= blocks[b + 1]; x++) {
+                        int c = row + x;
+                        indices[clusters[2 * c] + clusters[2 * c + 1]++] = l;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the block of clusters a light's sphere touches to blocks[b] to
+     * blocks[b + 5], or an empty block if the sphere is out of view.
+     */
+    private void bound(Matrix4f view, Matrix4f projection, float wx, float wy, float wz, float range, int b) {
+        float cx = view.m00() * wx + view.m10() * wy + view.m20() * wz + view.m30();
+        float cy = view.m01() * wx + view.m11() * wy + view.m21() * wz + view.m31();
+        float depth = -(view.m02() * wx + view.m12() * wy + view.m22() * wz + view.m32());
+        float zMin = depth - range, zMax = depth + range;
+        if (zMax < near || zMin > far) {
+            empty(b);
+            return;
+        }
+        blocks[b + 4] = slice(Math.max(zMin, near));
+        blocks[b + 5] = slice(Math.min(zMax, far));
+        if (zMin <= near) {
+            // the sphere reaches behind the near plane, where projecting it means nothing
+            blocks[b] = blocks[b + 2] = 0;
+            blocks[b + 1] = tilesX - 1;
+            blocks[b + 3] = tilesY - 1;
+            return;
+        }
+        // every corner of the sphere's view space box is in front of the camera, and
+        // the box's projection bounds the sphere's
+        float minX = Float.POSITIVE_INFINITY, maxX = Float.NEGATIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (int corner = 0; corner < 8; corner++) {
+            float x = cx + ((corner & 1) == 0 ? -range : range);
+            float y = cy + ((corner & 2) == 0 ? -range : range);
+            float z = -((corner & 4) == 0 ? zMin : zMax);
+            float w = projection.m03() * x + projection.m13() * y + projection.m23() * z + projection.m33();
+            float ndcX = (projection.m00() * x + projection.m10() * y + projection.m20() * z + projection.m30()) / w;
+            float ndcY = (projection.m01() * x + projection.m11() * y + projection.m21() * z + projection.m31()) / w;
+            minX = Math.min(minX, ndcX);
+            maxX = Math.max(maxX, ndcX);
+            minY = Math.min(minY, ndcY);
+            maxY = Math.max(maxY, ndcY);
+        }
+        if (maxX < -1 || minX > 1 || maxY < -1 || minY > 1) {
+            empty(b);
+            return;
+        }
+        blocks[b] = tile(minX, width, tilesX);
+        blocks[b + 1] = tile(maxX, width, tilesX);
+        blocks[b + 2] = tile(minY, height, tilesY);
+        blocks[b + 3] = tile(maxY, height, tilesY);
+    }
+
+    private void empty(int b) {
+        blocks[b] = blocks[b + 2] = blocks[b + 4] = 0;
+        blocks[b + 1] = blocks[b + 3] = blocks[b + 5] = -1;
+    }
+
+    private int tile(float ndc, int pixels, int tiles) {
+        int tile = (int) Math.floor((ndc * 0.5f + 0.5f) * pixels / tileSize);
+        return Math.max(0, Math.min(tiles - 1, tile));
+    }
+
+    /** The slice holding the given view depth, the same one the shader computes. */
+    public int slice(float depth) {
+        int slice = (int) Math.floor(Math.log(depth) * sliceScale + sliceBias);
+        return Math.max(0, Math.min(numSlices - 1, slice));
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public int getTilesX() {
+        return tilesX;
+    }
+
+    public int getTilesY() {
+        return tilesY;
+    }
+
+    public int getNumSlices() {
+        return numSlices;
+    }
+
+    public int getNumClusters() {
+        return numClusters;
+    }
+
+    public float getSliceScale() {
+        return sliceScale;
+    }
+
+    public float getSliceBias() {
+        return sliceBias;
+    }
+
+    /** (first index, light count) of each cluster, 2 * getNumClusters() ints. */
+    public int[] getClusters() {
+        return clusters;
+    }
+
+    /** Light indices of every cluster, the first getNumIndices() of them. */
+    public int[] getIndices() {
+        return indices;
+    }
+
+    public int getNumIndices() {
+        return numIndices;
+    }
+
+    /** The most lights any one cluster got from the last assign(). */
+    public int getMaxLightsPerCluster() {
+        int max = 0;
+        for (int c = 0; c < numClusters; c++) {
+            max = Math.max(max, clusters[2 * c + 1]);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,123 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A texture's full mipmap chain as tightly packed RGBA8 levels, level 0 first and
+ * each level half the size of the one before, down to 1x1.
+ */
+public class MipChain {
+    public static final int BYTES_PER_PIXEL = 4;
+
+    private final int width, height;
+    private final ByteBuffer[] levels;
+
+    public MipChain(int width, int height, ByteBuffer[] levels) {
+        if (levels.length != levelCount(width, height)) {
+            throw new IllegalArgumentException("A " + width + "x" + height + " texture has "
+                    + levelCount(width, height) + " mip levels, not " + levels.length);
+        }
+        this.width = width;
+        this.height = height;
+        this.levels = levels;
+    }
+
+    public static int levelCount(int width, int height) {
+        return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+
+    /** Width or height of a level, given the size of level 0. */
+    public static int levelSize(int size, int level) {
+        return Math.max(1, size >> level);
+    }
+
+    /** Bytes in every level together. */
+    public static long chainBytes(int width, int height) {
+        long total = 0;
+        for (int l = 0; l < levelCount(width, height); l++) {
+            total += (long) levelSize(width, l) * levelSize(height, l) * BYTES_PER_PIXEL;
+        }
+        return total;
+    }
+
+    /**
+     * Builds the chain from level 0 by averaging 2x2 blocks, the box filter
+     * glGenerateMipmap uses. On odd sizes the last row or column is reused.
+     */
+    public static MipChain build(int width, int height, byte[] rgba) {
+        ByteBuffer[] levels = new ByteBuffer[levelCount(width, height)];
+        levels[0] = ByteBuffer.allocateDirect(rgba.length).put(rgba).flip();
+        byte[] src = rgba;
+        int srcWidth = width, srcHeight = height;
+        for (int l = 1; l < levels.length; l++) {
+            int dstWidth = levelSize(width, l), dstHeight = levelSize(height, l);
+            byte[] dst = new byte[dstWidth * dstHeight * BYTES_PER_PIXEL];
+            for (int y = 0; y < dstHeight; y++) {
+                int row0 = Math.min(2 * y, srcHeight - 1) * srcWidth;
+                int row1 = Math.min(2 * y + 1, srcHeight - 1) * srcWidth;
+                for (int x = 0; x < dstWidth; x++) {
+                    int col0 = Math.min(2 * x, srcWidth - 1);
+                    int col1 = Math.min(2 * x + 1, srcWidth - 1);
+                    int a = (row0 + col0) * BYTES_PER_PIXEL, b = (row0 + col1) * BYTES_PER_PIXEL;
+                    int c = (row1 + col0) * BYTES_PER_PIXEL, d = (row1 + col1) * BYTES_PER_PIXEL;
+                    int o = (y * dstWidth + x) * BYTES_PER_PIXEL;
+                    for (int k = 0; k < BYTES_PER_PIXEL; k++) {
+                        dst[o + k] = (byte) (((src[a + k] & 0xFF) + (src[b + k] & 0xFF)
+                                + (src[c + k] & 0xFF) + (src[d + k] & 0xFF) + 2) >> 2);
+                    }
+                }
+            }
+            levels[l] = ByteBuffer.allocateDirect(dst.length).put(dst).flip();
+            src = dst;
+            srcWidth = dstWidth;
+            srcHeight = dstHeight;
+        }
+        return new MipChain(width, height, levels);
+    }
+
+    /**
+     * This texture at another resolution. When some level already has that size the
+     * chain is simply cut there; otherwise the smallest level at least as large as
+     * the target is resampled bilinearly and a new chain built from the result.
+     */
+    public MipChain resize(int newWidth, int newHeight) {
+        int l = 0;
+        while (l + 1 < levels.length && getLevelWidth(l + 1) >= newWidth && getLevelHeight(l + 1) >= newHeight) {
+            l++;
+        }
+        int srcWidth = getLevelWidth(l), srcHeight = getLevelHeight(l);
+        if (srcWidth == newWidth && srcHeight == newHeight) {
+            return new MipChain(newWidth, newHeight, Arrays.copyOfRange(levels, l, levels.length));
+        }
+        byte[] src = new byte[srcWidth * srcHeight * BYTES_PER_PIXEL];
+        getLevel(l).get(src);
+        byte[] dst = new byte[newWidth * newHeight * BYTES_PER_PIXEL];
+        float scaleX = (float) srcWidth / newWidth, scaleY = (float) srcHeight / newHeight;
+        for (int y = 0; y < newHeight; y++) {
+            float sy = Math.max(0, Math.min(srcHeight - 1, (y + 0.5f) * scaleY - 0.5f));
+            int y0 = (int) sy, y1 = Math.min(y0 + 1, srcHeight - 1);
+            float fy = sy - y0;
+            for (int x = 0; x < newWidth; x++) {
+                float sx = Math.max(0, Math.min(srcWidth - 1, (x + 0.5f) * scaleX - 0.5f));
+                int x0 = (int) sx, x1 = Math.min(x0 + 1, srcWidth - 1);
+                float fx = sx - x0;
+                int a = (y0 * srcWidth + x0) * BYTES_PER_PIXEL, b = (y0 * srcWidth + x1) * BYTES_PER_PIXEL;
+                int c = (y1 * srcWidth + x0) * BYTES_PER_PIXEL, d = (y1 * srcWidth + x1) * BYTES_PER_PIXEL;
+                int o = (y * newWidth + x) * BYTES_PER_PIXEL;
+                for (int k = 0; k < BYTES_PER_PIXEL; k++) {
+                    float top = (src[a + k] & 0xFF) + fx * ((src[b + k] & 0xFF) - (src[a + k] & 0xFF));
+                    float bottom = (src[c + k] & 0xFF) + fx * ((src[d + k] & 0xFF) - (src[c + k] & 0xFF));
+                    dst[o + k] = (byte) Math.round(top + fy * (bottom - top));
+                }
+            }
+        }
+        return build(newWidth, newHeight, dst);
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+    public int getLevelCount() { return levels.length; }
+    public int getLevelWidth(int level) { return levelSize(width, level); }
+    public int getLevelHeight(int level) { return levelSize(height, level); }
+    /** The pixels of one level. Each call returns a fresh view, read it freely. */
+    public ByteBuffer getLevel(int level) { return levels[level].duplicate(); }
+}
@@ -0,0 +1,233 @@
+import java.util.Arrays;
+
+/**
+ * Batch ephemeris for kinematic scenes: the world position of every body at any
+ * time, straight from primitive arrays, without building matrices.
+ *
+ * As long as no orbit is inclined, every orbit frame is its parent's turned about
+ * Y and moved along its own X, so a body's frame is fully described by one
+ * cumulative angle A (its own orbit angle plus its parent's A) and a position
+ *
+ *     frame = parentFrame + r * (cos A, 0, -sin A)
+ *
+ * and the drawn body sits at frame + rotateY(A) * offset, exactly what
+ * SceneGraph.update computes with 4x4 matrices. For a circular orbit the angle
+ * is the mean anomaly and r the distance; for an elliptical one, or one turned by
+ * its ascending node or periapsis, both come from the KeplerSolver first, one
+ * body at a time. Scenes with inclined orbits are not supported. Bodies are evaluated level by
+ * level of the tree, so every parent is done before any of its children and each
+ * level is one flat, independent loop. That is what lets VectorOrbitEvaluator run
+ * a level several bodies at a time.
+ *
+ * Results are doubles. They match SceneGraph, which works in float, to float
+ * precision, but are not bit-identical to it.
+ *
+ * Not thread safe: each evaluator has scratch arrays of its own.
+ */
+public class OrbitEvaluator {
+    protected static final double TWO_PI = 2.0 * Math.PI;
+
+    protected final int size;
+    protected final double offsetX, offsetY, offsetZ;
+    // everything below is in level order: roots first, then their children, and so on
+    protected final int[] levelStarts;    // first slot of each level, plus one past the end
+    protected final int[] bodies;         // body index of each slot
+    protected final int[] parentSlots;    // slot of each slot's parent, unused for roots
+    protected final double[] invPeriods;  // 1 / orbital period
+    protected final double[] distances;
+    // slots whose angle and distance come from orbitAngle() rather than straight from the period
+    protected final boolean[] elliptical;
+    protected final boolean anyElliptical;
+    private final double[] eccentricities, periapsisAngles; // ascending node plus argument of periapsis
+    private final KeplerSolver[] solvers;
+    // scratch written by every evaluation
+    protected final double[] angles, frameX, frameY, frameZ;
+    // an elliptical slot's angle from its parent's and its distance, from orbitAngle()
+    protected final double[] orbitAngles, radii;
+    private final double[] anomaly = new double[3];
+
+    /**
+     * Takes the orbits straight from a scene graph, the same ones update() uses.
+     *
+     * @throws IllegalArgumentException if any orbit is inclined, see supports()
+     */
+    public OrbitEvaluator(SceneGraph sceneGraph) {
+        if (!supports(sceneGraph)) {
+            throw new IllegalArgumentException("Inclined orbits can not be evaluated without matrices");
+        }
+        size = sceneGraph.size();
+        offsetX = sceneGraph.getOffsetX();
+        offsetY = sceneGraph.getOffsetY();
+        offsetZ = sceneGraph.getOffsetZ();
+
+        // counting sort by depth; parents come before children, so one pass finds every depth
+        int[] depths = new int[size];
+        int numLevels = size > 0 ? 1 : 0;
+        for (int i = 0; i < size; i++) {
+            int parent = sceneGraph.getParent(i);
+            depths[i] = parent == SceneGraph.NO_PARENT ? 0 : depths[parent] + 1;
+            numLevels = Math.max(numLevels, depths[i] + 1);
+        }
+        levelStarts = new int[numLevels + 1];
+        for (int i = 0; i < size; i++) {
+            levelStarts[depths[i] + 1]++;
+        }
+        for (int l = 0; l < numLevels; l++) {
+            levelStarts[l + 1] += levelStarts[l];
+        }
+        int[] next = Arrays.copyOf(levelStarts, numLevels);
+        int[] slots = new int[size];
+        bodies = new int[size];
+        parentSlots = new int[size];
+        invPeriods = new double[size];
+        distances = new double[size];
+        elliptical = new boolean[size];
+        eccentricities = new double[size];
+        periapsisAngles = new double[size];
+        solvers = new KeplerSolver[size];
+        boolean any = false;
+        for (int i = 0; i < size; i++) {
+            int slot = next[depths[i]]++;
+            slots[i] = slot;
+            bodies[slot] = i;
+            int parent = sceneGraph.getParent(i);
+            parentSlots[slot] = parent == SceneGraph.NO_PARENT ? 0 : slots[parent];
+            invPeriods[slot] = 1.0 / sceneGraph.getOrbitalPeriod(i);
+            distances[slot] = sceneGraph.getDistance(i);
+            if (parent != SceneGraph.NO_PARENT && !sceneGraph.isCircular(i)) {
+                elliptical[slot] = any = true;
+                eccentricities[slot] = sceneGraph.getEccentricity(i);
+                periapsisAngles[slot] = (double) sceneGraph.getAscendingNode(i) + sceneGraph.getPeriapsisArgument(i);
+                if (eccentricities[slot] != 0) {
+                    solvers[slot] = new KeplerSolver(eccentricities[slot]);
+                }
+            }
+        }
+        anyElliptical = any;
+        orbitAngles = new double[size];
+        radii = new double[size];
+        angles = new double[size];
+        frameX = new double[size];
+        frameY = new double[size];
+        frameZ = new double[size];
+    }
+
+    /** Whether no orbit in the scene is inclined, which is all this class can evaluate. */
+    public static boolean supports(SceneGraph sceneGraph) {
+        for (int i = 0; i < sceneGraph.size(); i++) {
+            if (sceneGraph.getInclination(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The fastest evaluator this JVM can run: VectorOrbitEvaluator when the
+     * jdk.incubator.vector module is present (run with --add-modules
+     * jdk.incubator.vector), this scalar one otherwise.
+     */
+    public static OrbitEvaluator create(SceneGraph sceneGraph) {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                return (OrbitEvaluator) Class.forName("VectorOrbitEvaluator")
+                        .getConstructor(SceneGraph.class).newInstance(sceneGraph);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // built without the vector evaluator, fall through to the scalar one
+            }
+        }
+        return new OrbitEvaluator(sceneGraph);
+    }
+
+    /** Whether positions are computed several bodies at a time. */
+    public boolean isVectorized() {
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * World position of every body at time t, written into x, y and z by body
+     * index. Each array needs one entry per body.
+     */
+    public void positionsAt(double t, double[] x, double[] y, double[] z) {
+        if (x.length < size || y.length < size || z.length < size) {
+            throw new IllegalArgumentException("Need room for " + size + " positions");
+        }
+        if (size == 0) {
+            return;
+        }
+        for (int s = 0; s < levelStarts[1]; s++) {
+            root(s, x, y, z);
+        }
+        for (int l = 1; l + 1 < levelStarts.length; l++) {
+            evaluateLevel(t, levelStarts[l], levelStarts[l + 1], x, y, z);
+        }
+    }
+
+    /** Roots do not orbit anything and sit at the origin, turned by nothing. */
+    protected final void root(int s, double[] x, double[] y, double[] z) {
+        angles[s] = 0;
+        frameX[s] = frameY[s] = frameZ[s] = 0;
+        x[bodies[s]] = offsetX;
+        y[bodies[s]] = offsetY;
+        z[bodies[s]] = offsetZ;
+    }
+
+    /**
+     * Evaluates slots from (inclusive) to to (exclusive), all of one level, whose
+     * parents are already done.
+     */
+    protected void evaluateLevel(double t, int from, int to, double[] x, double[] y, double[] z) {
+        for (int s = from; s < to; s++) {
+            evaluate(t, s, x, y, z);
+        }
+    }
+
+    protected final void evaluate(double t, int s, double[] x, double[] y, double[] z) {
+        int p = parentSlots[s];
+        double angle, distance;
+        if (elliptical[s]) {
+            orbitAngle(t, s);
+            angle = angles[p] + orbitAngles[s];
+            distance = radii[s];
+        } else {
+            double phase = t * invPeriods[s];
+            angle = angles[p] + (phase - Math.floor(phase)) * TWO_PI;
+            distance = distances[s];
+        }
+        double cos = Math.cos(angle), sin = Math.sin(angle);
+        double fx = frameX[p] + distance * cos;
+        double fy = frameY[p];
+        double fz = frameZ[p] - distance * sin;
+        angles[s] = angle;
+        frameX[s] = fx;
+        frameY[s] = fy;
+        frameZ[s] = fz;
+        int body = bodies[s];
+        x[body] = fx + cos * offsetX + sin * offsetZ;
+        y[body] = fy + offsetY;
+        z[body] = fz - sin * offsetX + cos * offsetZ;
+    }
+
+    /**
+     * Writes an elliptical slot's angle from its parent's frame, periapsis plus
+     * true anomaly, into orbitAngles and its distance from the parent into radii.
+     */
+    protected final void orbitAngle(double t, int s) {
+        double phase = t * invPeriods[s];
+        double meanAnomaly = (phase - Math.floor(phase)) * TWO_PI;
+        KeplerSolver solver = solvers[s];
+        if (solver == null) {
+            orbitAngles[s] = periapsisAngles[s] + meanAnomaly;
+            radii[s] = distances[s];
+            return;
+        }
+        solver.eccentricAnomaly(meanAnomaly, anomaly);
+        double e = eccentricities[s], cosE = anomaly[1], sinE = anomaly[2];
+        orbitAngles[s] = periapsisAngles[s] + Math.atan2(Math.sqrt(1 - e * e) * sinE, cosE - e);
+        radii[s] = distances[s] * (1 - e * cosE);
+    }
+}
@@ -0,0 +1,107 @@
+import org.joml.*;
+
+public class Planet implements SolarBody{
+    public String textureFile;
+    public float radius;
+    public float rotationPeriod;
+    public SolarBody orbiting;
+    public float distFromCenter;
+    public float orbitalPeriod;
+    public float specularComponent;
+    public float eccentricity;
+    public float inclination;
+    public float longitudeOfAscendingNode;
+    public float argumentOfPeriapsis;
+    public Vector3f position;
+    public float angle;
+
+    public Planet(String textureFile, float radius, float rotationPeriod,float distFromCenter, float orbitalPeriod,float specularComponent,SolarBody orbiting){
+        this.textureFile = textureFile;
+        this.radius = radius;
+        this.rotationPeriod = rotationPeriod;
+        this.orbiting = orbiting;
+        this.distFromCenter = distFromCenter;
+        this.orbitalPeriod = orbitalPeriod;
+        this.specularComponent = specularComponent;
+        this.position = new Vector3f();
+    }
+
+    //constructor for an elliptical or inclined orbit, distFromCenter is the semi-major axis
+    public Planet(String textureFile, float radius, float rotationPeriod,float distFromCenter, float orbitalPeriod,float specularComponent,SolarBody orbiting,
+                  float eccentricity, float inclination, float longitudeOfAscendingNode, float argumentOfPeriapsis){
+        this(textureFile, radius, rotationPeriod, distFromCenter, orbitalPeriod, specularComponent, orbiting);
+        this.eccentricity = eccentricity;
+        this.inclination = inclination;
+        this.longitudeOfAscendingNode = longitudeOfAscendingNode;
+        this.argumentOfPeriapsis = argumentOfPeriapsis;
+    }
+    public String toString(){
+        return "textureFile: " + textureFile
+                + "\nradius: " + radius
+                + "\nrotation period: " + rotationPeriod
+                + "\ndistance from center: " + distFromCenter
+                + "\norbital period: " + orbitalPeriod
+                + "\nspecular: " + specularComponent
+                + "\neccentricity: " + eccentricity
+                + "\ninclination: " + inclination
+                + "\nlongitude of ascending node: " + longitudeOfAscendingNode
+                + "\nargument of periapsis: " + argumentOfPeriapsis;
+    }
+
+    @Override
+    public Vector3f getPosition() {
+        return position;
+    }
+
+    @Override
+    public float getRotationPeriod() {
+        return rotationPeriod;
+    }
+
+    @Override
+    public void setPosition(Vector3f position) {
+        this.position = position;
+    }
+    public float getAngle(){
+        return angle;
+    }
+    public void setAngle(float angle){
+        this.angle = angle;
+    }
+    public float x(){
+        return position.x();
+    }
+    public float y(){
+        return position.y();
+    }
+    public float z(){
+        return position.z();
+    }
+    public String getTextureFile(){
+        return textureFile;
+    }
+    public float getRadius(){
+        return radius;
+    }
+    public SolarBody getParent(){
+        return orbiting;
+    }
+    public float distFromCenter(){
+        return distFromCenter;
+    }
+    public float orbitalPeriod(){
+        return orbitalPeriod;
+    }
+    public float eccentricity(){
+        return eccentricity;
+    }
+    public float inclination(){
+        return inclination;
+    }
+    public float longitudeOfAscendingNode(){
+        return longitudeOfAscendingNode;
+    }
+    public float argumentOfPeriapsis(){
+        return argumentOfPeriapsis;
+    }
+}
@@ -0,0 +1,558 @@
+import org.joml.FrustumIntersection;
+import org.joml.Matrix3f;
+
+/**
+ * Flattened orbit hierarchy stored as parallel primitive arrays.
+ *
+ * Bodies are kept in topological order (every parent comes before its children),
+ * so the world transform of every body can be computed in a single forward pass:
+ * each orbit frame is its parent's frame times the body's own orbit rotation and
+ * translation, and nothing is ever walked up the parent chain.
+ *
+ * All matrices are 4x4, column major (the layout JOML and glUniformMatrix4fv use),
+ * packed MATRIX_SIZE floats per body.
+ *
+ * Orbits are Keplerian ellipses. A body with no orbital elements moves on a
+ * circle in its parent's XZ plane, which is the common case and takes the short
+ * path through update. Otherwise its frame is
+ *
+ *     parent * rotateY(node) * rotateX(inclination) * rotateY(periapsis + trueAnomaly)
+ *            * translate(r, 0, 0)
+ *
+ * with r and the true anomaly following from a KeplerSolver, distance being the
+ * semi-major axis. Children move with that whole frame, just as they always
+ * turned with their parent's circular orbit.
+ *
+ * Orbits are bounded, so everything in a body's subtree (the body and whatever
+ * orbits it, however deep) always stays inside a sphere of fixed radius around the
+ * body's orbit frame origin. update can test those spheres against a view frustum
+ * and skip whole subtrees that are out of view: their bodies are neither
+ * transformed nor drawn.
+ */
+public class SceneGraph {
+    public static final int MATRIX_SIZE = 16;
+    public static final int NO_PARENT = -1;
+
+    private static final double TWO_PI = 2.0 * Math.PI;
+
+    private final int size;
+    private final int[] parents;
+    private final float[] distances;
+    private final float[] orbitalPeriods;
+    private final float[] rotationPeriods;
+    private final float[] radii;
+    private final float[] eccentricities, inclinations, ascendingNodes, periapsisArguments;
+    private final float offsetX, offsetY, offsetZ;
+
+    // for bodies with orbital elements: rotateY(node) * rotateX(inclination) * rotateY(periapsis),
+    // 3x3 column major, and the solver for the eccentric anomaly (null for circles)
+    private final boolean[] circular;
+    private final float[] tilts;
+    private final KeplerSolver[] solvers;
+    private final double[] anomaly = new double[3];
+
+    // the arrays of the target snapshot, where updates write
+    private TransformSnapshot target;
+    // orbit frame of each body (no scale or spin), children are placed relative to it
+    private float[] frames;
+    // what actually gets drawn: frame * translate(offset) * scale(radius) * spin
+    private float[] models;
+    private float[] normals;
+
+    // radius around each orbit frame origin that holds the body and all of its descendants
+    private final float[] subtreeRadii;
+    private boolean[] visible;
+    // bodies whose frames are written even when culled, and their ancestors
+    private final boolean[] pinned;
+    private int visibleBodies, boundsTested, culledSubtrees;
+
+    /**
+     * A scene of circular orbits in each parent's XZ plane.
+     *
+     * @param parents index of each body's parent, or NO_PARENT for roots. Every parent
+     *                index must be smaller than the index of its child.
+     * @param offsetX offset of the drawn sphere inside its own orbit frame
+     */
+    public SceneGraph(int[] parents, float[] distances, float[] orbitalPeriods, float[] rotationPeriods,
+                      float[] radii, float offsetX, float offsetY, float offsetZ) {
+        this(parents, distances, orbitalPeriods, rotationPeriods, radii, new float[parents.length],
+                new float[parents.length], new float[parents.length], new float[parents.length],
+                offsetX, offsetY, offsetZ);
+    }
+
+    /**
+     * A scene of Keplerian orbits. Angles are in radians.
+     *
+     * @param distances          semi-major axis of each orbit
+     * @param ascendingNodes     longitude of the ascending node, measured about Y from +X
+     * @param periapsisArguments angle from the ascending node to periapsis, in the orbit plane
+     */
+    public SceneGraph(int[] parents, float[] distances, float[] orbitalPeriods, float[] rotationPeriods,
+                      float[] radii, float[] eccentricities, float[] inclinations, float[] ascendingNodes,
+                      float[] periapsisArguments, float offsetX, float offsetY, float offsetZ) {
+        size = parents.length;
+        if (distances.length != size || orbitalPeriods.length != size
+                || rotationPeriods.length != size || radii.length != size
+                || eccentricities.length != size || inclinations.length != size
+                || ascendingNodes.length != size || periapsisArguments.length != size) {
+            throw new IllegalArgumentException("All body columns must have the same length");
+        }
+        for (int i = 0; i < size; i++) {
+            if (parents[i] < NO_PARENT || parents[i] >= i) {
+                throw new IllegalArgumentException("Body " + i + " is not listed after its parent " + parents[i]);
+            }
+        }
+        this.parents = parents;
+        this.distances = distances;
+        this.orbitalPeriods = orbitalPeriods;
+        this.rotationPeriods = rotationPeriods;
+        this.radii = radii;
+        this.eccentricities = eccentricities;
+        this.inclinations = inclinations;
+        this.ascendingNodes = ascendingNodes;
+        this.periapsisArguments = periapsisArguments;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.offsetZ = offsetZ;
+        setTarget(newSnapshot());
+        this.subtreeRadii = new float[size];
+        this.pinned = new boolean[size];
+
+        this.circular = new boolean[size];
+        this.tilts = new float[size * 9];
+        this.solvers = new KeplerSolver[size];
+        Matrix3f tilt = new Matrix3f();
+        for (int i = 0; i < size; i++) {
+            circular[i] = eccentricities[i] == 0 && inclinations[i] == 0 && ascendingNodes[i] == 0
+                    && periapsisArguments[i] == 0;
+            if (!circular[i]) {
+                tilt.rotationY(ascendingNodes[i]).rotateX(inclinations[i]).rotateY(periapsisArguments[i])
+                        .get(tilts, i * 9);
+                solvers[i] = eccentricities[i] != 0 ? new KeplerSolver(eccentricities[i]) : null;
+            }
+        }
+
+        // children come after their parents, so walking backwards finishes every
+        // subtree before it is folded into its parent's
+        float offset = (float) Math.sqrt(offsetX * offsetX + offsetY * offsetY + offsetZ * offsetZ);
+        for (int i = 0; i < size; i++) {
+            subtreeRadii[i] = offset + Math.abs(radii[i]);
+        }
+        for (int i = size - 1; i >= 0; i--) {
+            if (parents[i] != NO_PARENT) {
+                // an ellipse reaches out to apoapsis, a * (1 + e)
+                float reach = Math.abs(distances[i]) * (1 + eccentricities[i]);
+                subtreeRadii[parents[i]] = Math.max(subtreeRadii[parents[i]], reach + subtreeRadii[i]);
+            }
+        }
+    }
+
+    /**
+     * Recomputes every world matrix for the given time, parents before children.
+     * Trig goes through StrictMath so the result for a given time is bit-identical on
+     * every JVM and platform.
+     */
+    public void update(double time) {
+        update(time, null);
+    }
+
+    /**
+     * Like update(time), but first tests each subtree's bounding sphere against the
+     * frustum. A subtree outside it is marked invisible as a whole and none of its
+     * matrices are written, so they keep whatever the last update left there. The
+     * frames of pinned bodies are the exception: they are always written.
+     *
+     * @param frustum the view frustum, or null to keep every body
+     */
+    public void update(double time, FrustumIntersection frustum) {
+        visibleBodies = boundsTested = culledSubtrees = 0;
+        for (int i = 0; i < size; i++) {
+            int f = i * MATRIX_SIZE;
+            int parent = parents[i];
+            boolean insideCulled = parent != NO_PARENT && !visible[parent];
+            if (insideCulled && !pinned[i]) {
+                visible[i] = false; // inside a subtree that was already culled
+                continue;
+            }
+            if (parent == NO_PARENT) {
+                // roots (the sun) sit at the origin and do not orbit anything
+                setIdentity(frames, f);
+            } else if (circular[i]) {
+                double angle = angle(time, orbitalPeriods[i]);
+                orbit(frames, parent * MATRIX_SIZE, (float) StrictMath.cos(angle), (float) StrictMath.sin(angle),
+                        distances[i], frames, f);
+            } else {
+                ellipse(time, i, frames, parent * MATRIX_SIZE, frames, f);
+            }
+            if (insideCulled) {
+                visible[i] = false; // only its frame was wanted
+                continue;
+            }
+            if (frustum != null) {
+                boundsTested++;
+                if (!frustum.testSphere(frames[f + 12], frames[f + 13], frames[f + 14], subtreeRadii[i])) {
+                    visible[i] = false;
+                    culledSubtrees++;
+                    continue;
+                }
+            }
+            visible[i] = true;
+            visibleBodies++;
+            double spin = -angle(time, rotationPeriods[i]);
+            model(frames, f, radii[i], (float) StrictMath.cos(spin), (float) StrictMath.sin(spin), models, normals);
+        }
+        target.finish(time, visibleBodies, boundsTested, culledSubtrees);
+    }
+
+    /**
+     * Places every body at a given position instead of on its orbit, for when
+     * something else (a GravitySimulation) moves them. Frames become plain
+     * translations, models still spin with the rotation period, and each body is
+     * tested against the frustum on its own since subtrees no longer hold together.
+     *
+     * @param frustum the view frustum, or null to keep every body
+     */
+    public void place(double time, double[] x, double[] y, double[] z, FrustumIntersection frustum) {
+        visibleBodies = boundsTested = culledSubtrees = 0;
+        float offset = (float) Math.sqrt(offsetX * offsetX + offsetY * offsetY + offsetZ * offsetZ);
+        for (int i = 0; i < size; i++) {
+            int f = i * MATRIX_SIZE;
+            setIdentity(frames, f);
+            frames[f + 12] = (float) x[i];
+            frames[f + 13] = (float) y[i];
+            frames[f + 14] = (float) z[i];
+            if (frustum != null) {
+                boundsTested++;
+                if (!frustum.testSphere(frames[f + 12], frames[f + 13], frames[f + 14], offset + Math.abs(radii[i]))) {
+                    visible[i] = false;
+                    culledSubtrees++;
+                    continue;
+                }
+            }
+            visible[i] = true;
+            visibleBodies++;
+            double spin = -angle(time, rotationPeriods[i]);
+            model(frames, f, radii[i], (float) StrictMath.cos(spin), (float) StrictMath.sin(spin), models, normals);
+        }
+        target.finish(time, visibleBodies, boundsTested, culledSubtrees);
+    }
+
+    /**
+     * Angle swept after time units by something with the given period. The phase is
+     * reduced before scaling so long runs do not lose precision in the angle.
+     */
+    static double angle(double time, float period) {
+        double phase = time / period;
+        return (phase - Math.floor(phase)) * TWO_PI;
+    }
+
+    private static void setIdentity(float[] m, int o) {
+        for (int k = 0; k < MATRIX_SIZE; k++) {
+            m[o + k] = 0;
+        }
+        m[o] = m[o + 5] = m[o + 10] = m[o + 15] = 1;
+    }
+
+    /**
+     * dest = parent * rotateY(angle) * translate(distance, 0, 0)
+     */
+    private static void orbit(float[] src, int p, float cos, float sin, float distance, float[] dest, int d) {
+        for (int row = 0; row < 3; row++) {
+            float x = src[p + row], y = src[p + 4 + row], z = src[p + 8 + row];
+            float col0 = cos * x - sin * z;
+            dest[d + row] = col0;
+            dest[d + 4 + row] = y;
+            dest[d + 8 + row] = sin * x + cos * z;
+            dest[d + 12 + row] = src[p + 12 + row] + distance * col0;
+        }
+        dest[d + 3] = dest[d + 7] = dest[d + 11] = 0;
+        dest[d + 15] = 1;
+    }
+
+    /**
+     * Writes the body's true anomaly as cos and sin into anomaly[1] and anomaly[2],
+     * and its distance from the parent into anomaly[0].
+     */
+    private void trueAnomaly(double time, int i) {
+        double meanAnomaly = angle(time, orbitalPeriods[i]);
+        KeplerSolver solver = solvers[i];
+        if (solver == null) {
+            anomaly[0] = distances[i];
+            anomaly[1] = StrictMath.cos(meanAnomaly);
+            anomaly[2] = StrictMath.sin(meanAnomaly);
+            return;
+        }
+        solver.eccentricAnomaly(meanAnomaly, anomaly);
+        double e = eccentricities[i], cosE = anomaly[1], sinE = anomaly[2];
+        double oneMinus = 1 - e * cosE;
+        anomaly[0] = distances[i] * oneMinus;
+        anomaly[1] = (cosE - e) / oneMinus;
+        anomaly[2] = Math.sqrt(1 - e * e) * sinE / oneMinus;
+    }
+
+    /**
+     * dest = parent * tilt * rotateY(trueAnomaly) * translate(r, 0, 0)
+     */
+    private void ellipse(double time, int i, float[] src, int p, float[] dest, int d) {
+        trueAnomaly(time, i);
+        float r = (float) anomaly[0], cos = (float) anomaly[1], sin = (float) anomaly[2];
+        int t = i * 9;
+        // columns of tilt * rotateY
+        float l0x = cos * tilts[t] - sin * tilts[t + 6];
+        float l0y = cos * tilts[t + 1] - sin * tilts[t + 7];
+        float l0z = cos * tilts[t + 2] - sin * tilts[t + 8];
+        float l2x = sin * tilts[t] + cos * tilts[t + 6];
+        float l2y = sin * tilts[t + 1] + cos * tilts[t + 7];
+        float l2z = sin * tilts[t + 2] + cos * tilts[t + 8];
+        float l1x = tilts[t + 3], l1y = tilts[t + 4], l1z = tilts[t + 5];
+        for (int row = 0; row < 3; row++) {
+            float x = src[p + row], y = src[p + 4 + row], z = src[p + 8 + row];
+            float col0 = x * l0x + y * l0y + z * l0z;
+            dest[d + row] = col0;
+            dest[d + 4 + row] = x * l1x + y * l1y + z * l1z;
+            dest[d + 8 + row] = x * l2x + y * l2y + z * l2z;
+            dest[d + 12 + row] = src[p + 12 + row] + r * col0;
+        }
+        dest[d + 3] = dest[d + 7] = dest[d + 11] = 0;
+        dest[d + 15] = 1;
+    }
+
+    /**
+     * World velocity of every body's orbit frame origin at the given time, by
+     * differentiating the orbits analytically down the tree: each frame moves with
+     * its parent's velocity and angular velocity, plus its own motion along the
+     * ellipse. Runs update(time) first.
+     */
+    public void velocities(double time, double[] vx, double[] vy, double[] vz) {
+        update(time);
+        // world angular velocity of each frame
+        double[] wx = new double[size], wy = new double[size], wz = new double[size];
+        for (int i = 0; i < size; i++) {
+            int parent = parents[i];
+            if (parent == NO_PARENT) {
+                vx[i] = vy[i] = vz[i] = wx[i] = wy[i] = wz[i] = 0;
+                continue;
+            }
+            int f = i * MATRIX_SIZE, p = parent * MATRIX_SIZE;
+            double meanMotion = TWO_PI / orbitalPeriods[i];
+            double angularRate = meanMotion, radialRate = 0, r = distances[i];
+            if (solvers[i] != null) {
+                trueAnomaly(time, i);
+                double e = eccentricities[i], cosNu = anomaly[1], sinNu = anomaly[2];
+                double root = Math.sqrt(1 - e * e);
+                r = anomaly[0];
+                angularRate = meanMotion * (1 + e * cosNu) * (1 + e * cosNu) / (root * root * root);
+                radialRate = distances[i] * meanMotion * e * sinNu / root;
+            }
+            // offset from the parent and its rate of change seen from the parent's frame
+            double ox = frames[f + 12] - frames[p + 12];
+            double oy = frames[f + 13] - frames[p + 13];
+            double oz = frames[f + 14] - frames[p + 14];
+            vx[i] = vx[parent] + wy[parent] * oz - wz[parent] * oy
+                    + radialRate * frames[f] - r * angularRate * frames[f + 8];
+            vy[i] = vy[parent] + wz[parent] * ox - wx[parent] * oz
+                    + radialRate * frames[f + 1] - r * angularRate * frames[f + 9];
+            vz[i] = vz[parent] + wx[parent] * oy - wy[parent] * ox
+                    + radialRate * frames[f + 2] - r * angularRate * frames[f + 10];
+            // the orbit turns the frame about its own Y
+            wx[i] = wx[parent] + angularRate * frames[f + 4];
+            wy[i] = wy[parent] + angularRate * frames[f + 5];
+            wz[i] = wz[parent] + angularRate * frames[f + 6];
+        }
+    }
+
+    /**
+     * model = frame * translate(offset) * scale(radius) * rotateY(spin), and its
+     * inverse transpose. Frames are only ever built from rotations and translations,
+     * so the upper 3x3 of the model is a rotation times radius and its inverse
+     * transpose is just that 3x3 divided by radius squared.
+     */
+    private void model(float[] frame, int f, float radius, float cos, float sin, float[] model, float[] normal) {
+        float invSq = radius != 0 ? 1 / (radius * radius) : 0;
+        for (int row = 0; row < 3; row++) {
+            float x = frame[f + row], y = frame[f + 4 + row], z = frame[f + 8 + row];
+            float col0 = radius * (cos * x - sin * z);
+            float col1 = radius * y;
+            float col2 = radius * (sin * x + cos * z);
+            model[f + row] = col0;
+            model[f + 4 + row] = col1;
+            model[f + 8 + row] = col2;
+            model[f + 12 + row] = frame[f + 12 + row] + x * offsetX + y * offsetY + z * offsetZ;
+            normal[f + row] = col0 * invSq;
+            normal[f + 4 + row] = col1 * invSq;
+            normal[f + 8 + row] = col2 * invSq;
+            normal[f + 12 + row] = 0;
+        }
+        model[f + 3] = model[f + 7] = model[f + 11] = 0;
+        model[f + 15] = 1;
+        normal[f + 3] = normal[f + 7] = normal[f + 11] = 0;
+        normal[f + 15] = 1;
+    }
+
+    /**
+     * Makes update write the body's orbit frame, and so its position, even when its
+     * subtree is culled, for bodies whose position matters when they are out of
+     * view, like suns lighting what is in view. The frames of its ancestors are
+     * written too; its model matrix is not, and it still counts as invisible.
+     */
+    public void pin(int body) {
+        for (int i = body; i != NO_PARENT && !pinned[i]; i = parents[i]) {
+            pinned[i] = true;
+        }
+    }
+
+    /**
+     * World position of the centre of the body's drawn sphere, its orbit frame
+     * applied to the offset, as of the last update or place. Written to dest[o] to
+     * dest[o + 2].
+     */
+    public void getPosition(int body, float[] dest, int o) {
+        target.getPosition(body, dest, o);
+    }
+
+    /** Whether the body is pinned or has a pinned descendant, one flag per body. */
+    public boolean[] getPinned() {
+        return pinned;
+    }
+
+    /** An empty snapshot of the right size for this scene, for setTarget. */
+    public TransformSnapshot newSnapshot() {
+        return new TransformSnapshot(size, offsetX, offsetY, offsetZ);
+    }
+
+    /**
+     * Makes update and place write into the given snapshot from now on, and the
+     * matrix and visibility getters read from it. The snapshot keeps whatever it
+     * held for bodies the next update culls, as the scene graph's own arrays would.
+     */
+    public void setTarget(TransformSnapshot snapshot) {
+        if (snapshot.size() != size) {
+            throw new IllegalArgumentException("A snapshot of " + snapshot.size() + " bodies cannot hold " + size);
+        }
+        target = snapshot;
+        frames = snapshot.frames;
+        models = snapshot.models;
+        normals = snapshot.normals;
+        visible = snapshot.visible;
+    }
+
+    public TransformSnapshot getTarget() {
+        return target;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getParent(int body) {
+        return parents[body];
+    }
+
+    /**
+     * The shortest time in which anything turns all the way round: the shortest
+     * orbital period of a body with a parent or rotation period, ignoring zeros.
+     * Infinite if nothing moves.
+     */
+    public double getShortestPeriod() {
+        double shortest = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            if (parents[i] != NO_PARENT && orbitalPeriods[i] != 0) {
+                shortest = Math.min(shortest, Math.abs(orbitalPeriods[i]));
+            }
+            if (rotationPeriods[i] != 0) {
+                shortest = Math.min(shortest, Math.abs(rotationPeriods[i]));
+            }
+        }
+        return shortest;
+    }
+
+    /** Where the drawn sphere sits inside its own orbit frame. */
+    public float getOffsetX() { return offsetX; }
+    public float getOffsetY() { return offsetY; }
+    public float getOffsetZ() { return offsetZ; }
+
+    public float getDistance(int body) {
+        return distances[body];
+    }
+
+    public float getOrbitalPeriod(int body) {
+        return orbitalPeriods[body];
+    }
+
+    public float getEccentricity(int body) {
+        return eccentricities[body];
+    }
+
+    /** Inclination of the orbit, in radians. */
+    public float getInclination(int body) {
+        return inclinations[body];
+    }
+
+    /** Longitude of the ascending node, in radians. */
+    public float getAscendingNode(int body) {
+        return ascendingNodes[body];
+    }
+
+    /** Argument of periapsis, in radians. */
+    public float getPeriapsisArgument(int body) {
+        return periapsisArguments[body];
+    }
+
+    /** Whether the body moves on a plain circle in its parent's XZ plane. */
+    public boolean isCircular(int body) {
+        return circular[body];
+    }
+
+    public float getRadius(int body) {
+        return radii[body];
+    }
+
+    /** Radius of every body, the scale in its model matrix. */
+    public float[] getRadii() {
+        return radii;
+    }
+
+    /** Radius of the sphere around the body's orbit frame origin that holds its whole subtree. */
+    public float getSubtreeRadius(int body) {
+        return subtreeRadii[body];
+    }
+
+    /** Whether the last update kept the body, one flag per body. */
+    public boolean[] getVisibility() {
+        return visible;
+    }
+
+    public boolean isVisible(int body) {
+        return visible[body];
+    }
+
+    /** Bodies the last update kept. */
+    public int getVisibleBodies() {
+        return visibleBodies;
+    }
+
+    /** Subtree bounds the last update tested against the frustum. */
+    public int getBoundsTested() {
+        return boundsTested;
+    }
+
+    /** Subtrees the last update skipped, each counted once however many bodies it holds. */
+    public int getCulledSubtrees() {
+        return culledSubtrees;
+    }
+
+    /** Orbit frames written by the last update, MATRIX_SIZE floats per body. */
+    public float[] getFrames() {
+        return frames;
+    }
+
+    /** Model matrices written by the last update, MATRIX_SIZE floats per body. */
+    public float[] getModelMatrices() {
+        return models;
+    }
+
+    /** Inverse transpose of each model matrix, MATRIX_SIZE floats per body. */
+    public float[] getNormalMatrices() {
+        return normals;
+    }
+}
@@ -0,0 +1,130 @@
+import java.util.*;
+
+import static com.jogamp.opengl.GL4.*;
+import com.jogamp.opengl.*;
+
+/**
+ * A linked shader program together with everything reflected from it at link time:
+ * the location of every active uniform and the index and size of every active
+ * uniform block. Lookups after construction are plain map reads, so nothing here
+ * goes back to the driver while rendering.
+ */
+public class ShaderProgram {
+    private final int program;
+    private final HashMap<String, Integer> uniformLocations = new HashMap<String, Integer>();
+    private final HashMap<String, Integer> blockIndices = new HashMap<String, Integer>();
+    private final HashMap<String, Integer> blockSizes = new HashMap<String, Integer>();
+
+    public ShaderProgram(String vertexShaderFile, String fragmentShaderFile) {
+        this(Utils.createShaderProgram(vertexShaderFile, fragmentShaderFile));
+    }
+
+    /**
+     * Loads the program from a ShaderProgramCache, compiling only when it has no
+     * usable binary. A null cache always compiles.
+     */
+    public ShaderProgram(String vertexShaderFile, String fragmentShaderFile, ShaderProgramCache cache) {
+        this(cache == null ? Utils.createShaderProgram(vertexShaderFile, fragmentShaderFile)
+                : cache.program(new int[] {GL_VERTEX_SHADER, GL_FRAGMENT_SHADER},
+                        new String[] {Utils.readShaderSource(vertexShaderFile), Utils.readShaderSource(fragmentShaderFile)}));
+    }
+
+    /**
+     * Wraps an already linked program and reflects its active uniforms and blocks.
+     */
+    public ShaderProgram(int program) {
+        this.program = program;
+        reflectUniforms();
+        reflectUniformBlocks();
+    }
+
+    private void reflectUniforms() {
+        GL4 gl = (GL4) GLContext.getCurrentGL();
+        int[] count = new int[1];
+        int[] maxLength = new int[1];
+        gl.glGetProgramiv(program, GL_ACTIVE_UNIFORMS, count, 0);
+        gl.glGetProgramiv(program, GL_ACTIVE_UNIFORM_MAX_LENGTH, maxLength, 0);
+        byte[] nameBytes = new byte[Math.max(maxLength[0], 1)];
+        int[] length = new int[1];
+        int[] size = new int[1];
+        int[] type = new int[1];
+        for (int i = 0; i < count[0]; i++) {
+            gl.glGetActiveUniform(program, i, nameBytes.length, length, 0, size, 0, type, 0, nameBytes, 0);
+            String name = new String(nameBytes, 0, length[0]);
+            // members of uniform blocks have no location, they live in the block's buffer
+            int location = gl.glGetUniformLocation(program, name);
+            if (location < 0) {
+                continue;
+            }
+            uniformLocations.put(name, location);
+            if (name.endsWith("[0]")) {
+                uniformLocations.put(name.substring(0, name.length() - 3), location);
+            }
+        }
+    }
+
+    private void reflectUniformBlocks() {
+        GL4 gl = (GL4) GLContext.getCurrentGL();
+        int[] count = new int[1];
+        int[] maxLength = new int[1];
+        gl.glGetProgramiv(program, GL_ACTIVE_UNIFORM_BLOCKS, count, 0);
+        gl.glGetProgramiv(program, GL_ACTIVE_UNIFORM_BLOCK_MAX_NAME_LENGTH, maxLength, 0);
+        byte[] nameBytes = new byte[Math.max(maxLength[0], 1)];
+        int[] length = new int[1];
+        int[] dataSize = new int[1];
+        for (int i = 0; i < count[0]; i++) {
+            gl.glGetActiveUniformBlockName(program, i, nameBytes.length, length, 0, nameBytes, 0);
+            gl.glGetActiveUniformBlockiv(program, i, GL_UNIFORM_BLOCK_DATA_SIZE, dataSize, 0);
+            String name = new String(nameBytes, 0, length[0]);
+            blockIndices.put(name, i);
+            blockSizes.put(name, dataSize[0]);
+        }
+    }
+
+    public int getId() {
+        return program;
+    }
+
+    public void use() {
+        GL4 gl = (GL4) GLContext.getCurrentGL();
+        gl.glUseProgram(program);
+    }
+
+    public boolean hasUniform(String name) {
+        return uniformLocations.containsKey(name);
+    }
+
+    /**
+     * @return the location of an active uniform, or -1 if the program does not use it
+     */
+    public int getUniformLocation(String name) {
+        Integer location = uniformLocations.get(name);
+        return location == null ? -1 : location;
+    }
+
+    public boolean hasUniformBlock(String name) {
+        return blockIndices.containsKey(name);
+    }
+
+    /**
+     * @return the data size the driver reported for an active uniform block, or 0 if
+     *         the program does not use it
+     */
+    public int getUniformBlockSize(String name) {
+        Integer size = blockSizes.get(name);
+        return size == null ? 0 : size;
+    }
+
+    /**
+     * Points the named uniform block at a buffer binding point. Blocks the program
+     * does not use are ignored.
+     */
+    public void bindUniformBlock(String name, int bindingPoint) {
+        Integer index = blockIndices.get(name);
+        if (index == null) {
+            return;
+        }
+        GL4 gl = (GL4) GLContext.getCurrentGL();
+        gl.glUniformBlockBinding(program, index, bindingPoint);
+    }
+}
@@ -0,0 +1,223 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.jogamp.opengl.GL4.*;
+import com.jogamp.opengl.*;
+
+/**
+ * Persistent cache of linked shader programs, so a start after the first skips
+ * compiling and linking GLSL.
+ *
+ * Entries are keyed by the SHA-256 of every stage's type and source together with
+ * the GL vendor, renderer and version strings, so an edited shader or a driver
+ * update misses instead of handing the driver a binary it never made. An entry
+ * is the program binary from glGetProgramBinary; a hit hands it straight to
+ * glProgramBinary. Drivers may still turn a binary down, after an update that
+ * kept the version string for example, in which case the entry is deleted and
+ * the program compiled and stored again.
+ *
+ * Entry layout, little endian:
+ * <pre>
+ *   0  "SPRG", format version, binary format, binary length
+ *  16  the binary
+ * </pre>
+ * Entries are written to a temporary file and moved into place, so a reader never
+ * sees half an entry.
+ */
+public class ShaderProgramCache {
+    private static final int MAGIC = 0x47525053; // "SPRG" read little endian
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final String SUFFIX = ".bin";
+
+    private final Path directory;
+    private final AtomicInteger hits = new AtomicInteger(), misses = new AtomicInteger(),
+            rejected = new AtomicInteger();
+
+    public ShaderProgramCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * The cache in -Dsolarsystem.shaderCache, by default ~/.cache/solarsystem/shaders,
+     * or null when the property is set to "none".
+     */
+    public static ShaderProgramCache fromProperties() {
+        String dir = System.getProperty("solarsystem.shaderCache",
+                Paths.get(System.getProperty("user.home"), ".cache", "solarsystem", "shaders").toString());
+        return dir.equals("none") ? null : new ShaderProgramCache(Paths.get(dir));
+    }
+
+    /**
+     * A linked program made of the given stages, loaded from the cache when it has
+     * a binary the driver accepts and compiled, then stored, otherwise. Drivers
+     * that support no binary formats at all always compile.
+     *
+     * @param stageTypes GL_VERTEX_SHADER, GL_FRAGMENT_SHADER and so on
+     * @param sources    the GLSL of each stage
+     */
+    public int program(int[] stageTypes, String[] sources) {
+        GL4 gl = (GL4) GLContext.getCurrentGL();
+        int[] numFormats = new int[1];
+        gl.glGetIntegerv(GL_NUM_PROGRAM_BINARY_FORMATS, numFormats, 0);
+        Path entry = directory.resolve(key(gl, stageTypes, sources) + SUFFIX);
+        if (numFormats[0] > 0 && Files.isRegularFile(entry)) {
+            int program = load(gl, entry);
+            if (program != 0) {
+                hits.incrementAndGet();
+                return program;
+            }
+            rejected.incrementAndGet();
+            try {
+                Files.deleteIfExists(entry);
+            } catch (IOException e) {
+                // it will be replaced below anyway
+            }
+        }
+        misses.incrementAndGet();
+
+        int program = gl.glCreateProgram();
+        for (int s = 0; s < sources.length; s++) {
+            gl.glAttachShader(program, Utils.compileShader(stageTypes[s], sources[s]));
+        }
+        if (numFormats[0] > 0) {
+            gl.glProgramParameteri(program, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
+        }
+        Utils.finalizeProgram(program);
+        int[] linked = new int[1];
+        gl.glGetProgramiv(program, GL_LINK_STATUS, linked, 0);
+        if (linked[0] == GL_TRUE && numFormats[0] > 0) {
+            try {
+                store(gl, program, entry);
+            } catch (IOException e) {
+                System.err.println("Could not cache shader program: " + e);
+            }
+        }
+        return program;
+    }
+
+    private static String key(GL4 gl, int[] stageTypes, String[] sources) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has to provide SHA-256
+        }
+        for (int name : new int[] {GL_VENDOR, GL_RENDERER, GL_VERSION}) {
+            digest.update(String.valueOf(gl.glGetString(name)).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        for (int s = 0; s < sources.length; s++) {
+            digest.update(Integer.toString(stageTypes[s]).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(sources[s].getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return the program, or 0 if the entry is damaged or the driver turned it down
+     */
+    private static int load(GL4 gl, Path entry) {
+        ByteBuffer binary;
+        int format;
+        try (FileChannel channel = FileChannel.open(entry)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return 0;
+            }
+            ByteBuffer bytes = ByteBuffer.allocateDirect((int) size).order(ByteOrder.LITTLE_ENDIAN);
+            while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                // read it all
+            }
+            if (bytes.hasRemaining() || bytes.getInt(0) != MAGIC || bytes.getInt(4) != VERSION
+                    || bytes.getInt(12) != size - HEADER_SIZE) {
+                return 0;
+            }
+            format = bytes.getInt(8);
+            binary = bytes.position(HEADER_SIZE).slice();
+        } catch (IOException e) {
+            return 0;
+        }
+        int program = gl.glCreateProgram();
+        gl.glProgramBinary(program, format, binary, binary.remaining());
+        int[] linked = new int[1];
+        gl.glGetProgramiv(program, GL_LINK_STATUS, linked, 0);
+        if (linked[0] != GL_TRUE) {
+            // an unknown format also raises GL_INVALID_ENUM, which is expected here
+            while (gl.glGetError() != GL_NO_ERROR) {
+            }
+            gl.glDeleteProgram(program);
+            return 0;
+        }
+        return program;
+    }
+
+    private void store(GL4 gl, int program, Path entry) throws IOException {
+        int[] length = new int[1];
+        int[] format = new int[1];
+        gl.glGetProgramiv(program, GL_PROGRAM_BINARY_LENGTH, length, 0);
+        if (length[0] <= 0) {
+            return;
+        }
+        ByteBuffer binary = ByteBuffer.allocateDirect(length[0]);
+        gl.glGetProgramBinary(program, length[0], length, 0, format, 0, binary);
+        binary.limit(length[0]);
+
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, entry.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putInt(format[0]).putInt(length[0]);
+                header.flip();
+                writeFully(channel, header);
+                writeFully(channel, binary);
+            }
+            try {
+                Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /** Programs loaded from a cached binary so far. */
+    public int getHits() {
+        return hits.get();
+    }
+
+    /** Programs that had to be compiled and linked so far, rejected binaries included. */
+    public int getMisses() {
+        return misses.get();
+    }
+
+    /** Cached binaries the driver would not load. */
+    public int getRejected() {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,324 @@
+import java.io.FileNotFoundException;
+import java.nio.file.FileSystemException;
+import java.util.*;
+
+import org.joml.FrustumIntersection;
+import org.joml.Vector3f;
+
+/**
+ * Headless orbit simulation. It owns the bodies read from a .sol file and their
+ * flattened SceneGraph, and needs no window or GL context.
+ *
+ * Time advances on a fixed-timestep clock: real elapsed time only decides how many
+ * whole steps to take, and the simulation time is always steps * timeStep. Two runs
+ * that take the same number of steps produce bit-identical positions however the
+ * elapsed time was sliced into frames. Positions at an arbitrary time are a pure
+ * function of that time, see positionsAt, so the clock can run backwards or jump
+ * to any time at the cost of a single frame, see seek. TimeController drives it
+ * with a warp factor and pause.
+ *
+ * In N-body mode the orbits only set the starting state: from then on a
+ * GravitySimulation moves the bodies, one leapfrog step per clock step, and the
+ * scene graph just places them where it says. Positions then depend on the whole
+ * history, so they are only available at the current time, and the clock moves
+ * one step at a time in either direction (leapfrog runs backwards just as well).
+ */
+public class Simulation {
+    public static final double DEFAULT_TIME_STEP = 1.0 / 120.0;
+    // gravity steps advance() may take at once, past that the clock drops time
+    // rather than falling further behind with every frame
+    public static final int MAX_GRAVITY_STEPS_PER_ADVANCE = 4;
+
+    private final SolarBody[] bodies;
+    private final SceneGraph sceneGraph;
+    private final double timeStep;
+    private final GravitySimulation gravity; // null when the orbits drive the bodies
+    private OrbitEvaluator orbitEvaluator;
+    private SceneGraph ephemerisSceneGraph; // stands in for orbitEvaluator when orbits are inclined
+    private long steps;
+    private double unsteppedTime;
+
+    public Simulation(SolarBody[] bodies) {
+        this(bodies, new Vector3f(), DEFAULT_TIME_STEP);
+    }
+
+    /**
+     * @param bodyOffset where each body is drawn inside its own orbit frame
+     * @param timeStep   length of one fixed step, in the same units as the periods
+     */
+    public Simulation(SolarBody[] bodies, Vector3f bodyOffset, double timeStep) {
+        this(bodies, bodyOffset, timeStep, false);
+    }
+
+    /**
+     * @param nBody integrate gravity between the bodies instead of following their orbits
+     */
+    public Simulation(SolarBody[] bodies, Vector3f bodyOffset, double timeStep, boolean nBody) {
+        if (timeStep <= 0) {
+            throw new IllegalArgumentException("The time step must be positive");
+        }
+        this.bodies = bodies;
+        this.sceneGraph = buildSceneGraph(bodies, bodyOffset);
+        this.timeStep = timeStep;
+        this.gravity = nBody ? GravitySimulation.fromOrbits(sceneGraph, GravitySimulation.DEFAULT_THETA) : null;
+    }
+
+    /**
+     * Whether -Dsolarsystem.physics asks for N-body gravity ("nbody") rather than
+     * the default circular orbits ("orbits").
+     */
+    public static boolean nBodyFromProperties() {
+        String physics = System.getProperty("solarsystem.physics", "orbits");
+        if (!physics.equals("orbits") && !physics.equals("nbody")) {
+            throw new IllegalArgumentException("solarsystem.physics should be orbits or nbody, not " + physics);
+        }
+        return physics.equals("nbody");
+    }
+
+    /**
+     * Flattens the SolarBody tree into a SceneGraph. The bodies are already in file
+     * order, which puts every body after the one it orbits.
+     */
+    private static SceneGraph buildSceneGraph(SolarBody[] bodies, Vector3f bodyOffset) {
+        int numBodies = bodies.length;
+        IdentityHashMap<SolarBody, Integer> indices = new IdentityHashMap<SolarBody, Integer>();
+        int[] parents = new int[numBodies];
+        float[] distances = new float[numBodies];
+        float[] orbitalPeriods = new float[numBodies];
+        float[] rotationPeriods = new float[numBodies];
+        float[] radii = new float[numBodies];
+        float[] eccentricities = new float[numBodies];
+        float[] inclinations = new float[numBodies];
+        float[] ascendingNodes = new float[numBodies];
+        float[] periapsisArguments = new float[numBodies];
+        for (int i = 0; i < numBodies; i++) {
+            SolarBody body = bodies[i];
+            indices.put(body, i);
+            SolarBody parent = body.getParent();
+            if (parent != null && !indices.containsKey(parent)) {
+                throw new IllegalArgumentException("Body " + i + " is listed before the body it orbits");
+            }
+            parents[i] = parent == null ? SceneGraph.NO_PARENT : indices.get(parent);
+            distances[i] = body.distFromCenter();
+            orbitalPeriods[i] = body.orbitalPeriod();
+            rotationPeriods[i] = body.getRotationPeriod();
+            radii[i] = body.getRadius();
+            eccentricities[i] = body.eccentricity();
+            inclinations[i] = (float) Math.toRadians(body.inclination());
+            ascendingNodes[i] = (float) Math.toRadians(body.longitudeOfAscendingNode());
+            periapsisArguments[i] = (float) Math.toRadians(body.argumentOfPeriapsis());
+        }
+        return new SceneGraph(parents, distances, orbitalPeriods, rotationPeriods, radii, eccentricities,
+                inclinations, ascendingNodes, periapsisArguments, bodyOffset.x(), bodyOffset.y(), bodyOffset.z());
+    }
+
+    /**
+     * Feeds elapsed time into the clock and takes every whole step it covers,
+     * backwards when the time is negative. The remainder is carried over to the next
+     * call. In N-body mode at most MAX_GRAVITY_STEPS_PER_ADVANCE steps are taken
+     * and any further whole steps are dropped, so the simulation runs slow instead
+     * of stalling when gravity cannot keep up.
+     *
+     * @return the number of steps taken, negative when going backwards
+     */
+    public long advance(double elapsedTime) {
+        unsteppedTime += elapsedTime;
+        long newSteps = (long) Math.floor(unsteppedTime / timeStep);
+        if (newSteps != 0) {
+            unsteppedTime -= newSteps * timeStep;
+            if (gravity != null) {
+                newSteps = Math.max(-MAX_GRAVITY_STEPS_PER_ADVANCE, Math.min(newSteps, MAX_GRAVITY_STEPS_PER_ADVANCE));
+            }
+            step(newSteps);
+        }
+        return newSteps;
+    }
+
+    /**
+     * Takes count fixed steps, backwards when count is negative.
+     */
+    public void step(long count) {
+        if (gravity != null) {
+            double dt = count < 0 ? -timeStep : timeStep;
+            for (long k = Math.abs(count); k > 0; k--) {
+                gravity.step(dt);
+            }
+        }
+        steps += count;
+    }
+
+    /**
+     * Moves the clock straight to time t, which is kept to the nearest whole step
+     * below it the same way advance() keeps time, without stepping through anything
+     * in between. Only the orbits can do that.
+     */
+    public void seek(double t) {
+        if (gravity != null) {
+            throw new IllegalStateException("N-body time can not jump, it has to be integrated");
+        }
+        double wholeSteps = Math.floor(t / timeStep);
+        if (!(Math.abs(wholeSteps) < Long.MAX_VALUE)) {
+            throw new IllegalArgumentException("Can not seek to " + t);
+        }
+        steps = (long) wholeSteps;
+        unsteppedTime = Math.max(0, t - steps * timeStep);
+    }
+
+    public long getSteps() {
+        return steps;
+    }
+
+    public double getTimeStep() {
+        return timeStep;
+    }
+
+    public double getTime() {
+        return steps * timeStep;
+    }
+
+    /**
+     * Evaluates the scene graph at the current simulation time.
+     */
+    public void update() {
+        update(null);
+    }
+
+    /**
+     * Evaluates the scene graph at the current simulation time, skipping every
+     * subtree that lies outside the frustum.
+     */
+    public void update(FrustumIntersection frustum) {
+        if (gravity != null) {
+            sceneGraph.place(getTime(), gravity.getX(), gravity.getY(), gravity.getZ(), frustum);
+        } else {
+            sceneGraph.update(getTime(), frustum);
+        }
+    }
+
+    /**
+     * World position of every body at time t, three floats per body in body order.
+     */
+    public float[] positionsAt(double t) {
+        return positionsAt(t, new float[bodies.length * 3]);
+    }
+
+    /**
+     * Same as positionsAt(t) but writes into dest, which needs three floats per body.
+     * Leaves the scene graph evaluated at t. In N-body mode t has to be the current
+     * time.
+     */
+    public float[] positionsAt(double t, float[] dest) {
+        if (gravity != null) {
+            if (t != getTime()) {
+                throw new IllegalStateException("N-body positions are only known at the current time " + getTime());
+            }
+            update();
+        } else {
+            sceneGraph.update(t);
+        }
+        float[] models = sceneGraph.getModelMatrices();
+        for (int i = 0; i < bodies.length; i++) {
+            int m = i * SceneGraph.MATRIX_SIZE + 12;
+            dest[i * 3] = models[m];
+            dest[i * 3 + 1] = models[m + 1];
+            dest[i * 3 + 2] = models[m + 2];
+        }
+        return dest;
+    }
+
+    /**
+     * World position of every body at time t in double precision, written into x,
+     * y and z by body index, for bulk ephemeris queries. Goes through an
+     * OrbitEvaluator rather than the scene graph, so it leaves the scene graph
+     * alone and is much faster per body, but only agrees with positionsAt to float
+     * precision. Scenes with inclined orbits, which OrbitEvaluator can not do, are
+     * evaluated on a scene graph of their own instead. Not available in N-body mode.
+     */
+    public void ephemeris(double t, double[] x, double[] y, double[] z) {
+        if (gravity != null) {
+            throw new IllegalStateException("N-body positions are not a function of time");
+        }
+        if (orbitEvaluator == null && ephemerisSceneGraph == null) {
+            if (OrbitEvaluator.supports(sceneGraph)) {
+                orbitEvaluator = OrbitEvaluator.create(sceneGraph);
+            } else {
+                ephemerisSceneGraph = buildSceneGraph(bodies, new Vector3f(sceneGraph.getOffsetX(),
+                        sceneGraph.getOffsetY(), sceneGraph.getOffsetZ()));
+            }
+        }
+        if (ephemerisSceneGraph != null) {
+            if (x.length < bodies.length || y.length < bodies.length || z.length < bodies.length) {
+                throw new IllegalArgumentException("Need room for " + bodies.length + " positions");
+            }
+            ephemerisSceneGraph.update(t);
+            float[] models = ephemerisSceneGraph.getModelMatrices();
+            for (int i = 0; i < bodies.length; i++) {
+                int m = i * SceneGraph.MATRIX_SIZE + 12;
+                x[i] = models[m];
+                y[i] = models[m + 1];
+                z[i] = models[m + 2];
+            }
+            return;
+        }
+        orbitEvaluator.positionsAt(t, x, y, z);
+    }
+
+    /**
+     * World position of every body at the current time in double precision: the
+     * ephemeris, or in N-body mode the integrated state, which leaves out the
+     * sphere offset every body shares. Leaves the scene graph alone either way.
+     */
+    public void currentPositions(double[] x, double[] y, double[] z) {
+        if (gravity == null) {
+            ephemeris(getTime(), x, y, z);
+            return;
+        }
+        int n = gravity.size();
+        System.arraycopy(gravity.getX(), 0, x, 0, n);
+        System.arraycopy(gravity.getY(), 0, y, 0, n);
+        System.arraycopy(gravity.getZ(), 0, z, 0, n);
+    }
+
+    public SolarBody[] getBodies() {
+        return bodies;
+    }
+
+    public SceneGraph getSceneGraph() {
+        return sceneGraph;
+    }
+
+    /** The N-body state, or null when the bodies follow their orbits. */
+    public GravitySimulation getGravity() {
+        return gravity;
+    }
+
+    /**
+     * Steps a .sol file without any display and prints where every body ends up.
+     * Usage: java Simulation file.sol steps [timeStep]
+     * Honours -Dsolarsystem.physics.
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: java Simulation <file.sol> <steps> [timeStep]");
+            System.exit(0);
+        }
+        try {
+            SolFile sol = SolFile.read(args[0]);
+            double timeStep = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_TIME_STEP;
+            Simulation simulation = new Simulation(sol.getSolarBodies(), new Vector3f(), timeStep,
+                    nBodyFromProperties());
+            simulation.step(Long.parseLong(args[1]));
+            float[] positions = simulation.positionsAt(simulation.getTime());
+            SolarBody[] bodies = simulation.getBodies();
+            System.out.println("t = " + simulation.getTime());
+            for (int i = 0; i < bodies.length; i++) {
+                System.out.println(bodies[i].getTextureFile() + "\t" + positions[i * 3] + "\t"
+                        + positions[i * 3 + 1] + "\t" + positions[i * 3 + 2]);
+            }
+        } catch (FileNotFoundException e) {
+            System.err.println("Could not find your .sol file!");
+        } catch (FileSystemException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
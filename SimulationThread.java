@@ -0,0 +1,150 @@
+import java.util.concurrent.locks.LockSupport;
+
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+
+/**
+ * Runs the time controller and the transform update on a thread of their own, at
+ * a fixed rate, so a slow physics step does not hold up a frame and a frame
+ * waiting for vsync does not hold up physics.
+ *
+ * Every tick advances the simulation by the real time since the last one, points
+ * the scene graph at the back buffer of a SnapshotExchange, updates it and
+ * publishes it. The renderer takes the two newest snapshots whenever it draws
+ * and interpolates between them. Nothing on either side locks or allocates per
+ * tick.
+ *
+ * Once started, the thread owns the Simulation, its SceneGraph and the
+ * TimeController's advance(); the renderer must only read snapshots. The
+ * renderer's view frustum comes in through setCullMatrix(), so subtrees out of
+ * view are still skipped.
+ */
+public class SimulationThread implements Runnable {
+    public static final double DEFAULT_RATE = 120;
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final Simulation simulation;
+    private final TimeController time;
+    private final SnapshotExchange<TransformSnapshot> exchange;
+    private final long periodNanos;
+    private final Thread thread;
+    private volatile boolean running;
+    private volatile float[] cullMatrix; // projection * view, replaced whole, never changed in place
+    private CloseApproachMonitor monitor;
+    private volatile long ticks, lateTicks;
+
+    /**
+     * @param rate ticks per second of real time
+     */
+    public SimulationThread(Simulation simulation, TimeController time, double rate) {
+        if (!(rate > 0)) {
+            throw new IllegalArgumentException("The simulation rate has to be positive, not " + rate);
+        }
+        this.simulation = simulation;
+        this.time = time;
+        this.periodNanos = (long) (NANOS_PER_SECOND / rate);
+        SceneGraph sceneGraph = simulation.getSceneGraph();
+        exchange = new SnapshotExchange<TransformSnapshot>(sceneGraph.newSnapshot(), sceneGraph.newSnapshot(),
+                sceneGraph.newSnapshot(), sceneGraph.newSnapshot());
+        thread = new Thread(this, "simulation");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * A thread running at -Dsolarsystem.simRate ticks per second, DEFAULT_RATE if
+     * unset, or null if it is 0, which leaves the update to the render loop.
+     */
+    public static SimulationThread fromProperties(Simulation simulation, TimeController time) {
+        String rate = System.getProperty("solarsystem.simRate", String.valueOf(DEFAULT_RATE));
+        double ticksPerSecond;
+        try {
+            ticksPerSecond = Double.parseDouble(rate.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("solarsystem.simRate should be a number, not " + rate);
+        }
+        return ticksPerSecond == 0 ? null : new SimulationThread(simulation, time, ticksPerSecond);
+    }
+
+    /** The exchange the snapshots come through; its reader side is the renderer's. */
+    public SnapshotExchange<TransformSnapshot> getExchange() {
+        return exchange;
+    }
+
+    /**
+     * Culls later ticks against this projection * view matrix. The matrix is
+     * copied, so this allocates; call it when the view changes, not every frame.
+     */
+    public void setCullMatrix(Matrix4f projectionView) {
+        cullMatrix = projectionView.get(new float[16]);
+    }
+
+    /** Checks for close approaches after every tick. Call before start(). */
+    public void setCloseApproachMonitor(CloseApproachMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /** Stops the thread and waits for the tick in progress to finish. */
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+    }
+
+    @Override
+    public void run() {
+        SceneGraph sceneGraph = simulation.getSceneGraph();
+        FrustumIntersection frustum = new FrustumIntersection();
+        Matrix4f matrix = new Matrix4f();
+        float[] culling = null;
+        long last = System.nanoTime();
+        long next = last;
+        while (running) {
+            long now = System.nanoTime();
+            time.advance((now - last) / NANOS_PER_SECOND);
+            last = now;
+
+            float[] cull = cullMatrix;
+            if (cull != culling) {
+                if (cull != null) {
+                    frustum.set(matrix.set(cull));
+                }
+                culling = cull;
+            }
+            TransformSnapshot snapshot = exchange.back();
+            sceneGraph.setTarget(snapshot);
+            simulation.update(culling != null ? frustum : null);
+            snapshot.setSeeks(time.getSeeks());
+            snapshot.setStamp(System.nanoTime());
+            exchange.publish();
+            if (monitor != null) {
+                monitor.check();
+            }
+            ticks++;
+
+            next += periodNanos;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+            } else {
+                // behind schedule: carry on from now rather than rushing to catch up
+                lateTicks++;
+                next = System.nanoTime();
+            }
+        }
+    }
+
+    /** Ticks run so far. */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /** Ticks that took longer than the tick period. */
+    public long getLateTicks() {
+        return lateTicks;
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free handoff of buffers from one writer thread to one reader thread, each
+ * running at its own rate.
+ *
+ * It is a triple buffer with one slot more, so the reader can keep the buffer
+ * before the newest one to interpolate from. The writer fills back() and
+ * publish() swaps it with the shared middle slot in one atomic step. The
+ * reader's update() swaps whatever new buffer is in the middle slot for the
+ * older of the two it holds. Neither side ever waits for the other or
+ * allocates. A writer that gets ahead overwrites a middle buffer the reader
+ * never took, and a reader that gets ahead keeps the buffers it has.
+ */
+public class SnapshotExchange<T> {
+    private static final int INDEX = 3;
+    private static final int FRESH = 4; // set while the middle slot holds a buffer the reader has not taken
+
+    private final Object[] slots;
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back;              // the writer's
+    private int previous = 2, current = 3; // the reader's
+
+    /**
+     * Takes four distinct buffers, which the two sides then own in turn.
+     */
+    public SnapshotExchange(T a, T b, T c, T d) {
+        slots = new Object[] {a, b, c, d};
+    }
+
+    /** The buffer the writer fills next. Writer thread only. */
+    @SuppressWarnings("unchecked")
+    public T back() {
+        return (T) slots[back];
+    }
+
+    /**
+     * Hands back() to the reader and takes a free buffer in its place. Writer thread
+     * only.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX;
+    }
+
+    /**
+     * Takes the newest published buffer, if there is one the reader has not seen,
+     * as current(); the old current() becomes previous(). Reader thread only.
+     *
+     * @return whether anything changed
+     */
+    public boolean update() {
+        if ((middle.get() & FRESH) == 0) {
+            return false;
+        }
+        int free = previous;
+        previous = current;
+        current = middle.getAndSet(free) & INDEX;
+        return true;
+    }
+
+    /** The newest buffer the reader has taken. Reader thread only. */
+    @SuppressWarnings("unchecked")
+    public T current() {
+        return (T) slots[current];
+    }
+
+    /** The buffer the reader took before current(). Reader thread only. */
+    @SuppressWarnings("unchecked")
+    public T previous() {
+        return (T) slots[previous];
+    }
+}
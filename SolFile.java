@@ -0,0 +1,84 @@
+import java.io.FileNotFoundException;
+import java.nio.file.FileSystemException;
+
+import org.joml.*;
+
+/**
+ * The contents of a .sol file: where the camera sits, how the scene is lit, and the
+ * bodies themselves in file order (the sun first, every planet after the body it
+ * orbits), and any particle belts around them. Nothing in here needs a window or a GL context.
+ */
+public class SolFile {
+    private Vector3f cameraLoc;
+    private float[] lightColor;
+    private float[] lightAmbient;
+    private float[] lightDiffuse;
+    private float[] lightSpecular;
+    private float linearAttenuationConstant;
+    private SolarBody[] solarBodies;
+    private AsteroidBelt[] belts;
+
+    SolFile(Vector3f cameraLoc, float[] lightColor, float ambientBase, float diffuseBase, float specularBase,
+            float linearAttenuationConstant, SolarBody[] solarBodies) {
+        this(cameraLoc, lightColor, ambientBase, diffuseBase, specularBase, linearAttenuationConstant, solarBodies,
+                new AsteroidBelt[0]);
+    }
+
+    SolFile(Vector3f cameraLoc, float[] lightColor, float ambientBase, float diffuseBase, float specularBase,
+            float linearAttenuationConstant, SolarBody[] solarBodies, AsteroidBelt[] belts) {
+        this.cameraLoc = cameraLoc;
+        this.lightColor = lightColor;
+        this.lightAmbient = new float[] {ambientBase, ambientBase, ambientBase, 1.0f };
+        this.lightDiffuse = new float[] {diffuseBase, diffuseBase, diffuseBase, 1.0f };
+        this.lightSpecular = new float[] {specularBase, specularBase, specularBase, 1.0f };
+        this.linearAttenuationConstant = linearAttenuationConstant;
+        this.solarBodies = solarBodies;
+        this.belts = belts;
+    }
+
+    /**
+     * Reads a .sol file: the camera position, the light and coloring settings, and
+     * then one tab-indented line per body, indented one level deeper than the body
+     * it orbits. See SolParser for the details. Files compiled to .solb are loaded
+     * through SolbFile instead.
+     */
+    public static SolFile read(String fileName) throws FileNotFoundException, FileSystemException {
+        if (fileName.endsWith(".solb")) {
+            return SolbFile.read(fileName);
+        }
+        return SolParser.parse(fileName);
+    }
+
+    public Vector3f getCameraLoc() {
+        return cameraLoc;
+    }
+
+    public float[] getLightColor() {
+        return lightColor;
+    }
+
+    public float[] getLightAmbient() {
+        return lightAmbient;
+    }
+
+    public float[] getLightDiffuse() {
+        return lightDiffuse;
+    }
+
+    public float[] getLightSpecular() {
+        return lightSpecular;
+    }
+
+    public float getLinearAttenuationConstant() {
+        return linearAttenuationConstant;
+    }
+
+    public SolarBody[] getSolarBodies() {
+        return solarBodies;
+    }
+
+    /** The belts and rings around the bodies, in file order. */
+    public AsteroidBelt[] getBelts() {
+        return belts;
+    }
+}
@@ -0,0 +1,26 @@
+import java.nio.file.FileSystemException;
+
+/**
+ * A .sol file that could be read but not understood. Carries the 1-based line and
+ * column the problem was found at, which are also part of the message.
+ */
+public class SolFormatException extends FileSystemException {
+    private static final long serialVersionUID = 1L;
+
+    private final int line;
+    private final int column;
+
+    public SolFormatException(String file, int line, int column, String reason) {
+        super(file, null, "line " + line + ", column " + column + ": " + reason);
+        this.line = line;
+        this.column = column;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+}
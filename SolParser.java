@@ -0,0 +1,434 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.*;
+
+import org.joml.Vector3f;
+
+/**
+ * Streaming reader for the .sol format.
+ *
+ * Bytes are pulled from a FileChannel through one reusable buffer and split into
+ * lines and tab separated fields in place. Numbers are parsed straight from the
+ * bytes and texture paths are interned, so the only allocations per body are the
+ * body itself. Every error names the line and column it was found at.
+ *
+ * The format is the one SolarSystem has always read: a camera line, a light line,
+ * then one line per body. A line with three fields is a sun; a planet has at least
+ * six and orbits the nearest body above it that is indented one tab less. A line
+ * with five fields is a sun that orbits that body the same way, with a distance
+ * and an orbital period, for systems of more than one star. A planet
+ * may add up to four orbital elements after those six: eccentricity, inclination,
+ * longitude of the ascending node and argument of periapsis, the angles in
+ * degrees. Missing ones are 0, which is the circular orbit planets always had, and
+ * the distance is then the semi-major axis.
+ *
+ * A line whose first field is "belt" is not a body but an AsteroidBelt around the
+ * body above it: particle count, inner radius, outer radius, thickness, orbital
+ * period at the inner radius and particle size, then optionally red, green and
+ * blue. Nothing can be indented under a belt.
+ */
+public class SolParser {
+    private static final int BUFFER_SIZE = 1 << 16;
+    // a mantissa of this many digits and its power of ten are both exact floats
+    private static final int MAX_FAST_DIGITS = 7;
+    private static final byte[] BELT = "belt".getBytes(StandardCharsets.US_ASCII);
+    private static final float[] DEFAULT_BELT_COLOR = {0.6f, 0.55f, 0.5f};
+    private static final float[] POWERS_OF_TEN = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+
+    private final String fileName;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    // the current line, without its line terminator
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private int lineNumber;
+
+    // field boundaries of the current line, after the indentation
+    private int[] fieldStarts = new int[8];
+    private int[] fieldEnds = new int[8];
+    private int numFields;
+
+    // open addressing table of texture paths seen so far
+    private String[] internedPaths = new String[64];
+    private byte[][] internedBytes = new byte[64][];
+    private int numInterned;
+
+    private SolParser(String fileName, FileChannel channel) {
+        this.fileName = fileName;
+        this.channel = channel;
+        buffer.flip();
+    }
+
+    public static SolFile parse(String fileName) throws FileNotFoundException, FileSystemException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(Paths.get(fileName));
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(fileName);
+        } catch (IOException e) {
+            throw new FileSystemException(fileName, null, e.getMessage());
+        }
+        try {
+            return new SolParser(fileName, channel).parse();
+        } catch (FileSystemException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new FileSystemException(fileName, null, e.getMessage());
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private SolFile parse() throws IOException {
+        if (!nextLine()) {
+            throw errorAtEnd("missing the camera position line");
+        }
+        splitFields(0);
+        requireFields(3, "the camera position");
+        Vector3f cameraLoc = new Vector3f(number(0, "camera x"), number(1, "camera y"), number(2, "camera z"));
+
+        if (!nextLine()) {
+            throw errorAtEnd("missing the light and coloring line");
+        }
+        splitFields(0);
+        requireFields(7, "the light and coloring settings");
+        float[] lightColor = {number(0, "red"), number(1, "green"), number(2, "blue"), 1.0f};
+        float ambient = number(3, "ambient");
+        float diffuse = number(4, "diffuse");
+        float specular = number(5, "specular");
+        float linearAttenuation = number(6, "linear attenuation");
+
+        ArrayList<SolarBody> bodies = new ArrayList<SolarBody>();
+        ArrayList<AsteroidBelt> belts = new ArrayList<AsteroidBelt>();
+        // indices of the bodies enclosing the current line, with NO_PARENT at the bottom
+        int[] enclosing = new int[16];
+        int numEnclosing = 1;
+        enclosing[0] = SceneGraph.NO_PARENT;
+        int lastNumTabs = -1;
+        boolean lastWasBelt = false;
+
+        while (nextLine()) {
+            int numTabs = 0;
+            while (numTabs < lineLength && line[numTabs] == '\t') {
+                numTabs++;
+            }
+            if (numTabs == lineLength) {
+                continue; // blank line
+            }
+            if (lastWasBelt && numTabs > lastNumTabs + 1) {
+                throw error(numTabs, "nothing can be indented under a belt");
+            }
+            if (numTabs <= lastNumTabs) {
+                int pops = lastNumTabs - numTabs + 1;
+                if (pops >= numEnclosing) {
+                    throw error(numTabs, "indentation does not match any enclosing body");
+                }
+                numEnclosing -= pops;
+            }
+            lastNumTabs = numTabs;
+
+            splitFields(numTabs);
+            lastWasBelt = isBelt();
+            if (lastWasBelt) {
+                belts.add(belt(numTabs, enclosing[numEnclosing - 1], bodies));
+                // the next line at this depth must not pop anything: a belt encloses nothing
+                lastNumTabs = numTabs - 1;
+                continue;
+            }
+            requireFields(3, "a body");
+            String texture = internPath(fieldStarts[0], fieldEnds[0]);
+            float radius = number(1, "radius");
+            float rotationPeriod = number(2, "rotation period");
+            int parent = enclosing[numEnclosing - 1];
+            SolarBody body;
+            if (numFields <= 3) {
+                body = new Sun(texture, radius, rotationPeriod);
+            } else if (numFields == 5) {
+                if (parent == SceneGraph.NO_PARENT) {
+                    throw error(numTabs, "an orbiting sun needs a body above it to orbit");
+                }
+                body = new Sun(texture, radius, rotationPeriod, number(3, "distance from center"),
+                        number(4, "orbital period"), bodies.get(parent));
+            } else {
+                requireFields(6, "a planet");
+                if (parent == SceneGraph.NO_PARENT) {
+                    throw error(numTabs, "a planet needs a body above it to orbit");
+                }
+                float distance = number(3, "distance from center");
+                float orbitalPeriod = number(4, "orbital period");
+                float specularComponent = number(5, "specular component");
+                float eccentricity = numFields > 6 ? number(6, "eccentricity") : 0;
+                if (!(eccentricity >= 0 && eccentricity <= KeplerSolver.MAX_ECCENTRICITY)) {
+                    throw error(fieldStarts[6], "the eccentricity has to be from 0 to "
+                            + KeplerSolver.MAX_ECCENTRICITY + ", not " + eccentricity);
+                }
+                body = new Planet(texture, radius, rotationPeriod, distance, orbitalPeriod, specularComponent,
+                        bodies.get(parent), eccentricity, numFields > 7 ? number(7, "inclination") : 0,
+                        numFields > 8 ? number(8, "longitude of the ascending node") : 0,
+                        numFields > 9 ? number(9, "argument of periapsis") : 0);
+            }
+            if (numEnclosing == enclosing.length) {
+                enclosing = Arrays.copyOf(enclosing, numEnclosing * 2);
+            }
+            enclosing[numEnclosing++] = bodies.size();
+            bodies.add(body);
+        }
+        if (bodies.isEmpty()) {
+            throw errorAtEnd("the file does not describe any bodies");
+        }
+
+        SolarBody[] solarBodies = bodies.toArray(new SolarBody[bodies.size()]);
+        return new SolFile(cameraLoc, lightColor, ambient, diffuse, specular, linearAttenuation, solarBodies,
+                belts.toArray(new AsteroidBelt[belts.size()]));
+    }
+
+    private boolean isBelt() {
+        return numFields > 0 && Arrays.equals(line, fieldStarts[0], fieldEnds[0], BELT, 0, BELT.length);
+    }
+
+    private AsteroidBelt belt(int numTabs, int parent, ArrayList<SolarBody> bodies) throws SolFormatException {
+        if (parent == SceneGraph.NO_PARENT) {
+            throw error(numTabs, "a belt needs a body above it to go around");
+        }
+        requireFields(7, "a belt");
+        float count = number(1, "particle count");
+        if (!(count >= 1 && count <= AsteroidBelt.MAX_PARTICLES && count == Math.rint(count))) {
+            throw error(fieldStarts[1], "the particle count has to be a whole number from 1 to "
+                    + AsteroidBelt.MAX_PARTICLES);
+        }
+        float inner = number(2, "inner radius");
+        float outer = number(3, "outer radius");
+        if (!(inner > 0 && outer >= inner)) {
+            throw error(fieldStarts[2], "the inner radius has to be positive and no larger than the outer radius");
+        }
+        float thickness = number(4, "thickness");
+        if (!(thickness >= 0)) {
+            throw error(fieldStarts[4], "the thickness cannot be negative");
+        }
+        float period = number(5, "inner orbital period");
+        if (period == 0) {
+            throw error(fieldStarts[5], "the inner orbital period cannot be 0");
+        }
+        float size = number(6, "particle size");
+        if (!(size > 0)) {
+            throw error(fieldStarts[6], "the particle size has to be positive");
+        }
+        float[] color = DEFAULT_BELT_COLOR.clone();
+        if (numFields > 7) {
+            requireFields(10, "a colored belt");
+            color = new float[] {number(7, "red"), number(8, "green"), number(9, "blue")};
+        }
+        return new AsteroidBelt(bodies.get(parent), (int) count, inner, outer, thickness, period, size, color);
+    }
+
+    /**
+     * Reads the next line into line[], dropping the \n or \r\n terminator.
+     *
+     * @return false at the end of the file
+     */
+    private boolean nextLine() throws IOException {
+        lineLength = 0;
+        boolean readAnything = false;
+        while (true) {
+            if (!buffer.hasRemaining()) {
+                buffer.clear();
+                int read = channel.read(buffer);
+                buffer.flip();
+                if (read < 0) {
+                    if (!readAnything) {
+                        return false;
+                    }
+                    break;
+                }
+                continue;
+            }
+            readAnything = true;
+            byte[] data = buffer.array();
+            int start = buffer.position();
+            int limit = buffer.limit();
+            int end = start;
+            while (end < limit && data[end] != '\n') {
+                end++;
+            }
+            append(data, start, end - start);
+            if (end < limit) {
+                buffer.position(end + 1);
+                break;
+            }
+            buffer.position(limit);
+        }
+        if (lineLength > 0 && line[lineLength - 1] == '\r') {
+            lineLength--;
+        }
+        lineNumber++;
+        return true;
+    }
+
+    private void append(byte[] data, int offset, int length) {
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        System.arraycopy(data, offset, line, lineLength, length);
+        lineLength += length;
+    }
+
+    /**
+     * Splits the line after from into tab separated fields. Like String.split, empty
+     * fields at the end of the line are dropped.
+     */
+    private void splitFields(int from) {
+        numFields = 0;
+        int start = from;
+        for (int i = from; i <= lineLength; i++) {
+            if (i == lineLength || line[i] == '\t') {
+                if (numFields == fieldStarts.length) {
+                    fieldStarts = Arrays.copyOf(fieldStarts, numFields * 2);
+                    fieldEnds = Arrays.copyOf(fieldEnds, numFields * 2);
+                }
+                fieldStarts[numFields] = start;
+                fieldEnds[numFields] = i;
+                numFields++;
+                start = i + 1;
+            }
+        }
+        while (numFields > 0 && fieldStarts[numFields - 1] == fieldEnds[numFields - 1]) {
+            numFields--;
+        }
+    }
+
+    private void requireFields(int count, String what) throws SolFormatException {
+        if (numFields < count) {
+            int column = numFields == 0 ? lineLength : fieldEnds[numFields - 1];
+            throw error(column, what + " needs " + count + " tab separated values but this line has " + numFields);
+        }
+    }
+
+    /**
+     * Parses a field as a float, see parseNumber.
+     */
+    private float number(int field, String what) throws SolFormatException {
+        int start = fieldStarts[field];
+        int end = fieldEnds[field];
+        if (start == end) {
+            throw error(start, "missing the " + what);
+        }
+        try {
+            return parseNumber(line, start, end);
+        } catch (NumberFormatException e) {
+            throw error(start, "expected a number for the " + what + " but found '"
+                    + new String(line, start, end - start, StandardCharsets.UTF_8) + "'");
+        }
+    }
+
+    /**
+     * Parses bytes start to end as a float, exactly as Float.parseFloat would.
+     * Plain decimals of up to MAX_FAST_DIGITS significant digits and ten decimal
+     * places are one float division of two exact floats, which IEEE rounds
+     * correctly, straight from the bytes; anything else goes through
+     * Float.parseFloat, so the accepted syntax is exactly what it always was.
+     *
+     * @throws NumberFormatException if Float.parseFloat would
+     */
+    static float parseNumber(byte[] line, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (line[i] == '-' || line[i] == '+') {
+            negative = line[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean sawDigit = false;
+        boolean sawPoint = false;
+        for (; i < end; i++) {
+            byte b = line[i];
+            if (b >= '0' && b <= '9') {
+                sawDigit = true;
+                if (mantissa != 0 || b != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (sawPoint) {
+                    scale--;
+                }
+            } else if (b == '.' && !sawPoint) {
+                sawPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (i == end && sawDigit && digits <= MAX_FAST_DIGITS && -scale < POWERS_OF_TEN.length) {
+            float value = mantissa / POWERS_OF_TEN[-scale];
+            return negative ? -value : value;
+        }
+        return Float.parseFloat(new String(line, start, end - start, StandardCharsets.UTF_8));
+    }
+
+    private String internPath(int start, int end) {
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + line[i];
+        }
+        int mask = internedPaths.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (internedBytes[slot] != null) {
+            byte[] key = internedBytes[slot];
+            if (Arrays.equals(key, 0, key.length, line, start, end)) {
+                return internedPaths[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        String path = new String(line, start, end - start, StandardCharsets.UTF_8);
+        internedBytes[slot] = Arrays.copyOfRange(line, start, end);
+        internedPaths[slot] = path;
+        if (++numInterned * 2 > internedPaths.length) {
+            rehashPaths();
+        }
+        return path;
+    }
+
+    private void rehashPaths() {
+        String[] oldPaths = internedPaths;
+        byte[][] oldBytes = internedBytes;
+        internedPaths = new String[oldPaths.length * 2];
+        internedBytes = new byte[oldPaths.length * 2][];
+        int mask = internedPaths.length - 1;
+        for (int i = 0; i < oldPaths.length; i++) {
+            if (oldBytes[i] == null) {
+                continue;
+            }
+            int hash = 1;
+            for (byte b : oldBytes[i]) {
+                hash = 31 * hash + b;
+            }
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (internedBytes[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            internedBytes[slot] = oldBytes[i];
+            internedPaths[slot] = oldPaths[i];
+        }
+    }
+
+    /**
+     * @param index 0-based position in the current line
+     */
+    private SolFormatException error(int index, String reason) {
+        return new SolFormatException(fileName, lineNumber, index + 1, reason);
+    }
+
+    private SolFormatException errorAtEnd(String reason) {
+        return new SolFormatException(fileName, lineNumber + 1, 1, reason);
+    }
+}
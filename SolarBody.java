@@ -0,0 +1,20 @@
+import org.joml.*;
+
+public interface SolarBody{
+    public Vector3f getPosition();
+    public void setPosition(Vector3f position);
+    public float x();
+    public float y();
+    public float z();
+    public String getTextureFile();
+    public float getRotationPeriod();
+    public float getRadius();
+    public SolarBody getParent();
+    public float distFromCenter();
+    public float orbitalPeriod();
+    public float eccentricity();
+    // the angles are in degrees, as written in the .sol file
+    public float inclination();
+    public float longitudeOfAscendingNode();
+    public float argumentOfPeriapsis();
+}
@@ -1,12 +1,17 @@
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.nio.file.FileSystemException;
-import java.security.acl.LastOwnerException;
 import java.util.*;
 
 import java.nio.*;
+import java.awt.BorderLayout;
+import java.awt.Font;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
 import javax.swing.*;
 import java.lang.Math;
+import java.lang.Runtime;
 import static com.jogamp.opengl.GL4.*;
 import com.jogamp.opengl.*;
 import com.jogamp.opengl.util.*;
@@ -14,75 +19,194 @@ import com.jogamp.opengl.awt.GLCanvas;
 import com.jogamp.common.nio.Buffers;
 import org.joml.*;
 
-public class SolarSystem extends JFrame implements GLEventListener {
+/**
+ * Renders a .sol scene. Normally it opens a window and draws into it as fast as
+ * the screen allows; HeadlessRenderer instead adds it to an offscreen drawable and
+ * steps it one fixed frame at a time.
+ */
+public class SolarSystem implements GLEventListener {
     // constants
     private static final int WINDOW_WIDTH = 800, WINDOW_HEIGHT = 800;
     private static final String WINDOW_TITLE = "Solar System Demo";
     private static final String VERTEX_SHADER_FILE = "solarsystem-vertex.glsl",
             FRAGMENT_SHADER_FILE = "solarsystem-fragment.glsl";
 
-    // window fields
+    // window fields, null when rendering offscreen
+    private JFrame frame;
     private GLCanvas glCanvas;
-    private int renderingProgram;
+    private ShaderProgram renderingProgram;
+    private ShaderProgramCache shaderCache; // null when -Dsolarsystem.shaderCache=none
     private int[] vao = new int[1];
-    private int[] vbo = new int[4];
+    private int[] vbo = new int[3];
     private Vector3f SphereLoc = new Vector3f(0,0,-1);
     private Vector3f cameraLoc;
 
-    private Sphere mySphere;
-    private int numSphereVertices, numSphereIndices;
+    private SphereLod lod;
+    private int viewportHeight;
 
-    private Vector3f initialLightLoc = new Vector3f(5.0f, 2.0f, 2.0f);
-    private float amt = 0.0f;
     private double prevTime;
     private double elapsedTime;
+    private final double frameTime; // real seconds per display() when rendering offscreen, 0 to use the clock
 
     // allocate variables for display() function
-    private FloatBuffer vals = Buffers.newDirectFloatBuffer(16);
     private Matrix4f pMat = new Matrix4f();  // perspective matrix
     private Matrix4f vMat = new Matrix4f();  // view matrix
-    private Matrix4f mMat = new Matrix4f();  // model matrix
-    private Matrix4f invTrMat = new Matrix4f(); // inverse-transpose
-    private int mLoc, vLoc, pLoc, nLoc, isSunLoc;;
-    private int shininessLoc, ambLoc, diffLoc, specLoc, posLoc,colorLoc,linAttLoc;
+    private Matrix4f pvMat = new Matrix4f(); // projection * view, for culling
+    private FrustumIntersection frustum = new FrustumIntersection();
+    private long lastStatsTime;
+    private volatile FrameProfiler profiler; // null unless -Dsolarsystem.profile or -Dsolarsystem.overlay
+    private JTextArea overlay;
+    // display() phases the profiler times, in the order they run
+    private static final int PHASE_TRANSFORMS = 0, PHASE_LIGHTS = 1, PHASE_DRAW = 2;
+    private UniformBuffer frameUniforms, lightingUniforms;
+    private GLStateTracker glState;
     private float aspect;
-    private Vector3f currentLightPos = new Vector3f();
-    private float[] lightPos = new float[3];
-
-    private static float ambientBase;
-    private static float specularBase;
-    private static float diffuseBase;
-    private static float linearAttenuationConstant;
+    private static final float NEAR_PLANE = 0.1f, FAR_PLANE = 1000.0f;
+
+    // texture units of the two samplers, only one of which is used
+    private static final int TEXTURE_UNIT = 0, TEXTURE_ARRAY_UNIT = 1;
+    // texture units of the light list buffers, bound once in init()
+    private static final int LIGHTS_UNIT = 2, CLUSTERS_UNIT = 3, LIGHT_INDICES_UNIT = 4;
+    private static final String DEFAULT_TEXTURE_LAYER_SIZE = "1024x512";
+
+    // uniform block binding points and their std140 byte offsets
+    private static final int FRAME_BINDING = 0, LIGHTING_BINDING = 1;
+    private static final int FRAME_V_MATRIX = 0, FRAME_P_MATRIX = 64, FRAME_EYE = 128, FRAME_SIZE = 144;
+    private static final int LIGHT_AMBIENT = 0, LIGHT_DIFFUSE = 16, LIGHT_SPECULAR = 32, LIGHT_COLOR = 48,
+            LIGHT_LIN_ATT = 64, LIGHT_CUTOFF = 68, LIGHT_SLICE_SCALE = 72, LIGHT_SLICE_BIAS = 76,
+            LIGHT_CLUSTER_GRID = 80, LIGHTING_SIZE = 96;
+
+    // per-instance data: model matrix, normal matrix, then (shininess, isSun, texture index, texture ready)
+    private static final int INSTANCE_FLOATS = 2 * SceneGraph.MATRIX_SIZE + 4;
+    private static final int INSTANCE_STRIDE = INSTANCE_FLOATS * Buffers.SIZEOF_FLOAT;
+    private static final int MODEL_ATTRIB = 3, NORMAL_ATTRIB = 7, MATERIAL_ATTRIB = 11;
+    private float[] instanceValues;
+    private FloatBuffer instanceBuf;
+    private int[] drawOrder;    // bodies sorted by texture then LOD level so each pair is one instanced draw
+    private int[] batchStarts;  // first drawOrder slot of each (texture, level) batch, plus a final end marker
+    private int[] batchNext;
+    private int numInstances;   // bodies that survived culling, the first numInstances of drawOrder
+
+    private float linearAttenuationConstant;
+
+    // every sun is a light; their positions are sorted into view clusters each frame
+    private final LightClusters lightClusters = new LightClusters(LightClusters.DEFAULT_TILE_SIZE,
+            LightClusters.DEFAULT_SLICES);
+    private int[] lightBodies;
+    private float[] lightPositions, lightRanges;
+    private TextureBuffer lightBuffer, clusterBuffer, lightIndexBuffer;
+    private FloatBuffer lightData;
+    private IntBuffer clusterData, lightIndexData;
 
     float[] lightAmbient;
     float[] lightDiffuse;
     float[] lightSpecular;
-    private static float[] lightColor;
-
+    private float[] lightColor;
+
+    Simulation simulation;
+    SimulationThread simThread; // null when display() updates the simulation itself
+    CloseApproachMonitor closeApproaches; // null unless -Dsolarsystem.closeApproach is set
+    private TransformSnapshot blended; // the two newest snapshots from simThread, interpolated
+    private double shortestPeriod;
+    private boolean viewChanged = true;
+    AsteroidBelt[] belts;
+    BeltRenderer beltRenderer; // null when the scene has no belts
+    TimeController time;
     SolarBody[] solarBodies;
-    Planet[] planets;
+    TextureManager textures;
     int[] textureIDs;
+    int[] textureIndices;
+    int[] batchTextures;    // what each body's batch binds: its texture, or 0 for the shared texture array
     boolean[] isSun;
+    float[] shininess;
 
     /**
      * Constructor for the containing window.
      */
 
     public SolarSystem(String fileName) throws FileSystemException, FileNotFoundException {
-        makeSolarSystem(fileName);
-        setTitle(WINDOW_TITLE);
-        setSize(WINDOW_WIDTH, WINDOW_HEIGHT);
+        this(SolFile.read(fileName), 0);
+        openWindow();
+    }
+
+    /**
+     * Loads the scene without opening a window, for drawing into any GLAutoDrawable.
+     *
+     * @param frameTime real time each display() stands for, in seconds, or 0 for the
+     *                  time that actually passed. The time warp applies either way.
+     *                  A fixed frame time also makes init() wait for every texture.
+     */
+    public SolarSystem(SolFile sol, double frameTime) {
+        this.frameTime = frameTime;
+        cameraLoc = sol.getCameraLoc();
+        lightColor = sol.getLightColor();
+        lightAmbient = sol.getLightAmbient();
+        lightDiffuse = sol.getLightDiffuse();
+        lightSpecular = sol.getLightSpecular();
+        linearAttenuationConstant = sol.getLinearAttenuationConstant();
+        simulation = new Simulation(sol.getSolarBodies(), SphereLoc, Simulation.DEFAULT_TIME_STEP,
+                Simulation.nBodyFromProperties());
+        solarBodies = simulation.getBodies();
+        belts = sol.getBelts();
+        time = TimeController.fromProperties(simulation);
+        String profileFile = System.getProperty("solarsystem.profile");
+        if(profileFile != null){
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> exportProfile(profileFile)));
+        }
+    }
+
+    private void openWindow(){
+        frame = new JFrame(WINDOW_TITLE);
+        frame.setSize(WINDOW_WIDTH, WINDOW_HEIGHT);
         GLProfile glp = GLProfile.getMaxProgrammableCore(true);
         GLCapabilities caps = new GLCapabilities(glp);
         this.glCanvas = new GLCanvas(caps);
         glCanvas.addGLEventListener(this);
-        this.add(glCanvas);
-        this.setVisible(true);
-        setDefaultCloseOperation(EXIT_ON_CLOSE);
+        glCanvas.addKeyListener(new TimeKeys());
+        frame.add(glCanvas);
+        if(Boolean.getBoolean("solarsystem.overlay")){
+            overlay = new JTextArea(4, 0);
+            overlay.setEditable(false);
+            overlay.setFocusable(false);
+            overlay.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+            frame.add(overlay, BorderLayout.SOUTH);
+        }
+        frame.setVisible(true);
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         Animator animator = new Animator(glCanvas);
         animator.start();
     }
 
+    /**
+     * Space pauses, ] and [ double and halve the time warp, R runs time backwards
+     * and Home goes back to time 0.
+     */
+    private class TimeKeys extends KeyAdapter {
+        @Override
+        public void keyPressed(KeyEvent e){
+            switch(e.getKeyCode()){
+                case KeyEvent.VK_SPACE: time.togglePause(); break;
+                case KeyEvent.VK_CLOSE_BRACKET: time.setWarp(time.getWarp() * 2); break;
+                case KeyEvent.VK_OPEN_BRACKET: time.setWarp(time.getWarp() / 2); break;
+                case KeyEvent.VK_R: time.reverse(); break;
+                case KeyEvent.VK_HOME:
+                    if(simulation.getGravity() == null) time.seek(0);
+                    break;
+                default: break;
+            }
+        }
+    }
+
+    private void exportProfile(String fileName){
+        FrameProfiler profiler = this.profiler;
+        if(profiler == null) return;
+        try {
+            profiler.export(fileName);
+        }catch(IOException e){
+            System.err.println("Could not write the frame profile to " + fileName + ": " + e.getMessage());
+        }
+    }
+
     public static void main(String[] args){
         if(!checkArgs(args)){
             System.exit(0);
@@ -106,409 +230,463 @@ public class SolarSystem extends JFrame implements GLEventListener {
             System.err.println("Please provide a .sol file");
             return false;
         }
-        if(args[0].substring(args[0].length()-5).equals(".sol")){
-            System.err.println("Please provide a .sol file");
+        if(!args[0].endsWith(".sol") && !args[0].endsWith(".solb")){
+            System.err.println("Please provide a .sol or compiled .solb file");
             return false;
         }
         return true;
     }
-    private void makeSolarSystem(String fileName) throws FileNotFoundException,FileSystemException {
-        File solFile = new File(fileName);
-        Scanner fileReader = new Scanner(solFile);
-        try {
-            String[] cameraPosStrings = fileReader.nextLine().split("\t");
-            cameraLoc = new Vector3f(Float.parseFloat(cameraPosStrings[0]), Float.parseFloat(cameraPosStrings[1]), Float.parseFloat(cameraPosStrings[2]));
-            String[] lightStrings = fileReader.nextLine().split("\t");
-            lightColor = new float[]{Float.parseFloat(lightStrings[0]), Float.parseFloat(lightStrings[1]), Float.parseFloat(lightStrings[2]),1.0f};
-            ambientBase = Float.parseFloat(lightStrings[3]);
-            lightAmbient = new float[] {ambientBase, ambientBase, ambientBase, 1.0f };
-            diffuseBase = Float.parseFloat(lightStrings[4]);
-            lightDiffuse = new float[] {diffuseBase, diffuseBase, diffuseBase, 1.0f };
-            specularBase = Float.parseFloat(lightStrings[5]);
-            lightSpecular = new float[] {specularBase, specularBase, specularBase, 1.0f };
-            linearAttenuationConstant = Float.parseFloat(lightStrings[6]);
-        }catch(Exception e) {
-            throw new FileSystemException("The light and/or coloring formatting were incorrect");
-        }
-        try{
-            LinkedList<SolarBody> lastPlanet = new LinkedList<SolarBody>();
-            lastPlanet.addFirst(null);
-            int lastNumTabs = -1;
-            Sun sun = null;
-            ArrayList<Planet> planets = new ArrayList<Planet>();
-            while (fileReader.hasNextLine()) {
-                String nextLine = fileReader.nextLine();
-                int numTabs = 0;
-                while(nextLine.charAt(numTabs) == '\t'){
-                    numTabs++;
-                }
-                nextLine = nextLine.substring(numTabs);
-                if(numTabs <= lastNumTabs){
-                    for(int i = 0; i <= lastNumTabs-numTabs; i++)
-                        lastPlanet.pop();
-                }
-                lastNumTabs = numTabs;
-
-                String[] planetStrings = nextLine.split("\t");
-                String planetTexture = planetStrings[0];
-                float radius = Float.parseFloat(planetStrings[1]);
-                float rotationPeriod = Float.parseFloat(planetStrings[2]);
-                if(planetStrings.length <=3) {// if sun
-                    sun = new Sun(planetTexture,radius,rotationPeriod);
-                    lastPlanet.addFirst(new Sun(planetTexture,radius,rotationPeriod));
-                    continue;
-                }
-                float distFromCenter = Float.parseFloat(planetStrings[3]);
-                float orbitingPeriod = Float.parseFloat(planetStrings[4]);
-                float specularComponent = Float.parseFloat(planetStrings[5]);
-                planets.add(new Planet(planetTexture,radius,rotationPeriod,distFromCenter,orbitingPeriod,specularComponent,lastPlanet.getFirst()));
-                lastPlanet.addFirst(planets.get(planets.size()-1));
-            }
-            SolarBody[] solSystem = new SolarBody[planets.size()+1];
-            Planet[] allPlanets = new Planet[planets.size()];
-            int counter = 1;
-            solSystem[0] = sun;
-            for(Planet sb: planets){
-                solSystem[counter] = sb;
-                allPlanets[counter-1] = sb;
-                counter++;
-            }
-            this.solarBodies = solSystem;
-            this.planets = allPlanets;
-        }catch(Exception e){
-            throw new FileSystemException("One or more Planets were incorrectly formatted");
-        }
-    }
-
     @Override
     public void init(GLAutoDrawable glAutoDrawable) {
         GL4 gl = (GL4) GLContext.getCurrentGL();
-        renderingProgram = Utils.createShaderProgram(VERTEX_SHADER_FILE, FRAGMENT_SHADER_FILE);
+        shaderCache = ShaderProgramCache.fromProperties();
+        renderingProgram = new ShaderProgram(VERTEX_SHADER_FILE, FRAGMENT_SHADER_FILE, shaderCache);
+        renderingProgram.bindUniformBlock("Frame", FRAME_BINDING);
+        renderingProgram.bindUniformBlock("Lighting", LIGHTING_BINDING);
+        frameUniforms = new UniformBuffer(FRAME_BINDING,
+                Math.max(FRAME_SIZE, renderingProgram.getUniformBlockSize("Frame")));
+        lightingUniforms = new UniformBuffer(LIGHTING_BINDING,
+                Math.max(LIGHTING_SIZE, renderingProgram.getUniformBlockSize("Lighting")));
 
         prevTime = System.currentTimeMillis();
 
-        aspect = (float) glCanvas.getWidth() / (float) glCanvas.getHeight();
-        pMat.setPerspective((float) Math.toRadians(60.0f), aspect, 0.1f, 1000.0f);
+        reshape(glAutoDrawable, 0, 0, glAutoDrawable.getSurfaceWidth(), glAutoDrawable.getSurfaceHeight());
 
         setupVertices();
         setupTextures();
+        if(frameTime > 0){
+            // offscreen frames are kept, so none of them may show a placeholder
+            try {
+                textures.uploadAll(gl);
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+        setupInstances();
+        setupLights();
+        setupBelts();
+        // every program has been linked by now
+        if(shaderCache != null){
+            System.out.println("Shader cache " + shaderCache.getDirectory() + ": " + shaderCache.getHits() + " hits, "
+                    + shaderCache.getMisses() + " misses, " + shaderCache.getRejected() + " rejected");
+        }
+        // texture loading and vertex setup bound state behind the tracker's back
+        glState = new GLStateTracker(gl);
+        profiler = FrameProfiler.fromProperties(gl, "transforms", "lights", "draw");
+        if(frameTime == 0){
+            // offscreen frames stay in lockstep with the simulation, so only a window gets the thread
+            simThread = SimulationThread.fromProperties(simulation, time);
+        }
+        closeApproaches = CloseApproachMonitor.fromProperties(simulation);
+        if(simThread != null){
+            blended = simulation.getSceneGraph().newSnapshot();
+            shortestPeriod = simulation.getSceneGraph().getShortestPeriod();
+            simThread.setCloseApproachMonitor(closeApproaches);
+            simThread.start();
+        }
         gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
-        System.out.println("init"); // need this to run on mac, appoligies if I forget to delete
     }
+    /**
+     * Requests every body's texture. They decode in the background and are drawn
+     * with a placeholder until display() has uploaded them.
+     *
+     * By default every texture becomes a layer of one texture array, resized to
+     * -Dsolarsystem.textureArray (WIDTHxHEIGHT), so a whole frame binds one texture.
+     * Set it to "none" to keep each texture separate and at its own size.
+     */
     public void setupTextures(){
-        GL4 gl = (GL4) GLContext.getCurrentGL();
-        textureIDs = new int[solarBodies.length];
-        for(int i = 0; i < textureIDs.length; i++){
-            textureIDs[i] = Utils.loadTexture(solarBodies[i].getTextureFile());
+        String layerSize = System.getProperty("solarsystem.textureArray", DEFAULT_TEXTURE_LAYER_SIZE);
+        int layerWidth = 0, layerHeight = 0;
+        if(!layerSize.equals("none")){
+            String[] size = layerSize.split("x");
+            if(size.length != 2){
+                throw new IllegalArgumentException("solarsystem.textureArray should be WIDTHxHEIGHT or none, not " + layerSize);
+            }
+            layerWidth = Integer.parseInt(size[0].trim());
+            layerHeight = Integer.parseInt(size[1].trim());
         }
-    }
-
-    @Override
-    public void dispose(GLAutoDrawable glAutoDrawable) {}
+        textures = new TextureManager(Runtime.getRuntime().availableProcessors(), TextureCache.fromProperties(),
+                layerWidth, layerHeight);
+        textureIndices = new int[solarBodies.length];
+        for(int i = 0; i < textureIndices.length; i++){
+            textureIndices[i] = textures.request(solarBodies[i].getTextureFile());
+        }
+        textureIDs = textures.getTextureIDs();
 
-    @Override
-    public void display(GLAutoDrawable glAutoDrawable) {
         GL4 gl = (GL4) GLContext.getCurrentGL();
-        gl.glClear(GL_COLOR_BUFFER_BIT);
-        gl.glClear(GL_DEPTH_BUFFER_BIT);
-
-        gl.glUseProgram(renderingProgram);
+        renderingProgram.use();
+        gl.glUniform1i(renderingProgram.getUniformLocation("s"), TEXTURE_UNIT);
+        gl.glUniform1i(renderingProgram.getUniformLocation("layers"), TEXTURE_ARRAY_UNIT);
+        gl.glUniform1i(renderingProgram.getUniformLocation("useLayers"), textures.isArray() ? 1 : 0);
+    }
 
-        mLoc = gl.glGetUniformLocation(renderingProgram, "m_matrix");
-        vLoc = gl.glGetUniformLocation(renderingProgram, "v_matrix");
-        pLoc = gl.glGetUniformLocation(renderingProgram, "p_matrix");
-        nLoc = gl.glGetUniformLocation(renderingProgram, "norm_matrix");
-        isSunLoc = gl.glGetUniformLocation(renderingProgram, "isSun");
-        shininessLoc = gl.glGetUniformLocation(renderingProgram, "shininess");
+    /**
+     * Allocates the per-instance buffer and the draw order. Bodies are re-sorted every
+     * frame into one run per texture and LOD level, and each run is drawn with a single
+     * instanced draw no matter how many bodies are in it. With a texture array every
+     * body shares one texture, so there is only one run per LOD level.
+     */
+    private void setupInstances(){
+        int numBodies = solarBodies.length;
+        isSun = new boolean[numBodies];
+        shininess = new float[numBodies];
+        for(int i = 0; i < numBodies; i++){
+            isSun[i] = solarBodies[i] instanceof Sun;
+            shininess[i] = isSun[i] ? 0 : ((Planet) solarBodies[i]).specularComponent;
+        }
+
+        batchTextures = new int[numBodies];
+        if(!textures.isArray()){
+            System.arraycopy(textureIndices, 0, batchTextures, 0, numBodies);
+        }
+        int numBatchTextures = textures.isArray() ? 1 : textureIDs.length;
+        batchStarts = new int[numBatchTextures * lod.getNumLevels() + 1];
+        batchNext = new int[batchStarts.length - 1];
+        drawOrder = new int[numBodies];
+        instanceValues = new float[numBodies * INSTANCE_FLOATS];
+        instanceBuf = Buffers.newDirectFloatBuffer(instanceValues.length);
+    }
 
-        Vector3f front = new Vector3f();
-        solarBodies[0].getPosition().sub(cameraLoc,front);
-        vMat.identity();
-        vMat.lookAlong(-cameraLoc.x()/cameraLoc.length(),-cameraLoc.y()/cameraLoc.length(),-cameraLoc.z()/cameraLoc.length(),0,1,0);
-        vMat.translate(-cameraLoc.x(), -cameraLoc.y(), -cameraLoc.z());
+    /**
+     * Makes every sun a light. Suns are pinned in the scene graph so their positions
+     * stay current while they are out of view, still lighting what is in view.
+     */
+    private void setupLights(){
+        SceneGraph sceneGraph = simulation.getSceneGraph();
+        int numLights = 0;
+        for(boolean sun : isSun){
+            if(sun) numLights++;
+        }
+        lightBodies = new int[numLights];
+        for(int i = 0, l = 0; i < solarBodies.length; i++){
+            if(!isSun[i]) continue;
+            lightBodies[l++] = i;
+            sceneGraph.pin(i);
+        }
+        lightPositions = new float[3 * numLights];
+        lightRanges = new float[numLights];
+        Arrays.fill(lightRanges, LightClusters.range(linearAttenuationConstant));
+        lightData = Buffers.newDirectFloatBuffer(lightPositions.length);
+        clusterData = Buffers.newDirectIntBuffer(lightClusters.getClusters().length);
+        lightIndexData = Buffers.newDirectIntBuffer(Math.max(1, numLights));
 
-        currentLightPos.set(solarBodies[0].getPosition());
-        elapsedTime = System.currentTimeMillis() - prevTime;
-        prevTime = System.currentTimeMillis();
-        amt += elapsedTime * 0.001;
+        GL4 gl = (GL4) GLContext.getCurrentGL();
+        lightBuffer = new TextureBuffer(LIGHTS_UNIT, GL_RGB32F);
+        clusterBuffer = new TextureBuffer(CLUSTERS_UNIT, GL_RG32UI);
+        lightIndexBuffer = new TextureBuffer(LIGHT_INDICES_UNIT, GL_R32UI);
+        renderingProgram.use();
+        gl.glUniform1i(renderingProgram.getUniformLocation("lights"), LIGHTS_UNIT);
+        gl.glUniform1i(renderingProgram.getUniformLocation("clusters"), CLUSTERS_UNIT);
+        gl.glUniform1i(renderingProgram.getUniformLocation("lightIndices"), LIGHT_INDICES_UNIT);
+    }
 
-        installLights();
+    /**
+     * Uploads the particles of every belt, once; from then on the belts' shader
+     * moves them.
+     */
+    private void setupBelts(){
+        if(belts.length == 0) return;
+        int[] parents = new int[belts.length];
+        for(int b = 0; b < belts.length; b++){
+            parents[b] = Arrays.asList(solarBodies).indexOf(belts[b].getParent());
+        }
+        beltRenderer = new BeltRenderer(belts, parents, simulation.getSceneGraph(), shaderCache, FRAME_BINDING,
+                LIGHTING_BINDING, LIGHTS_UNIT, CLUSTERS_UNIT, LIGHT_INDICES_UNIT);
+    }
 
+    /**
+     * Counting sort of the visible bodies by (texture, LOD level), in O(bodies) per frame.
+     */
+    private void sortInstances(TransformSnapshot transforms){
+        int numLevels = lod.getNumLevels();
+        int[] levels = lod.getLevels();
+        boolean[] visible = transforms.getVisibility();
+        Arrays.fill(batchStarts, 0);
         for(int i = 0; i < solarBodies.length; i++){
-            mMat.identity();
-            if(i <1) {
-                gl.glUniform1i(isSunLoc, 1);
-                gl.glUniform1f(shininessLoc, 0);
-            }else {
-                gl.glUniform1i(isSunLoc, 0);
-                gl.glUniform1f(shininessLoc, planets[i-1].specularComponent);
-                SolarBody currOrbiting = planets[i-1].getParent();
-                while(currOrbiting.getParent() != null){
-                    mMat.rotateY((float) (amt * Math.PI * (2 / currOrbiting.orbitalPeriod())));
-                    mMat.translate(currOrbiting.distFromCenter(), 0, 0);
-                    currOrbiting = currOrbiting.getParent();
-                }
-                mMat.rotateY((float) (amt * Math.PI * (2 / planets[i - 1].orbitalPeriod)));
-                mMat.translate(planets[i - 1].distFromCenter, 0, 0);
-            }
-            mMat.translate(SphereLoc.x(), SphereLoc.y(), SphereLoc.z());
-            mMat.scale(solarBodies[i].getRadius());
-            mMat.rotateY(-(float)(amt * Math.PI * (2/solarBodies[i].getRotationPeriod())));
+            if(visible[i]) batchStarts[batchTextures[i] * numLevels + levels[i] + 1]++;
+        }
+        for(int b = 0; b < batchNext.length; b++){
+            batchStarts[b + 1] += batchStarts[b];
+        }
+        System.arraycopy(batchStarts, 0, batchNext, 0, batchNext.length);
+        for(int i = 0; i < solarBodies.length; i++){
+            if(visible[i]) drawOrder[batchNext[batchTextures[i] * numLevels + levels[i]]++] = i;
+        }
+        numInstances = batchStarts[batchNext.length];
+    }
 
-            mMat.invert(invTrMat);
-            invTrMat.transpose(invTrMat);
+    /**
+     * Shows how much the last frame culled, and how many of its GL state calls the
+     * tracker skipped, in the title bar, refreshed once a second.
+     */
+    private void reportStats(TransformSnapshot transforms){
+        if(frame == null) return;
+        long now = System.currentTimeMillis();
+        if(now - lastStatsTime < 1000) return;
+        lastStatsTime = now;
+        String title = WINDOW_TITLE + " - t " + String.format("%.2f", transforms.getTime()) + ", warp "
+                + time.getWarp() + (time.isPaused() ? " (paused)" : "") + " - " + transforms.getVisibleBodies() + "/" + solarBodies.length
+                + " bodies visible, " + transforms.getCulledSubtrees() + " subtrees culled of "
+                + transforms.getBoundsTested() + " tested, " + lightBodies.length + " lights, at most "
+                + lightClusters.getMaxLightsPerCluster() + " per cluster, " + glState.getIssuedCalls()
+                + " state calls issued, " + glState.getElidedCalls() + " elided"
+                + (closeApproaches != null ? ", " + closeApproaches.getClosePairs() + " pairs within "
+                        + closeApproaches.getDistance() : "");
+        String overlayText = overlay != null ? profiler.overlayText() + "   (p50/p99/max ms)" : null;
+        SwingUtilities.invokeLater(() -> {
+            frame.setTitle(title);
+            if(overlayText != null) overlay.setText(overlayText);
+        });
+    }
 
-            gl.glUniformMatrix4fv(mLoc, 1, false, mMat.get(vals));
-            gl.glUniformMatrix4fv(vLoc, 1, false, vMat.get(vals));
-            gl.glUniformMatrix4fv(pLoc, 1, false, pMat.get(vals));
-            gl.glUniformMatrix4fv(nLoc, 1, false, invTrMat.get(vals));
+    private void fillInstanceBuffer(TransformSnapshot transforms){
+        float[] models = transforms.getModelMatrices();
+        float[] normals = transforms.getNormalMatrices();
+        int o = 0;
+        for(int n = 0; n < numInstances; n++){
+            int body = drawOrder[n];
+            System.arraycopy(models, body * SceneGraph.MATRIX_SIZE, instanceValues, o, SceneGraph.MATRIX_SIZE);
+            o += SceneGraph.MATRIX_SIZE;
+            System.arraycopy(normals, body * SceneGraph.MATRIX_SIZE, instanceValues, o, SceneGraph.MATRIX_SIZE);
+            o += SceneGraph.MATRIX_SIZE;
+            instanceValues[o++] = shininess[body];
+            instanceValues[o++] = isSun[body] ? 1 : 0;
+            instanceValues[o++] = textureIndices[body];
+            instanceValues[o++] = textures.isReady(textureIndices[body]) ? 1 : 0;
+        }
+        instanceBuf.clear();
+        instanceBuf.put(instanceValues, 0, numInstances * INSTANCE_FLOATS);
+        instanceBuf.flip();
+    }
 
-            gl.glBindBuffer(GL_ARRAY_BUFFER, vbo[0]);
-            gl.glVertexAttribPointer(0, 3, GL_FLOAT, false, 0, 0);
-            gl.glEnableVertexAttribArray(0);
+    /**
+     * Points the per-instance attributes at the given instance. GL 4.1 (the mac limit)
+     * has no base instance, so each run re-points the attributes instead.
+     */
+    private void pointInstanceAttributes(GL4 gl, int firstInstance){
+        long base = (long) firstInstance * INSTANCE_STRIDE;
+        for(int column = 0; column < 4; column++){
+            gl.glVertexAttribPointer(MODEL_ATTRIB + column, 4, GL_FLOAT, false, INSTANCE_STRIDE,
+                    base + column * 4 * Buffers.SIZEOF_FLOAT);
+            gl.glVertexAttribPointer(NORMAL_ATTRIB + column, 4, GL_FLOAT, false, INSTANCE_STRIDE,
+                    base + (SceneGraph.MATRIX_SIZE + column * 4) * Buffers.SIZEOF_FLOAT);
+        }
+        gl.glVertexAttribPointer(MATERIAL_ATTRIB, 4, GL_FLOAT, false, INSTANCE_STRIDE,
+                base + 2 * SceneGraph.MATRIX_SIZE * Buffers.SIZEOF_FLOAT);
+    }
 
-            gl.glActiveTexture(GL_TEXTURE0);
-            gl.glBindTexture(GL_TEXTURE_2D, textureIDs[i]);
+    @Override
+    public void dispose(GLAutoDrawable glAutoDrawable) {
+        if(simThread != null){
+            try {
+                simThread.stop();
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+        textures.dispose((GL4) GLContext.getCurrentGL());
+        lightBuffer.dispose();
+        clusterBuffer.dispose();
+        lightIndexBuffer.dispose();
+        if(beltRenderer != null) beltRenderer.dispose();
+        if(profiler != null) profiler.dispose();
+    }
 
-            gl.glBindBuffer(GL_ARRAY_BUFFER, vbo[1]);
-            gl.glVertexAttribPointer(1, 2, GL_FLOAT, false, 0, 0);
-            gl.glEnableVertexAttribArray(1);
+    @Override
+    public void display(GLAutoDrawable glAutoDrawable) {
+        GL4 gl = (GL4) GLContext.getCurrentGL();
+        FrameProfiler profiler = this.profiler;
+        if(profiler != null) profiler.beginFrame();
+        if(textures.uploadFinished(gl) > 0){
+            glState.invalidate(); // the uploads bound textures behind the tracker's back
+        }
+        glState.beginFrame();
+        gl.glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
 
-            gl.glBindBuffer(GL_ARRAY_BUFFER, vbo[2]);
-            gl.glVertexAttribPointer(2, 3, GL_FLOAT, false, 0, 0);
-            gl.glEnableVertexAttribArray(2);
+        glState.useProgram(renderingProgram.getId());
 
-            gl.glEnable(GL_CULL_FACE);
-            gl.glFrontFace(GL_CCW);
-            gl.glEnable(GL_DEPTH_TEST);
-            gl.glDepthFunc(GL_LEQUAL);
+        vMat.identity();
+        vMat.lookAlong(-cameraLoc.x()/cameraLoc.length(),-cameraLoc.y()/cameraLoc.length(),-cameraLoc.z()/cameraLoc.length(),0,1,0);
+        vMat.translate(-cameraLoc.x(), -cameraLoc.y(), -cameraLoc.z());
 
-            gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, vbo[3]);
-            gl.glDrawElements(GL_TRIANGLES, numSphereIndices, GL_UNSIGNED_INT, 0);
+        if(profiler != null) profiler.begin(PHASE_TRANSFORMS);
+        frustum.set(pvMat.set(pMat).mul(vMat));
+        TransformSnapshot transforms = nextTransforms();
+        lod.select(transforms.getModelMatrices(), vMat, pMat.m11() * viewportHeight * 0.5f, transforms.getVisibility());
+        sortInstances(transforms);
+        reportStats(transforms);
+        fillInstanceBuffer(transforms);
+        if(profiler != null) profiler.end(PHASE_TRANSFORMS);
+
+        // the suns have moved, so the lights go in after the transforms
+        if(profiler != null) profiler.begin(PHASE_LIGHTS);
+        installLights(transforms);
+        if(profiler != null) profiler.end(PHASE_LIGHTS);
+
+        if(profiler != null) profiler.begin(PHASE_DRAW);
+        frameUniforms.putMatrix(FRAME_V_MATRIX, vMat).putMatrix(FRAME_P_MATRIX, pMat)
+                .putFloat(FRAME_EYE, cameraLoc.x()).putFloat(FRAME_EYE + 4, cameraLoc.y())
+                .putFloat(FRAME_EYE + 8, cameraLoc.z()).upload();
+
+        // the sphere attributes and element buffer were captured in the VAO by setupVertices()
+        glState.bindVertexArray(vao[0]);
+        glState.bindBuffer(GL_ARRAY_BUFFER, vbo[2]);
+        gl.glBufferData(GL_ARRAY_BUFFER, (long) instanceBuf.limit() * Buffers.SIZEOF_FLOAT, instanceBuf, GL_STREAM_DRAW);
+
+        glState.enable(GL_CULL_FACE);
+        glState.frontFace(GL_CCW);
+        glState.enable(GL_DEPTH_TEST);
+        glState.depthFunc(GL_LEQUAL);
+
+        int numLevels = lod.getNumLevels();
+        if(textures.isArray()){
+            glState.activeTexture(GL_TEXTURE0 + TEXTURE_ARRAY_UNIT);
+            glState.bindTexture(GL_TEXTURE_2D_ARRAY, textures.getArrayTexture());
+        }else{
+            glState.activeTexture(GL_TEXTURE0 + TEXTURE_UNIT);
+        }
+        for(int t = 0; t * numLevels < batchNext.length; t++){
+            if(batchStarts[(t + 1) * numLevels] == batchStarts[t * numLevels]) continue;
+            if(!textures.isArray()) glState.bindTexture(GL_TEXTURE_2D, textureIDs[t]);
+            for(int l = 0; l < numLevels; l++){
+                int b = t * numLevels + l;
+                int count = batchStarts[b + 1] - batchStarts[b];
+                if(count == 0) continue;
+                pointInstanceAttributes(gl, batchStarts[b]);
+                gl.glDrawElementsInstancedBaseVertex(GL_TRIANGLES, lod.getNumIndices(l), GL_UNSIGNED_INT,
+                        (long) lod.getFirstIndex(l) * Buffers.SIZEOF_INT, count, lod.getBaseVertex(l));
+            }
+        }
+        if(beltRenderer != null){
+            beltRenderer.draw(glState, transforms, frustum, pMat.m11() * viewportHeight * 0.5f);
         }
+        if(profiler != null){
+            profiler.end(PHASE_DRAW);
+            profiler.endFrame();
+        }
+    }
+
+    /**
+     * The transforms to draw this frame. Without a simulation thread this advances
+     * time and updates the scene graph right here; whole moon systems outside the
+     * view are skipped before any of their matrices are computed. With one, it
+     * takes the newest snapshots the thread has published and interpolates
+     * between the last two, running one tick behind so there is always a newer
+     * one to move towards. A seek between them is shown as the jump it is.
+     */
+    private TransformSnapshot nextTransforms(){
+        if(simThread == null){
+            elapsedTime = System.currentTimeMillis() - prevTime;
+            prevTime = System.currentTimeMillis();
+            time.advance(frameTime > 0 ? frameTime : elapsedTime * 0.001);
+            simulation.update(frustum);
+            if(closeApproaches != null) closeApproaches.check();
+            return simulation.getSceneGraph().getTarget();
+        }
+        if(viewChanged){
+            simThread.setCullMatrix(pvMat);
+            viewChanged = false;
+        }
+        SnapshotExchange<TransformSnapshot> exchange = simThread.getExchange();
+        exchange.update();
+        TransformSnapshot current = exchange.current(), previous = exchange.previous();
+        if(previous.getStamp() == 0 || !TransformSnapshot.canBlend(previous, current, shortestPeriod)){
+            return current; // nothing to blend with yet, or too much in between to blend
+        }
+        float alpha = (float) (System.nanoTime() - current.getStamp()) / (current.getStamp() - previous.getStamp());
+        SceneGraph sceneGraph = simulation.getSceneGraph();
+        blended.interpolate(previous, current, Math.max(0, Math.min(1, alpha)), sceneGraph.getRadii(),
+                sceneGraph.getPinned());
+        return blended;
     }
 
     @Override
     public void reshape(GLAutoDrawable drawable, int x, int y, int width, int height) {
-        aspect = (float) glCanvas.getWidth() / (float) glCanvas.getHeight();
-        pMat.setPerspective((float) Math.toRadians(60.0f), aspect, 0.1f, 1000.0f);
+        aspect = (float) width / (float) height;
+        viewportHeight = height;
+        pMat.setPerspective((float) Math.toRadians(60.0f), aspect, NEAR_PLANE, FAR_PLANE);
+        if(width > 0 && height > 0) lightClusters.resize(width, height, NEAR_PLANE, FAR_PLANE);
+        viewChanged = true;
     }
 
-    private void installLights() {
-        GL4 gl = (GL4) GLContext.getCurrentGL();
-
-        lightPos[0]=solarBodies[0].getPosition().x(); lightPos[1]=solarBodies[0].getPosition().y(); lightPos[2]=solarBodies[0].getPosition().z();
-
-        // get the locations of the light and material fields in the shader
-        ambLoc = gl.glGetUniformLocation(renderingProgram, "light.ambient");
-        diffLoc = gl.glGetUniformLocation(renderingProgram, "light.diffuse");
-        specLoc = gl.glGetUniformLocation(renderingProgram, "light.specular");
-        posLoc = gl.glGetUniformLocation(renderingProgram, "light.position");
-        colorLoc = gl.glGetUniformLocation(renderingProgram, "color");
-        linAttLoc = gl.glGetUniformLocation(renderingProgram, "linAtt");
-
-
-        //  set the uniform light and material values in the shader
-        gl.glProgramUniform4fv(renderingProgram, ambLoc, 1, lightAmbient, 0);
-        gl.glProgramUniform4fv(renderingProgram, diffLoc, 1, lightDiffuse, 0);
-        gl.glProgramUniform4fv(renderingProgram, specLoc, 1, lightSpecular, 0);
-        gl.glProgramUniform3fv(renderingProgram, posLoc, 1, lightPos, 0);
-        gl.glProgramUniform4fv(renderingProgram, colorLoc, 1, lightColor, 0);
-        gl.glUniform1f(linAttLoc, linearAttenuationConstant);
+    /**
+     * Sorts the suns into clusters of the view and uploads the light list, the
+     * clusters and the Lighting block, so each fragment only loops over the suns
+     * in its own cluster however many there are.
+     */
+    private void installLights(TransformSnapshot transforms) {
+        int numLights = lightBodies.length;
+        for(int l = 0; l < numLights; l++){
+            transforms.getPosition(lightBodies[l], lightPositions, 3 * l);
+        }
+        lightClusters.assign(vMat, pMat, lightPositions, lightRanges, numLights);
+
+        lightData.clear();
+        lightData.put(lightPositions).flip();
+        lightBuffer.upload(lightData, (long) lightPositions.length * Buffers.SIZEOF_FLOAT);
+        int[] clusters = lightClusters.getClusters();
+        if(clusterData.capacity() < clusters.length){
+            clusterData = Buffers.newDirectIntBuffer(clusters.length);
+        }
+        clusterData.clear();
+        clusterData.put(clusters).flip();
+        clusterBuffer.upload(clusterData, (long) clusters.length * Buffers.SIZEOF_INT);
+        int numIndices = lightClusters.getNumIndices();
+        if(lightIndexData.capacity() < numIndices){
+            lightIndexData = Buffers.newDirectIntBuffer(Math.max(numIndices, 2 * lightIndexData.capacity()));
+        }
+        lightIndexData.clear();
+        lightIndexData.put(lightClusters.getIndices(), 0, numIndices).flip();
+        lightIndexBuffer.upload(lightIndexData, (long) numIndices * Buffers.SIZEOF_INT);
+
+        //  set the light and material values in the Lighting block, one upload per frame
+        lightingUniforms.putFloats(LIGHT_AMBIENT, lightAmbient, 4)
+                .putFloats(LIGHT_DIFFUSE, lightDiffuse, 4)
+                .putFloats(LIGHT_SPECULAR, lightSpecular, 4)
+                .putFloats(LIGHT_COLOR, lightColor, 4)
+                .putFloat(LIGHT_LIN_ATT, linearAttenuationConstant)
+                .putFloat(LIGHT_CUTOFF, LightClusters.CUTOFF)
+                .putFloat(LIGHT_SLICE_SCALE, lightClusters.getSliceScale())
+                .putFloat(LIGHT_SLICE_BIAS, lightClusters.getSliceBias())
+                .putInt(LIGHT_CLUSTER_GRID, lightClusters.getTilesX())
+                .putInt(LIGHT_CLUSTER_GRID + 4, lightClusters.getTilesY())
+                .putInt(LIGHT_CLUSTER_GRID + 8, lightClusters.getNumSlices())
+                .putInt(LIGHT_CLUSTER_GRID + 12, lightClusters.getTileSize())
+                .upload();
     }
 
     private void setupVertices() {
         GL4 gl = (GL4) GLContext.getCurrentGL();
 
-        mySphere = new Sphere(48);
-        numSphereVertices = mySphere.getNumVertices();
-        numSphereIndices = mySphere.getNumIndices();
-
-        Vector3f[] vertices = mySphere.getVertices();
-        Vector2f[] texCoords = mySphere.getTexCoords();
-        Vector3f[] normals = mySphere.getNormals();
-        int[] indices = mySphere.getIndices();
-
-        float[] pvalues = new float[vertices.length*3];
-        float[] tvalues = new float[texCoords.length*2];
-        float[] nvalues = new float[normals.length*3];
-
-        for (int i=0; i<numSphereVertices; i++) {
-            pvalues[i*3]   = (float) vertices[i].x();
-            pvalues[i*3+1] = (float) vertices[i].y();
-            pvalues[i*3+2] = (float) vertices[i].z();
-            tvalues[i*2]   = (float) texCoords[i].x();
-            tvalues[i*2+1] = (float) texCoords[i].y();
-            nvalues[i*3]   = (float) normals[i].x();
-            nvalues[i*3+1] = (float) normals[i].y();
-            nvalues[i*3+2] = (float) normals[i].z();
-        }
+        // every LOD level lives in the same two buffers, drawn by first index and base vertex
+        lod = new SphereLod(simulation.getSceneGraph().getRadii(),
+                Float.parseFloat(System.getProperty("solarsystem.lodError", String.valueOf(SphereLod.DEFAULT_MAX_ERROR))));
 
         gl.glGenVertexArrays(vao.length, vao, 0);
         gl.glBindVertexArray(vao[0]);
-        gl.glGenBuffers(4, vbo, 0);
+        gl.glGenBuffers(vbo.length, vbo, 0);
 
+        FloatBuffer vertBuf = lod.packVertices();
         gl.glBindBuffer(GL_ARRAY_BUFFER, vbo[0]);
-        FloatBuffer vertBuf = Buffers.newDirectFloatBuffer(pvalues);
         gl.glBufferData(GL_ARRAY_BUFFER, vertBuf.limit()*4, vertBuf, GL_STATIC_DRAW);
 
-        gl.glBindBuffer(GL_ARRAY_BUFFER, vbo[1]);
-        FloatBuffer texBuf = Buffers.newDirectFloatBuffer(tvalues);
-        gl.glBufferData(GL_ARRAY_BUFFER, texBuf.limit()*4, texBuf, GL_STATIC_DRAW);
-
-        gl.glBindBuffer(GL_ARRAY_BUFFER, vbo[2]);
-        FloatBuffer norBuf = Buffers.newDirectFloatBuffer(nvalues);
-        gl.glBufferData(GL_ARRAY_BUFFER, norBuf.limit()*4, norBuf, GL_STATIC_DRAW);
-
-        gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, vbo[3]);
-        IntBuffer idxBuf = Buffers.newDirectIntBuffer(indices);
+        IntBuffer idxBuf = lod.packIndices();
+        gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, vbo[1]);
         gl.glBufferData(GL_ELEMENT_ARRAY_BUFFER, idxBuf.limit()*4, idxBuf, GL_STATIC_DRAW);
-    }
-
-    private interface SolarBody{
-        public Vector3f getPosition();
-        public void setPosition(Vector3f position);
-        public float x();
-        public float y();
-        public float z();
-        public String getTextureFile();
-        public float getRotationPeriod();
-        public float getRadius();
-        public SolarBody getParent();
-        public float distFromCenter();
-        public float orbitalPeriod();
-    }
-    private static class Sun implements SolarBody {
-        public String textureFile;
-        public float radius;
-        public float rotationPeriod;
-        public Vector3f position;
-
-
-        //constructor for sun
-        public Sun(String textureFile, float radius, float rotationPeriod) {
-            this.textureFile = textureFile;
-            this.radius = radius;
-            this.rotationPeriod = rotationPeriod;
-            this.position = new Vector3f();
-        }
-
-        @Override
-        public Vector3f getPosition() {
-            return position;
-        }
 
-        @Override
-        public float getRotationPeriod() {
-            return rotationPeriod;
-        }
-
-        @Override
-        public void setPosition(Vector3f position) {
-            this.position = position;
-        }
-        public String toString(){
-            return "textureFile: " + textureFile + "\nradius: " + radius + "\nrotation period: " + rotationPeriod;
-        }
-        public float x(){
-            return position.x();
-        }
-        public float y(){
-            return position.y();
-        }
-        public float z(){
-            return position.z();
-        }
-        public String getTextureFile(){
-            return textureFile;
-        }
-        public float getRadius(){
-            return radius;
-        }
-        public SolarBody getParent(){
-            return null;
-        }
-        public float distFromCenter(){
-            return 0;
-        }
-        public float orbitalPeriod(){
-            return 0;
-        }
-    }
-
-    private static class Planet implements SolarBody{
-        public String textureFile;
-        public float radius;
-        public float rotationPeriod;
-        public SolarBody orbiting;
-        public float distFromCenter;
-        public float orbitalPeriod;
-        public float specularComponent;
-        public Vector3f position;
-        public float angle;
-
-        public Planet(String textureFile, float radius, float rotationPeriod,float distFromCenter, float orbitalPeriod,float specularComponent,SolarBody orbiting){
-            this.textureFile = textureFile;
-            this.radius = radius;
-            this.rotationPeriod = rotationPeriod;
-            this.orbiting = orbiting;
-            this.distFromCenter = distFromCenter;
-            this.orbitalPeriod = orbitalPeriod;
-            this.specularComponent = specularComponent;
-            this.position = new Vector3f();
-        }
-        public String toString(){
-            return "textureFile: " + textureFile
-                    + "\nradius: " + radius
-                    + "\nrotation period: " + rotationPeriod
-                    + "\ndistance from center: " + distFromCenter
-                    + "\norbital period: " + orbitalPeriod
-                    + "\nspecular: " + specularComponent;
-        }
-
-        @Override
-        public Vector3f getPosition() {
-            return position;
-        }
-
-        @Override
-        public float getRotationPeriod() {
-            return rotationPeriod;
-        }
-
-        @Override
-        public void setPosition(Vector3f position) {
-            this.position = position;
-        }
-        public float getAngle(){
-            return angle;
-        }
-        public void setAngle(float angle){
-            this.angle = angle;
-        }
-        public float x(){
-            return position.x();
-        }
-        public float y(){
-            return position.y();
-        }
-        public float z(){
-            return position.z();
-        }
-        public String getTextureFile(){
-            return textureFile;
-        }
-        public float getRadius(){
-            return radius;
-        }
-        public SolarBody getParent(){
-            return orbiting;
-        }
-        public float distFromCenter(){
-            return distFromCenter;
-        }
-        public float orbitalPeriod(){
-            return orbitalPeriod;
+        // record the interleaved attribute layout in the VAO once, it never changes afterwards
+        gl.glBindBuffer(GL_ARRAY_BUFFER, vbo[0]);
+        gl.glVertexAttribPointer(0, 3, GL_FLOAT, false, Sphere.VERTEX_STRIDE, Sphere.POSITION_OFFSET*4);
+        gl.glEnableVertexAttribArray(0);
+        gl.glVertexAttribPointer(1, 2, GL_FLOAT, false, Sphere.VERTEX_STRIDE, Sphere.TEXCOORD_OFFSET*4);
+        gl.glEnableVertexAttribArray(1);
+        gl.glVertexAttribPointer(2, 3, GL_FLOAT, false, Sphere.VERTEX_STRIDE, Sphere.NORMAL_OFFSET*4);
+        gl.glEnableVertexAttribArray(2);
+
+        // the instance attributes advance once per body, their pointers are set per draw
+        for(int attrib = MODEL_ATTRIB; attrib <= MATERIAL_ATTRIB; attrib++){
+            gl.glEnableVertexAttribArray(attrib);
+            gl.glVertexAttribDivisor(attrib, 1);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,8 @@
+20	80	20
+1	1	1	0.1	0.9	0.9	0.0001
+/Users/lucasgover/Graphics/src/sun.jpeg	5	2.8
+	/Users/lucasgover/Graphics/src/earth.jpeg	2	1	20	36.5	3
+		/Users/lucasgover/Graphics/src/moon.jpeg	0.5	2.8	7	2.8	10
+	/Users/lucasgover/Graphics/src/mars.jpeg	1	1.03	40	68.7	3
+		belt	8000	1.5	2.4	0.02	0.8	0.02	0.8	0.75	0.65
+	belt	20000	30	36	1	67	0.05
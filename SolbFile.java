@@ -0,0 +1,284 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import org.joml.Vector3f;
+
+/**
+ * Compiled, columnar form of a .sol file. Loading one maps the file and bulk copies
+ * each column out of it, so there is no per-line parsing at startup and the pages
+ * are shared by every process that has the same file open.
+ *
+ * Layout, little endian:
+ * <pre>
+ *   0  "SOLB", format version, body count, texture count
+ *  16  camera x, y, z
+ *  28  light red, green, blue, ambient, diffuse, specular, linear attenuation
+ *  56  offset of the texture table (long)
+ *  64  int   parent[n]        (-1 for bodies that orbit nothing)
+ *      int   texture[n]       (index into the texture table)
+ *      float radius[n], rotationPeriod[n], distFromCenter[n], orbitalPeriod[n], specular[n],
+ *            eccentricity[n], inclination[n], ascendingNode[n], periapsisArgument[n]
+ *      byte  flags[n]         (FLAG_SUN)
+ *      texture table: for each texture an int byte length then its UTF-8 path
+ *      belt table: int count, then for each belt int parent, int particles and float
+ *            innerRadius, outerRadius, thickness, innerPeriod, particleSize, red, green, blue
+ * </pre>
+ * Version 1 files, which stop after the specular column, are still read, as circular orbits.
+ * Version 2 files have no belt table.
+ * Compile with: java SolbFile input.sol output.solb
+ */
+public class SolbFile {
+    private static final int MAGIC = 0x424C4F53; // "SOLB" read little endian
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 64;
+    private static final int NUM_INT_COLUMNS = 2, NUM_FLOAT_COLUMNS = 9;
+    // version 1 had no orbital elements
+    private static final int NUM_FLOAT_COLUMNS_V1 = 5;
+    private static final byte FLAG_SUN = 1;
+    private static final int BELT_SIZE = 2 * 4 + 8 * 4;
+
+    private SolbFile() {}
+
+    /**
+     * Writes the bodies of an already read .sol file in the compiled layout.
+     */
+    public static void write(SolFile sol, String fileName) throws IOException {
+        SolarBody[] bodies = sol.getSolarBodies();
+        int numBodies = bodies.length;
+
+        IdentityHashMap<SolarBody, Integer> indices = new IdentityHashMap<SolarBody, Integer>();
+        HashMap<String, Integer> textureSlots = new HashMap<String, Integer>();
+        ArrayList<byte[]> textures = new ArrayList<byte[]>();
+        int[] parents = new int[numBodies];
+        int[] textureIndices = new int[numBodies];
+        int textureTableSize = 0;
+        for (int i = 0; i < numBodies; i++) {
+            SolarBody body = bodies[i];
+            indices.put(body, i);
+            SolarBody parent = body.getParent();
+            parents[i] = parent == null ? SceneGraph.NO_PARENT : indices.get(parent);
+            Integer slot = textureSlots.get(body.getTextureFile());
+            if (slot == null) {
+                slot = textures.size();
+                byte[] path = body.getTextureFile().getBytes(StandardCharsets.UTF_8);
+                textures.add(path);
+                textureTableSize += 4 + path.length;
+                textureSlots.put(body.getTextureFile(), slot);
+            }
+            textureIndices[i] = slot;
+        }
+
+        long textureTableOffset = textureTableOffset(numBodies, NUM_FLOAT_COLUMNS);
+        AsteroidBelt[] belts = sol.getBelts();
+        ByteBuffer out = ByteBuffer.allocate(Math.toIntExact(textureTableOffset + textureTableSize
+                + 4 + (long) belts.length * BELT_SIZE))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        Vector3f camera = sol.getCameraLoc();
+        float[] color = sol.getLightColor();
+        out.putInt(MAGIC).putInt(VERSION).putInt(numBodies).putInt(textures.size());
+        out.putFloat(camera.x()).putFloat(camera.y()).putFloat(camera.z());
+        out.putFloat(color[0]).putFloat(color[1]).putFloat(color[2]);
+        out.putFloat(sol.getLightAmbient()[0]).putFloat(sol.getLightDiffuse()[0])
+                .putFloat(sol.getLightSpecular()[0]).putFloat(sol.getLinearAttenuationConstant());
+        out.putLong(textureTableOffset);
+
+        out.position(HEADER_SIZE);
+        out.asIntBuffer().put(parents).put(textureIndices);
+        out.position(out.position() + NUM_INT_COLUMNS * 4 * numBodies);
+        for (SolarBody body : bodies) out.putFloat(body.getRadius());
+        for (SolarBody body : bodies) out.putFloat(body.getRotationPeriod());
+        for (SolarBody body : bodies) out.putFloat(body.distFromCenter());
+        for (SolarBody body : bodies) out.putFloat(body.orbitalPeriod());
+        for (SolarBody body : bodies) out.putFloat(body instanceof Planet ? ((Planet) body).specularComponent : 0);
+        for (SolarBody body : bodies) out.putFloat(body.eccentricity());
+        for (SolarBody body : bodies) out.putFloat(body.inclination());
+        for (SolarBody body : bodies) out.putFloat(body.longitudeOfAscendingNode());
+        for (SolarBody body : bodies) out.putFloat(body.argumentOfPeriapsis());
+        for (SolarBody body : bodies) out.put(body instanceof Sun ? FLAG_SUN : 0);
+
+        out.position(Math.toIntExact(textureTableOffset));
+        for (byte[] path : textures) {
+            out.putInt(path.length).put(path);
+        }
+        out.putInt(belts.length);
+        for (AsteroidBelt belt : belts) {
+            out.putInt(indices.get(belt.getParent())).putInt(belt.count);
+            out.putFloat(belt.innerRadius).putFloat(belt.outerRadius).putFloat(belt.thickness)
+                    .putFloat(belt.innerPeriod).putFloat(belt.particleSize);
+            out.putFloat(belt.color[0]).putFloat(belt.color[1]).putFloat(belt.color[2]);
+        }
+        out.flip();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+    private static long textureTableOffset(int numBodies, int numFloatColumns) {
+        long columnsEnd = HEADER_SIZE + (long) (NUM_INT_COLUMNS + numFloatColumns) * 4 * numBodies + numBodies;
+        return (columnsEnd + 3) & ~3L;
+    }
+
+    public static SolFile read(String fileName) throws FileNotFoundException, FileSystemException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName))) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(fileName, mapped.order(ByteOrder.LITTLE_ENDIAN));
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(fileName);
+        } catch (FileSystemException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new FileSystemException(fileName, null, e.getMessage());
+        }
+    }
+
+    private static SolFile read(String fileName, ByteBuffer in) throws FileSystemException {
+        if (in.capacity() < HEADER_SIZE || in.getInt(0) != MAGIC) {
+            throw new FileSystemException(fileName, null, "not a compiled .solb file");
+        }
+        int version = in.getInt(4);
+        if (version < 1 || version > VERSION) {
+            throw new FileSystemException(fileName, null, "unsupported .solb version " + version);
+        }
+        int numFloatColumns = version == 1 ? NUM_FLOAT_COLUMNS_V1 : NUM_FLOAT_COLUMNS;
+        int numBodies = in.getInt(8);
+        int numTextures = in.getInt(12);
+        long textureTableOffset = in.getLong(56);
+        if (numBodies <= 0 || numTextures < 0 || textureTableOffset != textureTableOffset(numBodies, numFloatColumns)
+                || textureTableOffset > in.capacity()) {
+            throw new FileSystemException(fileName, null, "the .solb header is corrupt");
+        }
+        Vector3f cameraLoc = new Vector3f(in.getFloat(16), in.getFloat(20), in.getFloat(24));
+        float[] lightColor = {in.getFloat(28), in.getFloat(32), in.getFloat(36), 1.0f};
+
+        // bulk copy every column out of the mapping
+        int[] parents = new int[numBodies];
+        int[] textureIndices = new int[numBodies];
+        float[] radii = new float[numBodies];
+        float[] rotationPeriods = new float[numBodies];
+        float[] distances = new float[numBodies];
+        float[] orbitalPeriods = new float[numBodies];
+        float[] speculars = new float[numBodies];
+        float[] eccentricities = new float[numBodies];
+        float[] inclinations = new float[numBodies];
+        float[] ascendingNodes = new float[numBodies];
+        float[] periapsisArguments = new float[numBodies];
+        byte[] flags = new byte[numBodies];
+        int column = HEADER_SIZE;
+        in.position(column);
+        in.asIntBuffer().get(parents).get(textureIndices);
+        column += NUM_INT_COLUMNS * 4 * numBodies;
+        in.position(column);
+        FloatBuffer floats = in.asFloatBuffer().get(radii).get(rotationPeriods).get(distances)
+                .get(orbitalPeriods).get(speculars);
+        if (version > 1) {
+            floats.get(eccentricities).get(inclinations).get(ascendingNodes).get(periapsisArguments);
+        }
+        column += numFloatColumns * 4 * numBodies;
+        in.position(column);
+        in.get(flags);
+
+        in.position((int) textureTableOffset);
+        // every path takes at least its 4 byte length
+        if (numTextures > in.remaining() / 4) {
+            throw new FileSystemException(fileName, null, "the .solb texture table is corrupt");
+        }
+        String[] textures = new String[numTextures];
+        for (int t = 0; t < numTextures; t++) {
+            int length = in.remaining() >= 4 ? in.getInt() : -1;
+            if (length < 0 || length > in.remaining()) {
+                throw new FileSystemException(fileName, null, "texture " + t + " in the .solb file is corrupt");
+            }
+            byte[] path = new byte[length];
+            in.get(path);
+            textures[t] = new String(path, StandardCharsets.UTF_8);
+        }
+
+        int numBelts = 0;
+        if (version >= 3) {
+            numBelts = in.remaining() >= 4 ? in.getInt() : -1;
+            if (numBelts < 0 || numBelts > in.remaining() / BELT_SIZE) {
+                throw new FileSystemException(fileName, null, "the .solb belt table is corrupt");
+            }
+        }
+        AsteroidBelt[] belts = new AsteroidBelt[numBelts];
+        int[] beltParents = new int[belts.length];
+        int[] beltCounts = new int[belts.length];
+        float[] beltValues = new float[8 * belts.length];
+        for (int b = 0; b < belts.length; b++) {
+            beltParents[b] = in.getInt();
+            beltCounts[b] = in.getInt();
+            in.asFloatBuffer().get(beltValues, 8 * b, 8);
+            in.position(in.position() + 8 * 4);
+        }
+
+        SolarBody[] bodies = new SolarBody[numBodies];
+        for (int i = 0; i < numBodies; i++) {
+            int parent = parents[i];
+            if (parent < SceneGraph.NO_PARENT || parent >= i
+                    || textureIndices[i] < 0 || textureIndices[i] >= numTextures) {
+                throw new FileSystemException(fileName, null, "body " + i + " in the .solb file is corrupt");
+            }
+            String texture = textures[textureIndices[i]];
+            if ((flags[i] & FLAG_SUN) != 0 && parent != SceneGraph.NO_PARENT) {
+                bodies[i] = new Sun(texture, radii[i], rotationPeriods[i], distances[i], orbitalPeriods[i],
+                        bodies[parent]);
+            } else if ((flags[i] & FLAG_SUN) != 0) {
+                bodies[i] = new Sun(texture, radii[i], rotationPeriods[i]);
+            } else if (parent == SceneGraph.NO_PARENT) {
+                throw new FileSystemException(fileName, null, "planet " + i + " in the .solb file orbits nothing");
+            } else {
+                if (!(eccentricities[i] >= 0 && eccentricities[i] <= KeplerSolver.MAX_ECCENTRICITY)) {
+                    throw new FileSystemException(fileName, null, "planet " + i + " in the .solb file has eccentricity "
+                            + eccentricities[i]);
+                }
+                bodies[i] = new Planet(texture, radii[i], rotationPeriods[i], distances[i], orbitalPeriods[i],
+                        speculars[i], bodies[parent], eccentricities[i], inclinations[i], ascendingNodes[i],
+                        periapsisArguments[i]);
+            }
+        }
+        for (int b = 0; b < belts.length; b++) {
+            int v = 8 * b;
+            // the same checks SolParser makes of a belt line
+            if (beltParents[b] < 0 || beltParents[b] >= numBodies || beltCounts[b] < 1
+                    || beltCounts[b] > AsteroidBelt.MAX_PARTICLES
+                    || !(beltValues[v] > 0 && beltValues[v + 1] >= beltValues[v]) || !(beltValues[v + 2] >= 0)
+                    || beltValues[v + 3] == 0 || !(beltValues[v + 4] > 0)) {
+                throw new FileSystemException(fileName, null, "belt " + b + " in the .solb file is corrupt");
+            }
+            belts[b] = new AsteroidBelt(bodies[beltParents[b]], beltCounts[b], beltValues[v], beltValues[v + 1],
+                    beltValues[v + 2], beltValues[v + 3], beltValues[v + 4],
+                    new float[] {beltValues[v + 5], beltValues[v + 6], beltValues[v + 7]});
+        }
+        return new SolFile(cameraLoc, lightColor, in.getFloat(40), in.getFloat(44), in.getFloat(48),
+                in.getFloat(52), bodies, belts);
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: java SolbFile <input.sol> <output.solb>");
+            System.exit(0);
+        }
+        try {
+            write(SolParser.parse(args[0]), args[1]);
+        } catch (FileNotFoundException e) {
+            System.err.println("Could not find your .sol file!");
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
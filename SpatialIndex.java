@@ -0,0 +1,523 @@
+import java.util.Arrays;
+
+/**
+ * A uniform grid over body positions, for range, nearest neighbour and close
+ * approach queries that do not look at every body.
+ *
+ * Cells are cubes of a fixed size, kept in a hash table by their integer
+ * coordinates, so only occupied cells cost anything and the grid has no bounds.
+ * Each cell holds a linked list of its bodies. update() takes the new positions
+ * and only relinks the bodies that crossed into another cell, which between two
+ * frames is few of them; a body that stays in its cell costs one floor per axis.
+ *
+ * Queries visit the cells that could hold an answer, or, when there are more of
+ * those than occupied cells (a radius that is large against the cell size), the
+ * occupied cells instead. Either way a cell size near the typical query radius
+ * and close approach distance works best. Coordinates are clamped to 2^20 cells
+ * either side of the origin; bodies beyond that share the outermost cells, which
+ * keeps the answers right but slows queries down there.
+ *
+ * Query results go into one array, getResults(), which the next query reuses.
+ * Not thread safe.
+ */
+public class SpatialIndex {
+    private static final int COORD_BITS = 21;
+    private static final long COORD_MASK = (1L << COORD_BITS) - 1;
+    private static final int MAX_COORD = (1 << (COORD_BITS - 1)) - 1;
+    private static final long EMPTY = -1; // never a packed key, whose top bit is always clear
+    private static final int MIN_TABLE = 16;
+
+    private final double cellSize, invCellSize;
+    private final double[] x, y, z;
+    // each body's hash table slot, and its neighbours in that cell's list
+    private final int[] slotOf, next, prev;
+
+    private long[] keys;
+    private int[] heads, counts;
+    private int usedSlots, occupiedCells;
+    private boolean built;
+    private int moves;
+
+    private int[] results = new int[16];
+    private double[] heapDistances = new double[16];
+
+    public SpatialIndex(int size, double cellSize) {
+        if (!(cellSize > 0) || Double.isInfinite(cellSize)) {
+            throw new IllegalArgumentException("The cell size has to be positive, not " + cellSize);
+        }
+        this.cellSize = cellSize;
+        invCellSize = 1 / cellSize;
+        x = new double[size];
+        y = new double[size];
+        z = new double[size];
+        slotOf = new int[size];
+        next = new int[size];
+        prev = new int[size];
+        allocateTable(MIN_TABLE);
+    }
+
+    public int size() {
+        return x.length;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Moves every body to its new position, copied from x, y and z by body index.
+     * The first call files every body; later ones only touch bodies that changed
+     * cell.
+     */
+    public void update(double[] x, double[] y, double[] z) {
+        int n = size();
+        if (x.length < n || y.length < n || z.length < n) {
+            throw new IllegalArgumentException("Need " + n + " positions");
+        }
+        System.arraycopy(x, 0, this.x, 0, n);
+        System.arraycopy(y, 0, this.y, 0, n);
+        System.arraycopy(z, 0, this.z, 0, n);
+        if (!built) {
+            rebuild();
+            moves = n;
+            built = true;
+            return;
+        }
+        moves = 0;
+        for (int i = 0; i < n; i++) {
+            long key = pack(cell(this.x[i]), cell(this.y[i]), cell(this.z[i]));
+            int slot = slotOf[i];
+            if (keys[slot] == key) {
+                continue;
+            }
+            unlink(i);
+            if (usedSlots * 2 >= keys.length && find(key) < 0) {
+                // rebuilding files every body at its new position, this one included
+                rebuild();
+            } else {
+                link(i, insert(key));
+            }
+            moves++;
+        }
+    }
+
+    /** Bodies the last update() moved to another cell. */
+    public int getMoves() {
+        return moves;
+    }
+
+    /** Cells with at least one body in them. */
+    public int getOccupiedCells() {
+        return occupiedCells;
+    }
+
+    /**
+     * Every body within radius of the point, inclusive, in no particular order.
+     *
+     * @return how many there are, at the start of getResults()
+     */
+    public int range(double px, double py, double pz, double radius) {
+        int found = 0;
+        double radiusSq = radius * radius;
+        int x0 = cell(px - radius), x1 = cell(px + radius);
+        int y0 = cell(py - radius), y1 = cell(py + radius);
+        int z0 = cell(pz - radius), z1 = cell(pz + radius);
+        long cells = (long) (x1 - x0 + 1) * (y1 - y0 + 1) * (z1 - z0 + 1);
+        if (cells > occupiedCells) {
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (counts[slot] > 0 && boxDistanceSq(keys[slot], px, py, pz) <= radiusSq) {
+                    found = rangeCell(heads[slot], px, py, pz, radiusSq, found);
+                }
+            }
+            return found;
+        }
+        for (int cx = x0; cx <= x1; cx++) {
+            for (int cy = y0; cy <= y1; cy++) {
+                for (int cz = z0; cz <= z1; cz++) {
+                    int slot = find(pack(cx, cy, cz));
+                    if (slot >= 0) {
+                        found = rangeCell(heads[slot], px, py, pz, radiusSq, found);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private int rangeCell(int body, double px, double py, double pz, double radiusSq, int found) {
+        for (int i = body; i >= 0; i = next[i]) {
+            if (distanceSq(i, px, py, pz) <= radiusSq) {
+                results = grow(results, found + 1);
+                results[found++] = i;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * The k bodies nearest the point, nearest first, ties in no particular order.
+     *
+     * Searches shells of cells outwards from the point's cell until the k-th
+     * nearest so far is closer than anything in the next shell could be, and
+     * switches to the occupied cells once a shell has more cells than there are
+     * occupied ones.
+     *
+     * @return how many there are, k unless the index holds fewer bodies, at the
+     *         start of getResults()
+     */
+    public int nearest(double px, double py, double pz, int k) {
+        k = Math.min(k, size());
+        if (k <= 0) {
+            return 0;
+        }
+        results = grow(results, k);
+        heapDistances = grow(heapDistances, k);
+        int found = 0;
+        int cx = cell(px), cy = cell(py), cz = cell(pz);
+        // shells only bound the distance from a point inside the grid
+        boolean inside = inGrid(px) && inGrid(py) && inGrid(pz);
+        for (int s = 0; ; s++) {
+            // nothing in shell s is nearer than this
+            double bound = Math.max(0, s - 1) * cellSize;
+            if (found == k && heapDistances[0] < bound * bound) {
+                break;
+            }
+            long side = 2L * s + 1;
+            long shellCells = s == 0 ? 1 : side * side * side - (side - 2) * (side - 2) * (side - 2);
+            if (!inside || shellCells > occupiedCells) {
+                // the rest of the grid, a cell at a time, skipping the shells already searched
+                for (int slot = 0; slot < keys.length; slot++) {
+                    if (counts[slot] == 0 || inside && chebyshev(keys[slot], cx, cy, cz) < s) {
+                        continue;
+                    }
+                    if (found == k && boxDistanceSq(keys[slot], px, py, pz) >= heapDistances[0]) {
+                        continue;
+                    }
+                    found = nearestCell(heads[slot], px, py, pz, k, found);
+                }
+                break;
+            }
+            for (int ix = cx - s; ix <= cx + s; ix++) {
+                for (int iy = cy - s; iy <= cy + s; iy++) {
+                    boolean face = ix == cx - s || ix == cx + s || iy == cy - s || iy == cy + s;
+                    // inside the shell's faces only the front and back cells are on it
+                    int step = face ? 1 : Math.max(1, 2 * s);
+                    for (int iz = cz - s; iz <= cz + s; iz += step) {
+                        if (clamp(ix) != ix || clamp(iy) != iy || clamp(iz) != iz) {
+                            continue;
+                        }
+                        int slot = find(pack(ix, iy, iz));
+                        if (slot >= 0) {
+                            found = nearestCell(heads[slot], px, py, pz, k, found);
+                        }
+                    }
+                }
+            }
+        }
+        // heap order to nearest first
+        for (int end = found - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+        return found;
+    }
+
+    /** Offers a cell's bodies to the max-heap of the k nearest so far. */
+    private int nearestCell(int body, double px, double py, double pz, int k, int found) {
+        for (int i = body; i >= 0; i = next[i]) {
+            double d = distanceSq(i, px, py, pz);
+            if (found < k) {
+                results[found] = i;
+                heapDistances[found] = d;
+                siftUp(found++);
+            } else if (d < heapDistances[0]) {
+                results[0] = i;
+                heapDistances[0] = d;
+                siftDown(0, k);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Every pair of bodies within distance of each other, inclusive, as two body
+     * indices, smaller first, one pair after another in getResults(). Looks at each
+     * cell and the neighbours within distance of it, each neighbouring pair of cells
+     * once, so costs grow with the number of bodies and close pairs, not its square.
+     *
+     * @return the number of pairs, twice that many ints
+     */
+    public int closeApproaches(double distance) {
+        int pairs = 0;
+        double distanceSq = distance * distance;
+        int reach = (int) Math.min(MAX_COORD, Math.ceil(distance * invCellSize));
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (counts[slot] == 0) {
+                continue;
+            }
+            long key = keys[slot];
+            int cx = unpackX(key), cy = unpackY(key), cz = unpackZ(key);
+            double minX = Double.POSITIVE_INFINITY, minY = minX, minZ = minX;
+            double maxX = Double.NEGATIVE_INFINITY, maxY = maxX, maxZ = maxX;
+            for (int i = heads[slot]; i >= 0; i = next[i]) {
+                minX = Math.min(minX, x[i]);
+                minY = Math.min(minY, y[i]);
+                minZ = Math.min(minZ, z[i]);
+                maxX = Math.max(maxX, x[i]);
+                maxY = Math.max(maxY, y[i]);
+                maxZ = Math.max(maxZ, z[i]);
+                for (int j = next[i]; j >= 0; j = next[j]) {
+                    pairs = addPair(i, j, distanceSq, pairs);
+                }
+            }
+            // the neighbours after this cell in x, then y, then z order, so each pair of cells comes up once
+            for (int dx = 0; dx <= reach; dx++) {
+                for (int dy = dx == 0 ? 0 : -reach; dy <= reach; dy++) {
+                    for (int dz = dx == 0 && dy == 0 ? 1 : -reach; dz <= reach; dz++) {
+                        int nx = cx + dx, ny = cy + dy, nz = cz + dz;
+                        if (clamp(nx) != nx || clamp(ny) != ny || clamp(nz) != nz) {
+                            continue;
+                        }
+                        // only look the neighbour up if this cell's bodies come close enough to it
+                        double gapX = gap(nx, minX, maxX), gapY = gap(ny, minY, maxY), gapZ = gap(nz, minZ, maxZ);
+                        if (gapX * gapX + gapY * gapY + gapZ * gapZ > distanceSq) {
+                            continue;
+                        }
+                        int other = find(pack(nx, ny, nz));
+                        if (other < 0 || counts[other] == 0) {
+                            continue;
+                        }
+                        for (int i = heads[slot]; i >= 0; i = next[i]) {
+                            for (int j = heads[other]; j >= 0; j = next[j]) {
+                                pairs = addPair(i, j, distanceSq, pairs);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return pairs;
+    }
+
+    private int addPair(int i, int j, double distanceSq, int pairs) {
+        double dx = x[i] - x[j], dy = y[i] - y[j], dz = z[i] - z[j];
+        if (dx * dx + dy * dy + dz * dz <= distanceSq) {
+            results = grow(results, 2 * pairs + 2);
+            results[2 * pairs] = Math.min(i, j);
+            results[2 * pairs + 1] = Math.max(i, j);
+            pairs++;
+        }
+        return pairs;
+    }
+
+    /** What the last query found; only the count it returned is meaningful. */
+    public int[] getResults() {
+        return results;
+    }
+
+    /** Position the index has for a body, as of the last update(). */
+    public double getX(int body) { return x[body]; }
+    public double getY(int body) { return y[body]; }
+    public double getZ(int body) { return z[body]; }
+
+    private double distanceSq(int i, double px, double py, double pz) {
+        double dx = x[i] - px, dy = y[i] - py, dz = z[i] - pz;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /** Squared distance from the point to the nearest point of the cell. */
+    private double boxDistanceSq(long key, double px, double py, double pz) {
+        double dx = gap(unpackX(key), px, px);
+        double dy = gap(unpackY(key), py, py);
+        double dz = gap(unpackZ(key), pz, pz);
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /** Distance along one axis from the span min to max to cell c. */
+    private double gap(int c, double min, double max) {
+        // the outermost cells also hold everything clamped into them
+        double low = c == -MAX_COORD - 1 ? Double.NEGATIVE_INFINITY : c * cellSize;
+        double high = c == MAX_COORD ? Double.POSITIVE_INFINITY : (c + 1) * cellSize;
+        return max < low ? low - max : min > high ? min - high : 0;
+    }
+
+    private static int chebyshev(long key, int cx, int cy, int cz) {
+        return Math.max(Math.abs(unpackX(key) - cx), Math.max(Math.abs(unpackY(key) - cy), Math.abs(unpackZ(key) - cz)));
+    }
+
+    private int cell(double p) {
+        double c = Math.floor(p * invCellSize);
+        // NaN lands in cell 0
+        return c >= MAX_COORD ? MAX_COORD : c <= -MAX_COORD - 1 ? -MAX_COORD - 1 : (int) c;
+    }
+
+    private boolean inGrid(double p) {
+        double c = Math.floor(p * invCellSize);
+        return c >= -MAX_COORD - 1 && c <= MAX_COORD;
+    }
+
+    private static int clamp(int c) {
+        return Math.max(-MAX_COORD - 1, Math.min(MAX_COORD, c));
+    }
+
+    private static long pack(int cx, int cy, int cz) {
+        return ((cx & COORD_MASK) << (2 * COORD_BITS)) | ((cy & COORD_MASK) << COORD_BITS) | (cz & COORD_MASK);
+    }
+
+    private static int unpackX(long key) {
+        return (int) ((key << (64 - 3 * COORD_BITS)) >> (64 - COORD_BITS));
+    }
+
+    private static int unpackY(long key) {
+        return (int) ((key << (64 - 2 * COORD_BITS)) >> (64 - COORD_BITS));
+    }
+
+    private static int unpackZ(long key) {
+        return (int) ((key << (64 - COORD_BITS)) >> (64 - COORD_BITS));
+    }
+
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /** The key's slot, or -1 if the table does not have it. */
+    private int find(long key) {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            if (keys[slot] == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    /** The key's slot, added if the table does not have it. Cells stay in the table once empty, until a rebuild. */
+    private int insert(long key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != key) {
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                heads[slot] = -1;
+                counts[slot] = 0;
+                usedSlots++;
+                break;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void link(int body, int slot) {
+        int head = heads[slot];
+        next[body] = head;
+        prev[body] = -1;
+        if (head >= 0) {
+            prev[head] = body;
+        }
+        heads[slot] = body;
+        slotOf[body] = slot;
+        if (counts[slot]++ == 0) {
+            occupiedCells++;
+        }
+    }
+
+    private void unlink(int body) {
+        int slot = slotOf[body];
+        if (prev[body] >= 0) {
+            next[prev[body]] = next[body];
+        } else {
+            heads[slot] = next[body];
+        }
+        if (next[body] >= 0) {
+            prev[next[body]] = prev[body];
+        }
+        if (--counts[slot] == 0) {
+            occupiedCells--;
+        }
+    }
+
+    /**
+     * Files every body again in a table sized for the cells occupied now, which
+     * also drops the empty cells earlier moves left behind.
+     */
+    private void rebuild() {
+        int n = size();
+        long[] bodyKeys = new long[n];
+        for (int i = 0; i < n; i++) {
+            bodyKeys[i] = pack(cell(x[i]), cell(y[i]), cell(z[i]));
+        }
+        long[] distinct = bodyKeys.clone();
+        Arrays.sort(distinct);
+        int cells = 0;
+        for (int i = 0; i < n; i++) {
+            if (i == 0 || distinct[i] != distinct[i - 1]) {
+                cells++;
+            }
+        }
+        // a quarter full, so plenty of cells can be entered before the next rebuild
+        allocateTable(Math.max(MIN_TABLE, Integer.highestOneBit(Math.max(1, cells) * 4 - 1) << 1));
+        for (int i = n - 1; i >= 0; i--) {
+            link(i, insert(bodyKeys[i]));
+        }
+    }
+
+    private void allocateTable(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        heads = new int[capacity];
+        counts = new int[capacity];
+        usedSlots = 0;
+        occupiedCells = 0;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (heapDistances[parent] >= heapDistances[i]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i, int n) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= n) {
+                return;
+            }
+            if (child + 1 < n && heapDistances[child + 1] > heapDistances[child]) {
+                child++;
+            }
+            if (heapDistances[i] >= heapDistances[child]) {
+                return;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int body = results[a];
+        results[a] = results[b];
+        results[b] = body;
+        double d = heapDistances[a];
+        heapDistances[a] = heapDistances[b];
+        heapDistances[b] = d;
+    }
+
+    private static int[] grow(int[] array, int length) {
+        return length <= array.length ? array : Arrays.copyOf(array, Math.max(length, array.length * 2));
+    }
+
+    private static double[] grow(double[] array, int length) {
+        return length <= array.length ? array : Arrays.copyOf(array, Math.max(length, array.length * 2));
+    }
+}
@@ -1,75 +1,99 @@
-import org.joml.*;
+import java.nio.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
 import static java.lang.Math.*;
 
+/**
+ * A unit sphere mesh of (prec+1)^2 vertices, generated straight into one interleaved
+ * vertex buffer (position, texture coordinate, normal) and one index buffer, both
+ * direct so they can be handed to glBufferData as they are.
+ *
+ * Meshes never change once built, so get(prec) caches them by precision.
+ */
 public class Sphere
 {
-    private int numVertices, numIndices, prec;
-    private int[] indices;
-    private Vector3f[] vertices;
-    private Vector2f[] texCoords;
-    private Vector3f[] normals;
-    private Vector3f[] tangents;
+	public static final int FLOATS_PER_VERTEX = 8;
+	public static final int POSITION_OFFSET = 0, TEXCOORD_OFFSET = 3, NORMAL_OFFSET = 5;
+	public static final int VERTEX_STRIDE = FLOATS_PER_VERTEX * Float.BYTES;
+
+	// below this many rows the fork/join overhead costs more than it saves
+	private static final int PARALLEL_PRECISION = 128;
+	private static final ConcurrentHashMap<Integer, Sphere> cache = new ConcurrentHashMap<Integer, Sphere>();
+
+	private final int numVertices, numIndices, prec;
+	private final FloatBuffer vertexData;
+	private final IntBuffer indices;
 
-    public Sphere()
-    {	prec = 48;
-        InitSphere();
-    }
+	public Sphere()
+	{	this(48);
+	}
 
-    public Sphere(int p)
-    {	prec = p;
-        InitSphere();
-    }
+	public Sphere(int p)
+	{	prec = p;
+		numVertices = (prec+1) * (prec+1);
+		numIndices = prec * prec * 6;
+		vertexData = ByteBuffer.allocateDirect(numVertices * VERTEX_STRIDE).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		indices = ByteBuffer.allocateDirect(numIndices * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+		InitSphere();
+	}
 
-    private void InitSphere()
-    {	numVertices = (prec+1) * (prec+1);
-        numIndices = prec * prec * 6;
-        indices = new int[numIndices];
-        vertices = new Vector3f[numVertices];
-        texCoords = new Vector2f[numVertices];
-        normals = new Vector3f[numVertices];
-        tangents = new Vector3f[numVertices];
+	/**
+	 * The shared, cached mesh for a precision. Building it is only paid once.
+	 */
+	public static Sphere get(int prec)
+	{	return cache.computeIfAbsent(prec, Sphere::new);
+	}
 
-        for (int i=0; i<numVertices; i++)
-        {	vertices[i] = new Vector3f();
-            texCoords[i] = new Vector2f();
-            normals[i] = new Vector3f();
-            tangents[i] = new Vector3f();
-        }
+	private void InitSphere()
+	{	// the longitude terms only depend on the column, compute them once per column
+		float[] columnCos = new float[prec+1];
+		float[] columnSin = new float[prec+1];
+		for (int j=0; j<=prec; j++)
+		{	columnCos[j] = (float)cos(toRadians(j*360/(float)prec));
+			columnSin[j] = (float)sin(toRadians(j*360/(float)prec));
+		}
 
-        // calculate triangle vertices
-        for (int i=0; i<=prec; i++)
-        {	for (int j=0; j<=prec; j++)
-        {	float y = (float)cos(toRadians(180-i*180/prec));
-            float x = -(float)cos(toRadians(j*360/(float)prec))*(float)abs(cos(asin(y)));
-            float z = (float)sin(toRadians(j*360/(float)prec))*(float)abs(cos(asin(y)));
-            vertices[i*(prec+1)+j].set(x,y,z);
-            texCoords[i*(prec+1)+j].set((float)j/prec, (float)i/prec);
-            normals[i*(prec+1)+j].set(x,y,z);
+		IntStream rows = IntStream.rangeClosed(0, prec);
+		if (prec >= PARALLEL_PRECISION) rows = rows.parallel();
+		rows.forEach(i -> fillRow(i, columnCos, columnSin));
+	}
 
-            // calculate tangent vector
-            if (((x==0) && (y==1) && (z==0)) || ((x==0) && (y==-1) && (z==0)))
-            {	tangents[i*(prec+1)+j].set(0.0f, 0.0f, -1.0f);
-            }
-            else
-            {	tangents[i*(prec+1)+j] = (new Vector3f(0,1,0)).cross(new Vector3f(x,y,z));
-            }	}	}
+	/**
+	 * Writes the vertices of latitude row i and, below the last row, the two triangles
+	 * of each quad between row i and row i+1. Rows never share output slots, so they
+	 * can be filled concurrently.
+	 */
+	private void fillRow(int i, float[] columnCos, float[] columnSin)
+	{	float y = (float)cos(toRadians(180-i*180/prec));
+		float ring = (float)abs(cos(asin(y)));
+		for (int j=0; j<=prec; j++)
+		{	float x = -columnCos[j]*ring;
+			float z = columnSin[j]*ring;
+			int v = (i*(prec+1)+j) * FLOATS_PER_VERTEX;
+			vertexData.put(v+POSITION_OFFSET, x).put(v+POSITION_OFFSET+1, y).put(v+POSITION_OFFSET+2, z);
+			vertexData.put(v+TEXCOORD_OFFSET, (float)j/prec).put(v+TEXCOORD_OFFSET+1, (float)i/prec);
+			vertexData.put(v+NORMAL_OFFSET, x).put(v+NORMAL_OFFSET+1, y).put(v+NORMAL_OFFSET+2, z);
+		}
+		if (i == prec) return;
 
-        // calculate triangle indices
-        for(int i=0; i<prec; i++)
-        {	for(int j=0; j<prec; j++)
-        {	indices[6*(i*prec+j)+0] = i*(prec+1)+j;
-            indices[6*(i*prec+j)+1] = i*(prec+1)+j+1;
-            indices[6*(i*prec+j)+2] = (i+1)*(prec+1)+j;
-            indices[6*(i*prec+j)+3] = i*(prec+1)+j+1;
-            indices[6*(i*prec+j)+4] = (i+1)*(prec+1)+j+1;
-            indices[6*(i*prec+j)+5] = (i+1)*(prec+1)+j;
-        }	}	}
+		// calculate triangle indices
+		for (int j=0; j<prec; j++)
+		{	int k = 6*(i*prec+j);
+			indices.put(k, i*(prec+1)+j);
+			indices.put(k+1, i*(prec+1)+j+1);
+			indices.put(k+2, (i+1)*(prec+1)+j);
+			indices.put(k+3, i*(prec+1)+j+1);
+			indices.put(k+4, (i+1)*(prec+1)+j+1);
+			indices.put(k+5, (i+1)*(prec+1)+j);
+		}
+	}
 
-    public int getNumIndices() { return numIndices; }
-    public int getNumVertices() { return numVertices; }
-    public int[] getIndices() { return indices; }
-    public Vector3f[] getVertices() { return vertices; }
-    public Vector2f[] getTexCoords() { return texCoords; }
-    public Vector3f[] getNormals() { return normals; }
-    public Vector3f[] getTangents() { return tangents; }
+	public int getPrecision() { return prec; }
+	public int getNumIndices() { return numIndices; }
+	public int getNumVertices() { return numVertices; }
+	/** Interleaved vertices, FLOATS_PER_VERTEX floats each. The view is read only. */
+	public FloatBuffer getVertexData() { return vertexData.asReadOnlyBuffer(); }
+	/** Triangle indices. The view is read only. */
+	public IntBuffer getIndices() { return indices.asReadOnlyBuffer(); }
 }
@@ -0,0 +1,140 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import org.joml.Matrix4fc;
+
+/**
+ * Picks a sphere tessellation per body from how large it is on screen.
+ *
+ * Every level is a cached Sphere; their vertices and indices are packed back to back
+ * so one vertex buffer and one element buffer serve all of them, and a level is
+ * drawn by its first index and base vertex.
+ *
+ * A level is good enough while its silhouette stays within maxError pixels of the
+ * true circle. A ring of n segments around a circle of radius r misses it by at most
+ * r * (1 - cos(pi / n)), so each level covers projected radii up to
+ * maxError / (1 - cos(pi / n)). To stop bodies near a boundary from popping back and
+ * forth, a body only moves up a level once it is HYSTERESIS past the boundary, and
+ * only moves down once it is HYSTERESIS under it.
+ */
+public class SphereLod {
+    // divisors of 180, so Sphere's latitude rows come out evenly spaced
+    public static final int[] PRECISIONS = {6, 12, 20, 36, 60, 90};
+    public static final float DEFAULT_MAX_ERROR = 0.5f;
+    private static final float HYSTERESIS = 0.15f;
+
+    private final Sphere[] meshes;
+    private final int[] firstIndices;
+    private final int[] baseVertices;
+    private final int totalVertices, totalIndices;
+    // smallest projected radius, in pixels, each level is used for
+    private final float[] minPixels;
+
+    private final float[] radii;
+    private final int[] levels;
+
+    /**
+     * @param radii    radius of each body, matching the scale in its model matrix
+     * @param maxError largest allowed silhouette error, in pixels
+     */
+    public SphereLod(float[] radii, float maxError) {
+        if (!(maxError > 0)) {
+            throw new IllegalArgumentException("The LOD error must be a positive number of pixels, not " + maxError);
+        }
+        int numLevels = PRECISIONS.length;
+        meshes = new Sphere[numLevels];
+        firstIndices = new int[numLevels];
+        baseVertices = new int[numLevels];
+        minPixels = new float[numLevels];
+        int vertices = 0, indices = 0;
+        for (int l = 0; l < numLevels; l++) {
+            meshes[l] = Sphere.get(PRECISIONS[l]);
+            baseVertices[l] = vertices;
+            firstIndices[l] = indices;
+            vertices += meshes[l].getNumVertices();
+            indices += meshes[l].getNumIndices();
+            if (l > 0) {
+                minPixels[l] = maxError / (float) (1 - Math.cos(Math.PI / PRECISIONS[l - 1]));
+            }
+        }
+        totalVertices = vertices;
+        totalIndices = indices;
+
+        this.radii = radii;
+        // start everything at the finest level, the first select() settles it
+        this.levels = new int[radii.length];
+        Arrays.fill(levels, numLevels - 1);
+    }
+
+    /**
+     * Updates the level of every visible body.
+     *
+     * @param models        model matrices, SceneGraph.MATRIX_SIZE floats per body
+     * @param view          view matrix
+     * @param pixelsPerUnit projection scale: pixels covered by one unit at distance 1,
+     *                      which is the projection's m11 times half the viewport height
+     * @param visible       bodies to update, or null for all of them; the rest keep their level
+     */
+    public void select(float[] models, Matrix4fc view, float pixelsPerUnit, boolean[] visible) {
+        float v02 = view.m02(), v12 = view.m12(), v22 = view.m22(), v32 = view.m32();
+        int top = meshes.length - 1;
+        for (int i = 0; i < levels.length; i++) {
+            if (visible != null && !visible[i]) {
+                continue;
+            }
+            int m = i * SceneGraph.MATRIX_SIZE;
+            // distance in front of the camera, the view space z of the sphere's centre negated
+            float depth = -(v02 * models[m + 12] + v12 * models[m + 13] + v22 * models[m + 14] + v32);
+            float radius = radii[i];
+            if (depth <= radius) {
+                levels[i] = top; // the camera is at or inside the sphere
+                continue;
+            }
+            float pixels = radius * pixelsPerUnit / depth;
+            int level = levels[i];
+            while (level < top && pixels >= minPixels[level + 1] * (1 + HYSTERESIS)) {
+                level++;
+            }
+            while (level > 0 && pixels < minPixels[level] * (1 - HYSTERESIS)) {
+                level--;
+            }
+            levels[i] = level;
+        }
+    }
+
+    /**
+     * All levels' interleaved vertices, in level order, ready for glBufferData.
+     */
+    public FloatBuffer packVertices() {
+        FloatBuffer packed = ByteBuffer.allocateDirect(totalVertices * Sphere.VERTEX_STRIDE)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        for (Sphere mesh : meshes) {
+            packed.put(mesh.getVertexData());
+        }
+        return packed.flip();
+    }
+
+    /**
+     * All levels' indices, in level order. Each level's indices start from 0, draw them
+     * with getBaseVertex() as the base vertex.
+     */
+    public IntBuffer packIndices() {
+        IntBuffer packed = ByteBuffer.allocateDirect(totalIndices * Integer.BYTES)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+        for (Sphere mesh : meshes) {
+            packed.put(mesh.getIndices());
+        }
+        return packed.flip();
+    }
+
+    public int getNumLevels() { return meshes.length; }
+    public Sphere getMesh(int level) { return meshes[level]; }
+    public int getFirstIndex(int level) { return firstIndices[level]; }
+    public int getBaseVertex(int level) { return baseVertices[level]; }
+    public int getNumIndices(int level) { return meshes[level].getNumIndices(); }
+    public int getLevel(int body) { return levels[body]; }
+    public int[] getLevels() { return levels; }
+}
@@ -0,0 +1,86 @@
+import org.joml.*;
+
+public class Sun implements SolarBody {
+    public String textureFile;
+    public float radius;
+    public float rotationPeriod;
+    public Vector3f position;
+    public SolarBody orbiting;
+    public float distFromCenter;
+    public float orbitalPeriod;
+
+
+    //constructor for sun
+    public Sun(String textureFile, float radius, float rotationPeriod) {
+        this.textureFile = textureFile;
+        this.radius = radius;
+        this.rotationPeriod = rotationPeriod;
+        this.position = new Vector3f();
+    }
+
+    //constructor for a star on a circular orbit, the companion in a multi-star system
+    public Sun(String textureFile, float radius, float rotationPeriod, float distFromCenter, float orbitalPeriod, SolarBody orbiting) {
+        this(textureFile, radius, rotationPeriod);
+        this.orbiting = orbiting;
+        this.distFromCenter = distFromCenter;
+        this.orbitalPeriod = orbitalPeriod;
+    }
+
+    @Override
+    public Vector3f getPosition() {
+        return position;
+    }
+
+    @Override
+    public float getRotationPeriod() {
+        return rotationPeriod;
+    }
+
+    @Override
+    public void setPosition(Vector3f position) {
+        this.position = position;
+    }
+    public String toString(){
+        String text = "textureFile: " + textureFile + "\nradius: " + radius + "\nrotation period: " + rotationPeriod;
+        if(orbiting != null){
+            text += "\ndistance from center: " + distFromCenter + "\norbital period: " + orbitalPeriod;
+        }
+        return text;
+    }
+    public float x(){
+        return position.x();
+    }
+    public float y(){
+        return position.y();
+    }
+    public float z(){
+        return position.z();
+    }
+    public String getTextureFile(){
+        return textureFile;
+    }
+    public float getRadius(){
+        return radius;
+    }
+    public SolarBody getParent(){
+        return orbiting;
+    }
+    public float distFromCenter(){
+        return distFromCenter;
+    }
+    public float orbitalPeriod(){
+        return orbitalPeriod;
+    }
+    public float eccentricity(){
+        return 0;
+    }
+    public float inclination(){
+        return 0;
+    }
+    public float longitudeOfAscendingNode(){
+        return 0;
+    }
+    public float argumentOfPeriapsis(){
+        return 0;
+    }
+}
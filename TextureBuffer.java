@@ -0,0 +1,68 @@
+import java.nio.*;
+
+import static com.jogamp.opengl.GL4.*;
+import com.jogamp.opengl.*;
+import com.jogamp.common.nio.Buffers;
+
+/**
+ * A buffer texture on a fixed texture unit: a plain buffer a shader reads by
+ * index with texelFetch on a samplerBuffer. GL 4.1 (the mac limit) has no shader
+ * storage buffers, and this is the nearest thing to one it has: any length, read
+ * only, refilled with one upload per frame.
+ *
+ * The texture stays bound to its unit for good, so nothing else may bind
+ * GL_TEXTURE_BUFFER there. Refilling only replaces the buffer's contents, which
+ * the texture sees without being bound again.
+ */
+public class TextureBuffer {
+    private final int bufferID, textureID;
+    private final int unit;
+    private long capacity;
+
+    /**
+     * @param internalFormat GL_RGB32F, GL_RG32UI, GL_R32UI and so on
+     */
+    public TextureBuffer(int unit, int internalFormat) {
+        GL4 gl = (GL4) GLContext.getCurrentGL();
+        int[] ids = new int[1];
+        gl.glGenBuffers(1, ids, 0);
+        bufferID = ids[0];
+        gl.glGenTextures(1, ids, 0);
+        textureID = ids[0];
+        this.unit = unit;
+        gl.glBindBuffer(GL_TEXTURE_BUFFER, bufferID);
+        gl.glBufferData(GL_TEXTURE_BUFFER, Buffers.SIZEOF_INT, null, GL_STREAM_DRAW);
+        capacity = Buffers.SIZEOF_INT;
+        gl.glActiveTexture(GL_TEXTURE0 + unit);
+        gl.glBindTexture(GL_TEXTURE_BUFFER, textureID);
+        gl.glTexBuffer(GL_TEXTURE_BUFFER, internalFormat, bufferID);
+        gl.glActiveTexture(GL_TEXTURE0);
+    }
+
+    public int getUnit() {
+        return unit;
+    }
+
+    /**
+     * Replaces the contents with the buffer's remaining bytes. The storage only
+     * grows, doubling, so a frame that fits in the last one's storage just
+     * orphans it.
+     */
+    public void upload(Buffer data, long bytes) {
+        GL4 gl = (GL4) GLContext.getCurrentGL();
+        gl.glBindBuffer(GL_TEXTURE_BUFFER, bufferID);
+        if (bytes > capacity) {
+            capacity = Math.max(bytes, capacity * 2);
+        }
+        gl.glBufferData(GL_TEXTURE_BUFFER, capacity, null, GL_STREAM_DRAW);
+        if (bytes > 0) {
+            gl.glBufferSubData(GL_TEXTURE_BUFFER, 0, bytes, data);
+        }
+    }
+
+    public void dispose() {
+        GL4 gl = (GL4) GLContext.getCurrentGL();
+        gl.glDeleteTextures(1, new int[] {textureID}, 0);
+        gl.glDeleteBuffers(1, new int[] {bufferID}, 0);
+    }
+}
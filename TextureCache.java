@@ -0,0 +1,203 @@
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Persistent cache of decoded, mipmapped textures.
+ *
+ * Entries are keyed by the SHA-256 of the source file's bytes, plus the size for
+ * chains resized to a common resolution, so an edited image misses and a copied
+ * or renamed one still hits. Each entry is one file holding the whole mip chain
+ * as raw RGBA8, and a hit maps it and hands the levels to GL as they are: no
+ * image decode and no mipmap generation.
+ *
+ * Entry layout, little endian:
+ * <pre>
+ *   0  "SMIP", format version, width, height
+ *  16  level count, unused
+ *  24  bytes of pixel data (long)
+ *  32  every level's pixels, level 0 first, tightly packed
+ * </pre>
+ * Safe to use from several threads at once. Entries are written to a temporary
+ * file and moved into place, so a reader never sees half an entry.
+ */
+public class TextureCache {
+    private static final int MAGIC = 0x50494D53; // "SMIP" read little endian
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final String SUFFIX = ".mip";
+
+    private final Path directory;
+    private final AtomicInteger hits = new AtomicInteger(), misses = new AtomicInteger();
+
+    public TextureCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * The cache in -Dsolarsystem.textureCache, by default ~/.cache/solarsystem/textures,
+     * or null when the property is set to "none".
+     */
+    public static TextureCache fromProperties() {
+        String dir = System.getProperty("solarsystem.textureCache",
+                Paths.get(System.getProperty("user.home"), ".cache", "solarsystem", "textures").toString());
+        return dir.equals("none") ? null : new TextureCache(Paths.get(dir));
+    }
+
+    /**
+     * The mip chain of an image file, mapped from the cache if it has seen the same
+     * bytes before and decoded, then stored, if it has not. A cache that cannot be
+     * written to only costs the store, the decoded chain is still returned.
+     */
+    public MipChain load(String fileName) throws IOException {
+        return load(fileName, 0, 0);
+    }
+
+    /**
+     * Like load(fileName), but resized to width x height, or at its own size if
+     * width is 0. Resized chains are cached separately from the full size one.
+     */
+    public MipChain load(String fileName, int width, int height) throws IOException {
+        byte[] source;
+        try {
+            source = Files.readAllBytes(Paths.get(fileName));
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException(fileName);
+        }
+        String key = hash(source);
+        Path entry = directory.resolve(width > 0 ? key + "-" + width + "x" + height + SUFFIX : key + SUFFIX);
+        MipChain chain = Files.isRegularFile(entry) ? read(entry) : null;
+        if (chain != null) {
+            hits.incrementAndGet();
+            return chain;
+        }
+        if (width > 0) {
+            // the full size chain may well be cached even though this size is not
+            Path full = directory.resolve(key + SUFFIX);
+            chain = Files.isRegularFile(full) ? read(full) : null;
+            chain = (chain != null ? chain : decode(fileName, source)).resize(width, height);
+        } else {
+            chain = decode(fileName, source);
+        }
+        misses.incrementAndGet();
+        try {
+            write(entry, chain);
+        } catch (IOException e) {
+            System.err.println("Could not cache texture '" + fileName + "': " + e);
+        }
+        return chain;
+    }
+
+    /**
+     * Decodes an image to RGBA8 and builds its mip chain. Rows stay in file order,
+     * the order TextureIO has always uploaded the body textures in.
+     */
+    static MipChain decode(String fileName, byte[] source) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(source));
+        if (image == null) {
+            throw new FileSystemException(fileName, null, "not an image format Java can read");
+        }
+        return MipChain.build(image.getWidth(), image.getHeight(), Utils.getRGBAPixelData(image, false));
+    }
+
+    private static String hash(byte[] bytes) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has to provide SHA-256
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest(bytes)) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return the entry's chain, or null if the entry is damaged or from another version
+     */
+    private static MipChain read(Path entry) {
+        try (FileChannel channel = FileChannel.open(entry)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return null;
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            int width = mapped.getInt(8), height = mapped.getInt(12);
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION || width <= 0 || height <= 0
+                    || mapped.getInt(16) != MipChain.levelCount(width, height)
+                    || mapped.getLong(24) != MipChain.chainBytes(width, height)
+                    || size != HEADER_SIZE + MipChain.chainBytes(width, height)) {
+                return null;
+            }
+            ByteBuffer[] levels = new ByteBuffer[mapped.getInt(16)];
+            int offset = HEADER_SIZE;
+            for (int l = 0; l < levels.length; l++) {
+                int length = MipChain.levelSize(width, l) * MipChain.levelSize(height, l) * MipChain.BYTES_PER_PIXEL;
+                levels[l] = mapped.slice(offset, length);
+                offset += length;
+            }
+            return new MipChain(width, height, levels);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void write(Path entry, MipChain chain) throws IOException {
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, entry.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putInt(chain.getWidth()).putInt(chain.getHeight());
+                header.putInt(chain.getLevelCount()).putInt(0);
+                header.putLong(MipChain.chainBytes(chain.getWidth(), chain.getHeight()));
+                header.flip();
+                writeFully(channel, header);
+                for (int l = 0; l < chain.getLevelCount(); l++) {
+                    writeFully(channel, chain.getLevel(l));
+                }
+            }
+            try {
+                Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /** Loads served from the cache so far. */
+    public int getHits() {
+        return hits.get();
+    }
+
+    /** Loads that had to decode the source image so far. */
+    public int getMisses() {
+        return misses.get();
+    }
+}
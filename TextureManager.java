@@ -0,0 +1,302 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.jogamp.opengl.GL4.*;
+import com.jogamp.opengl.*;
+import com.jogamp.common.nio.Buffers;
+
+/**
+ * Loads body textures without blocking the GL thread.
+ *
+ * request() hands out a texture slot per distinct file (by canonical path) and
+ * immediately gives it a GL texture holding a single grey placeholder texel, so
+ * the slot can be drawn with from the first frame. A pool of worker threads turns
+ * the file into a full mip chain, mapped from the TextureCache when it has seen
+ * the image before and decoded otherwise. Finished chains queue up until the GL
+ * thread calls uploadFinished(), which uploads every level into the slot's
+ * existing texture object, so texture IDs never change once handed out.
+ *
+ * Given a layer size, the manager instead packs every texture into the layers of
+ * one GL_TEXTURE_2D_ARRAY, each resized to that size, and a slot is a layer index.
+ * Layers have no placeholder; check isReady() before sampling one. The array is
+ * allocated on the first upload, so every texture has to be requested before then.
+ *
+ * Everything except the decoding must be called on the thread that owns the GL
+ * context.
+ */
+public class TextureManager {
+    // uploads per frame, so a burst of finished decodes does not stall one frame
+    private static final int MAX_UPLOADS_PER_FRAME = 8;
+    private static final byte[] PLACEHOLDER_TEXEL = {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0xFF};
+
+    private final ExecutorService decoders;
+    private final TextureCache cache;
+    private final int layerWidth, layerHeight; // 0 for separate 2D textures
+    private int arrayTexture;
+    private final HashMap<String, Integer> slots = new HashMap<String, Integer>();
+    private final ArrayList<String> paths = new ArrayList<String>();
+    private int[] textureIDs = new int[16];
+    private boolean[] ready = new boolean[16];
+    private int numTextures;
+
+    private final LinkedBlockingQueue<Decoded> finished = new LinkedBlockingQueue<Decoded>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /** A decoded image waiting for the GL thread, or a failure if mips is null. */
+    private static final class Decoded {
+        final int slot;
+        final MipChain mips;
+        final String error;
+
+        Decoded(int slot, MipChain mips, String error) {
+            this.slot = slot;
+            this.mips = mips;
+            this.error = error;
+        }
+    }
+
+    public TextureManager() {
+        this(Runtime.getRuntime().availableProcessors(), TextureCache.fromProperties(), 0, 0);
+    }
+
+    /**
+     * @param cache      where decoded textures are kept between runs, or null to always decode
+     * @param layerWidth size every texture is resized to in a texture array, or 0 to
+     *                   give each texture its own GL_TEXTURE_2D at its own size
+     */
+    public TextureManager(int decoderThreads, TextureCache cache, int layerWidth, int layerHeight) {
+        if (layerWidth < 0 || layerHeight < 0 || (layerWidth == 0) != (layerHeight == 0)) {
+            throw new IllegalArgumentException("Bad texture layer size " + layerWidth + "x" + layerHeight);
+        }
+        this.cache = cache;
+        this.layerWidth = layerWidth;
+        this.layerHeight = layerHeight;
+        AtomicInteger threadNumber = new AtomicInteger();
+        decoders = Executors.newFixedThreadPool(Math.max(1, decoderThreads), runnable -> {
+            Thread thread = new Thread(runnable, "texture-decoder-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * The slot for a texture file, starting its decode if this is the first request
+     * for that file. Paths naming the same file share a slot.
+     */
+    public int request(String fileName) {
+        String key = canonicalPath(fileName);
+        Integer slot = slots.get(key);
+        if (slot != null) {
+            return slot;
+        }
+        if (arrayTexture != 0) {
+            throw new IllegalStateException("The texture array is already allocated, '" + fileName + "' is too late");
+        }
+        slot = numTextures++;
+        if (slot == textureIDs.length) {
+            textureIDs = Arrays.copyOf(textureIDs, slot * 2);
+            ready = Arrays.copyOf(ready, slot * 2);
+        }
+        slots.put(key, slot);
+        paths.add(fileName);
+        textureIDs[slot] = isArray() ? 0 : createPlaceholder();
+
+        int decodeSlot = slot;
+        pending.incrementAndGet();
+        decoders.execute(() -> finished.add(decode(decodeSlot, fileName)));
+        return slot;
+    }
+
+    private static String canonicalPath(String fileName) {
+        File file = new File(fileName);
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    private Decoded decode(int slot, String fileName) {
+        try {
+            MipChain mips;
+            if (cache != null) {
+                mips = cache.load(fileName, layerWidth, layerHeight);
+            } else {
+                mips = TextureCache.decode(fileName, Files.readAllBytes(Paths.get(fileName)));
+                if (isArray()) {
+                    mips = mips.resize(layerWidth, layerHeight);
+                }
+            }
+            return new Decoded(slot, mips, null);
+        } catch (IOException | RuntimeException e) {
+            return new Decoded(slot, null, "Could not load texture '" + fileName + "': " + e);
+        }
+    }
+
+    private int createPlaceholder() {
+        GL4 gl = (GL4) GLContext.getCurrentGL();
+        int[] id = new int[1];
+        gl.glGenTextures(1, id, 0);
+        gl.glBindTexture(GL_TEXTURE_2D, id[0]);
+        gl.glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, 1, 1, 0, GL_RGBA, GL_UNSIGNED_BYTE,
+                Buffers.newDirectByteBuffer(PLACEHOLDER_TEXEL));
+        // one level only, so no mipmapped filter until the real image is in
+        gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        return id[0];
+    }
+
+    /**
+     * Allocates every level of the texture array, one layer per texture requested.
+     * The layers are filled in as their images arrive.
+     */
+    private void allocateArray(GL4 gl) {
+        int[] maxLayers = new int[1];
+        gl.glGetIntegerv(GL_MAX_ARRAY_TEXTURE_LAYERS, maxLayers, 0);
+        if (numTextures > maxLayers[0]) {
+            throw new IllegalStateException(numTextures + " textures do not fit in a texture array, this GL allows "
+                    + maxLayers[0] + " layers");
+        }
+        int[] id = new int[1];
+        gl.glGenTextures(1, id, 0);
+        arrayTexture = id[0];
+        gl.glBindTexture(GL_TEXTURE_2D_ARRAY, arrayTexture);
+        int levels = MipChain.levelCount(layerWidth, layerHeight);
+        for (int l = 0; l < levels; l++) {
+            gl.glTexImage3D(GL_TEXTURE_2D_ARRAY, l, GL_RGBA8, MipChain.levelSize(layerWidth, l),
+                    MipChain.levelSize(layerHeight, l), numTextures, 0, GL_RGBA, GL_UNSIGNED_BYTE, null);
+        }
+        gl.glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAX_LEVEL, levels - 1);
+        gl.glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
+        setAnisotropy(gl, GL_TEXTURE_2D_ARRAY);
+    }
+
+    private static void setAnisotropy(GL4 gl, int target) {
+        if (gl.isExtensionAvailable("GL_EXT_texture_filter_anisotropic")) {
+            float[] anisoset = new float[1];
+            gl.glGetFloatv(GL_MAX_TEXTURE_MAX_ANISOTROPY_EXT, anisoset, 0);
+            gl.glTexParameterf(target, GL_TEXTURE_MAX_ANISOTROPY_EXT, anisoset[0]);
+        }
+    }
+
+    /**
+     * Uploads images that finished decoding since the last call, at most a few per
+     * call. Binds textures directly, so a GLStateTracker needs invalidating when this
+     * returns more than zero.
+     *
+     * @return the number of textures uploaded
+     */
+    public int uploadFinished(GL4 gl) {
+        if (isArray() && arrayTexture == 0 && numTextures > 0) {
+            allocateArray(gl);
+        }
+        int uploaded = 0;
+        Decoded decoded;
+        while (uploaded < MAX_UPLOADS_PER_FRAME && (decoded = finished.poll()) != null) {
+            upload(gl, decoded);
+            uploaded++;
+        }
+        return uploaded;
+    }
+
+    /**
+     * Blocks until every requested texture has been decoded and uploaded.
+     */
+    public void uploadAll(GL4 gl) throws InterruptedException {
+        if (isArray() && arrayTexture == 0 && numTextures > 0) {
+            allocateArray(gl);
+        }
+        while (pending.get() > 0) {
+            upload(gl, finished.take());
+        }
+    }
+
+    private void upload(GL4 gl, Decoded decoded) {
+        pending.decrementAndGet();
+        if (decoded.mips == null) {
+            System.err.println(decoded.error); // the placeholder stays
+            return;
+        }
+        MipChain mips = decoded.mips;
+        if (isArray()) {
+            gl.glBindTexture(GL_TEXTURE_2D_ARRAY, arrayTexture);
+            for (int l = 0; l < mips.getLevelCount(); l++) {
+                gl.glTexSubImage3D(GL_TEXTURE_2D_ARRAY, l, 0, 0, decoded.slot, mips.getLevelWidth(l),
+                        mips.getLevelHeight(l), 1, GL_RGBA, GL_UNSIGNED_BYTE, mips.getLevel(l));
+            }
+            ready[decoded.slot] = true;
+            return;
+        }
+        gl.glBindTexture(GL_TEXTURE_2D, textureIDs[decoded.slot]);
+        for (int l = 0; l < mips.getLevelCount(); l++) {
+            gl.glTexImage2D(GL_TEXTURE_2D, l, GL_RGBA8, mips.getLevelWidth(l), mips.getLevelHeight(l), 0,
+                    GL_RGBA, GL_UNSIGNED_BYTE, mips.getLevel(l));
+        }
+
+        // the chain is complete, use it with anisotropic filtering if available
+        gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, mips.getLevelCount() - 1);
+        gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
+        setAnisotropy(gl, GL_TEXTURE_2D);
+        ready[decoded.slot] = true;
+    }
+
+    public int size() {
+        return numTextures;
+    }
+
+    /** Whether textures are layers of one texture array rather than separate textures. */
+    public boolean isArray() {
+        return layerWidth > 0;
+    }
+
+    /** The texture array, 0 until it is allocated by the first upload. */
+    public int getArrayTexture() {
+        return arrayTexture;
+    }
+
+    /** The slot's GL_TEXTURE_2D, always 0 for texture array layers. */
+    public int getTextureID(int slot) {
+        return textureIDs[slot];
+    }
+
+    /** The texture ID of every slot, in slot order. */
+    public int[] getTextureIDs() {
+        return Arrays.copyOf(textureIDs, numTextures);
+    }
+
+    public String getPath(int slot) {
+        return paths.get(slot);
+    }
+
+    /** Whether the slot holds its real image yet rather than the placeholder. */
+    public boolean isReady(int slot) {
+        return ready[slot];
+    }
+
+    /** Textures requested but not yet uploaded. */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Stops the decoders and deletes every texture this manager created.
+     */
+    public void dispose(GL4 gl) {
+        decoders.shutdownNow();
+        if (isArray()) {
+            gl.glDeleteTextures(1, new int[] {arrayTexture}, 0);
+            arrayTexture = 0;
+        } else {
+            gl.glDeleteTextures(numTextures, textureIDs, 0);
+        }
+        finished.clear();
+        pending.set(0);
+        numTextures = 0;
+        slots.clear();
+        paths.clear();
+    }
+}
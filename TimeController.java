@@ -0,0 +1,123 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides how fast simulation time runs against real time: a warp factor, which
+ * may be negative to run time backwards, a pause, and seeking straight to any
+ * epoch.
+ *
+ * Nothing here accumulates time of its own. Every frame turns the real time that
+ * passed into simulation time and hands it to Simulation.advance(), whose clock is
+ * a whole number of fixed steps; positions are then evaluated from that absolute
+ * time. With the orbits driving the bodies, advancing any distance and seeking are
+ * O(1), so a warp of a million costs the same per frame as a warp of one. In
+ * N-body mode time can only move a few steps per frame, forwards or backwards, so
+ * large warps run slow and seeking is not possible.
+ *
+ * The controls may be changed from any thread, the key listener's included;
+ * advance() belongs to whichever thread updates the simulation, the render loop
+ * or a SimulationThread.
+ */
+public class TimeController {
+    public static final double DEFAULT_WARP = 1;
+    private static final long NO_SEEK = Double.doubleToRawLongBits(Double.NaN);
+
+    private final Simulation simulation;
+    private volatile double warp;
+    private volatile boolean paused;
+    // a seek waiting for the next advance(), as raw double bits
+    private final AtomicLong seekTarget = new AtomicLong(NO_SEEK);
+    private int seeks; // only touched by advance()
+
+    public TimeController(Simulation simulation) {
+        this(simulation, DEFAULT_WARP);
+    }
+
+    public TimeController(Simulation simulation, double warp) {
+        this.simulation = simulation;
+        setWarp(warp);
+    }
+
+    /**
+     * A controller with the warp from -Dsolarsystem.timeWarp, DEFAULT_WARP if unset.
+     */
+    public static TimeController fromProperties(Simulation simulation) {
+        String warp = System.getProperty("solarsystem.timeWarp");
+        if (warp == null) {
+            return new TimeController(simulation);
+        }
+        try {
+            return new TimeController(simulation, Double.parseDouble(warp.trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("solarsystem.timeWarp should be a number, not " + warp);
+        }
+    }
+
+    /**
+     * Applies any pending seek, then moves the simulation on by the real time that
+     * passed since the last frame times the warp, unless paused.
+     *
+     * @return the number of steps the simulation took, negative when going backwards
+     */
+    public long advance(double realElapsed) {
+        long target = seekTarget.getAndSet(NO_SEEK);
+        if (target != NO_SEEK) {
+            simulation.seek(Double.longBitsToDouble(target));
+            seeks++;
+        }
+        if (paused) {
+            return 0;
+        }
+        return simulation.advance(realElapsed * warp);
+    }
+
+    /**
+     * Jumps to simulation time t at the start of the next frame, without replaying
+     * anything in between.
+     *
+     * @throws IllegalStateException in N-body mode, where positions depend on the
+     *                               whole history
+     */
+    public void seek(double t) {
+        if (simulation.getGravity() != null) {
+            throw new IllegalStateException("N-body time can not jump, it has to be integrated");
+        }
+        if (!Double.isFinite(t)) {
+            throw new IllegalArgumentException("Can not seek to " + t);
+        }
+        seekTarget.set(Double.doubleToRawLongBits(t));
+    }
+
+    /** Seeks advance() has applied so far, to tell a jump in time from motion. */
+    public int getSeeks() {
+        return seeks;
+    }
+
+    /** Simulation time units per second of real time, negative to run backwards. */
+    public double getWarp() {
+        return warp;
+    }
+
+    public void setWarp(double warp) {
+        if (!Double.isFinite(warp)) {
+            throw new IllegalArgumentException("The time warp has to be finite, not " + warp);
+        }
+        this.warp = warp;
+    }
+
+    /** Runs time the other way at the same speed. */
+    public void reverse() {
+        warp = -warp;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    public void togglePause() {
+        paused = !paused;
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * The world transforms of every body at one moment: what a SceneGraph update
+ * writes and what the renderer draws from.
+ *
+ * A SceneGraph writes into whichever snapshot is its target, so a simulation
+ * thread can fill one snapshot while the renderer reads others, and pass it on
+ * through a SnapshotExchange without copying anything. Like the scene graph's own
+ * arrays, a snapshot keeps whatever an earlier update left for bodies the last
+ * one culled; only visible bodies and the frames of pinned ones are current.
+ */
+public class TransformSnapshot {
+    /**
+     * Largest part of a turn, of the fastest orbit or spin in the scene, that
+     * interpolate() may blend across; see canBlend.
+     */
+    public static final double MAX_BLEND_TURN = 1.0 / 32;
+    private static final int MATRIX_SIZE = SceneGraph.MATRIX_SIZE;
+
+    final float[] frames, models, normals;
+    final boolean[] visible;
+    private final float offsetX, offsetY, offsetZ;
+
+    private double time;
+    private long stamp;
+    private int seeks;
+    private int visibleBodies, boundsTested, culledSubtrees;
+
+    /**
+     * @param offsetX offset of the drawn sphere inside its own orbit frame, as in SceneGraph
+     */
+    public TransformSnapshot(int size, float offsetX, float offsetY, float offsetZ) {
+        frames = new float[size * MATRIX_SIZE];
+        models = new float[size * MATRIX_SIZE];
+        normals = new float[size * MATRIX_SIZE];
+        visible = new boolean[size];
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.offsetZ = offsetZ;
+    }
+
+    public int size() {
+        return visible.length;
+    }
+
+    /** Called by SceneGraph at the end of every update. */
+    void finish(double time, int visibleBodies, int boundsTested, int culledSubtrees) {
+        this.time = time;
+        this.visibleBodies = visibleBodies;
+        this.boundsTested = boundsTested;
+        this.culledSubtrees = culledSubtrees;
+    }
+
+    /**
+     * Whether interpolate() can blend a and b: no seek between them, and so little
+     * simulation time that nothing turns more than MAX_BLEND_TURN. With a large
+     * time warp bodies can go round several times between two ticks, and a blend
+     * would cut straight through their orbits; the newest snapshot should be shown
+     * as it is instead.
+     *
+     * @param shortestPeriod see SceneGraph.getShortestPeriod
+     */
+    public static boolean canBlend(TransformSnapshot a, TransformSnapshot b, double shortestPeriod) {
+        return a.seeks == b.seeks && Math.abs(b.time - a.time) <= MAX_BLEND_TURN * shortestPeriod;
+    }
+
+    /**
+     * Blends two snapshots into this one, alpha of the way from a to b. Translations
+     * are interpolated linearly and each column of the rotation part is
+     * interpolated and brought back to its length, which is exact enough over the
+     * few degrees anything turns between snapshots that pass canBlend. Bodies visible in b
+     * are blended, taking b as it is when a culled them, and so are the frames of
+     * pinned bodies, which both always have.
+     *
+     * @param radii  each body's radius, the length of its model matrix columns
+     * @param pinned the bodies whose frames are wanted, see SceneGraph.pin
+     */
+    public void interpolate(TransformSnapshot a, TransformSnapshot b, float alpha, float[] radii, boolean[] pinned) {
+        float invAlpha = 1 - alpha;
+        for (int i = 0; i < visible.length; i++) {
+            int f = i * MATRIX_SIZE;
+            visible[i] = b.visible[i];
+            if (pinned[i]) {
+                blend(a.frames, b.frames, f, alpha, 1, frames);
+            }
+            if (!b.visible[i]) {
+                continue;
+            }
+            if (!a.visible[i]) {
+                System.arraycopy(b.models, f, models, f, MATRIX_SIZE);
+                System.arraycopy(b.normals, f, normals, f, MATRIX_SIZE);
+                continue;
+            }
+            float radius = Math.abs(radii[i]);
+            blend(a.models, b.models, f, alpha, radius, models);
+            // as in SceneGraph, the normal matrix is the model's 3x3 over radius squared
+            float invSq = radius != 0 ? 1 / (radius * radius) : 0;
+            for (int k = 0; k < 12; k++) {
+                normals[f + k] = (k & 3) == 3 ? 0 : models[f + k] * invSq;
+            }
+            normals[f + 12] = normals[f + 13] = normals[f + 14] = 0;
+            normals[f + 15] = 1;
+        }
+        time = invAlpha * a.time + alpha * b.time;
+        stamp = b.stamp;
+        seeks = b.seeks;
+        visibleBodies = b.visibleBodies;
+        boundsTested = b.boundsTested;
+        culledSubtrees = b.culledSubtrees;
+    }
+
+    /**
+     * dest = a matrix between a and b whose 3x3 columns all have the given length.
+     */
+    private static void blend(float[] a, float[] b, int f, float alpha, float length, float[] dest) {
+        for (int column = 0; column < 4; column++) {
+            int c = f + 4 * column;
+            float x = a[c] + alpha * (b[c] - a[c]);
+            float y = a[c + 1] + alpha * (b[c + 1] - a[c + 1]);
+            float z = a[c + 2] + alpha * (b[c + 2] - a[c + 2]);
+            if (column < 3) {
+                float norm = (float) Math.sqrt(x * x + y * y + z * z);
+                float scale = norm > 0 ? length / norm : 0;
+                x *= scale;
+                y *= scale;
+                z *= scale;
+            }
+            dest[c] = x;
+            dest[c + 1] = y;
+            dest[c + 2] = z;
+            dest[c + 3] = column < 3 ? 0 : 1;
+        }
+    }
+
+    /**
+     * World position of the centre of the body's drawn sphere, its frame applied to
+     * the offset. Written to dest[o] to dest[o + 2].
+     */
+    public void getPosition(int body, float[] dest, int o) {
+        int f = body * MATRIX_SIZE;
+        for (int row = 0; row < 3; row++) {
+            dest[o + row] = frames[f + 12 + row] + frames[f + row] * offsetX + frames[f + 4 + row] * offsetY
+                    + frames[f + 8 + row] * offsetZ;
+        }
+    }
+
+    /** Simulation time the transforms are for. */
+    public double getTime() {
+        return time;
+    }
+
+    /** System.nanoTime() when the snapshot was published, 0 if it never was. */
+    public long getStamp() {
+        return stamp;
+    }
+
+    public void setStamp(long stamp) {
+        this.stamp = stamp;
+    }
+
+    /** Seeks applied before the snapshot was taken; a snapshot is never blended across one. */
+    public int getSeeks() {
+        return seeks;
+    }
+
+    public void setSeeks(int seeks) {
+        this.seeks = seeks;
+    }
+
+    public float[] getFrames() {
+        return frames;
+    }
+
+    public float[] getModelMatrices() {
+        return models;
+    }
+
+    public float[] getNormalMatrices() {
+        return normals;
+    }
+
+    public boolean[] getVisibility() {
+        return visible;
+    }
+
+    public int getVisibleBodies() {
+        return visibleBodies;
+    }
+
+    public int getBoundsTested() {
+        return boundsTested;
+    }
+
+    public int getCulledSubtrees() {
+        return culledSubtrees;
+    }
+}
@@ -0,0 +1,64 @@
+import java.nio.*;
+
+import static com.jogamp.opengl.GL4.*;
+import com.jogamp.opengl.*;
+import com.jogamp.common.nio.Buffers;
+import org.joml.Matrix4f;
+
+/**
+ * A std140 uniform buffer attached to a fixed binding point. Values are staged into
+ * a direct buffer at their std140 byte offsets and sent to GL with one upload.
+ */
+public class UniformBuffer {
+    private final int bufferID;
+    private final int bindingPoint;
+    private final ByteBuffer data;
+
+    public UniformBuffer(int bindingPoint, int size) {
+        GL4 gl = (GL4) GLContext.getCurrentGL();
+        int[] buffers = new int[1];
+        gl.glGenBuffers(1, buffers, 0);
+        this.bufferID = buffers[0];
+        this.bindingPoint = bindingPoint;
+        this.data = Buffers.newDirectByteBuffer(size);
+        gl.glBindBuffer(GL_UNIFORM_BUFFER, bufferID);
+        gl.glBufferData(GL_UNIFORM_BUFFER, size, null, GL_DYNAMIC_DRAW);
+        gl.glBindBufferBase(GL_UNIFORM_BUFFER, bindingPoint, bufferID);
+    }
+
+    public int getBindingPoint() {
+        return bindingPoint;
+    }
+
+    public UniformBuffer putFloat(int offset, float value) {
+        data.putFloat(offset, value);
+        return this;
+    }
+
+    public UniformBuffer putInt(int offset, int value) {
+        data.putInt(offset, value);
+        return this;
+    }
+
+    /**
+     * Writes count floats from values. std140 vec3s and vec4s are both 16 byte aligned,
+     * so the same call works for either.
+     */
+    public UniformBuffer putFloats(int offset, float[] values, int count) {
+        for (int i = 0; i < count; i++) {
+            data.putFloat(offset + i * Buffers.SIZEOF_FLOAT, values[i]);
+        }
+        return this;
+    }
+
+    public UniformBuffer putMatrix(int offset, Matrix4f matrix) {
+        matrix.get(offset, data);
+        return this;
+    }
+
+    public void upload() {
+        GL4 gl = (GL4) GLContext.getCurrentGL();
+        gl.glBindBuffer(GL_UNIFORM_BUFFER, bufferID);
+        gl.glBufferSubData(GL_UNIFORM_BUFFER, 0, data.capacity(), data);
+    }
+}
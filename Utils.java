@@ -101,9 +101,16 @@ public class Utils {
 	}
 	
 	private static int prepareShader(int shaderTYPE, String shader) {
+		return compileShader(shaderTYPE, readShaderSource(shader));
+	}
+
+	/**
+	 * Compiles GLSL source that is already in memory, printing the log if it fails.
+	 */
+	public static int compileShader(int shaderTYPE, String source) {
 		GL4 gl = (GL4) GLContext.getCurrentGL();
 		int[] shaderCompiled = new int[1];
-		String shaderSource[] = readShaderSource(shader);
+		String shaderSource[] = { source };
 		int shaderRef = gl.glCreateShader(shaderTYPE);
 		gl.glShaderSource(shaderRef, shaderSource.length, shaderSource, null, 0);
 		gl.glCompileShader(shaderRef);
@@ -122,14 +129,13 @@ public class Utils {
 		return shaderRef;
 	}
 	
-	private static String[] readShaderSource(String filename) {
-		ArrayList<String> lines = new ArrayList<String>();
+	/**
+	 * The whole shader file in one read, as the single string glShaderSource needs.
+	 */
+	public static String readShaderSource(String filename) {
 		try {
-			Scanner scanner = new Scanner(new File(filename));
-			while (scanner.hasNext()) lines.add(scanner.nextLine() + "\n");
-			scanner.close();
-
-			return lines.toArray(new String[lines.size()]);
+			return new String(java.nio.file.Files.readAllBytes(new File(filename).toPath()),
+					java.nio.charset.StandardCharsets.UTF_8);
 		}
 		catch (IOException e) {
 			System.err.println("IOException reading file: " + e);
@@ -172,9 +178,10 @@ public class Utils {
 	public static boolean checkOpenGLError() {
 		GL4 gl = (GL4) GLContext.getCurrentGL();
 		boolean foundError = false;
-		GLU glu = new GLU();
+		GLU glu = null; // only needed to name an error, which is rare
 		int glErr = gl.glGetError();
 		while (glErr != GL_NO_ERROR) {
+			if (glu == null) glu = new GLU();
 			System.err.println("glError: " + glu.gluErrorString(glErr));
 			foundError = true;
 			glErr = gl.glGetError();
@@ -310,7 +317,7 @@ public class Utils {
 		return textureID;
 	}
 
-	private static BufferedImage loadBufferedImage(String fileName) {
+	static BufferedImage loadBufferedImage(String fileName) {
 		BufferedImage img;
 		try {
 			img = ImageIO.read(new File(fileName));	// assumes GIF, JPG, PNG, BMP
@@ -322,7 +329,7 @@ public class Utils {
 		return img;
 	}
 
-	private static byte[] getRGBAPixelData(BufferedImage img, boolean flip) {
+	static byte[] getRGBAPixelData(BufferedImage img, boolean flip) {
 		int height = img.getHeight(null);
 		int width = img.getWidth(null);
 
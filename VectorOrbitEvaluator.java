@@ -0,0 +1,80 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * OrbitEvaluator that runs each level of the tree four bodies at a time (or
+ * fewer, on CPUs with narrower vectors) with the jdk.incubator.vector API.
+ * Parent state is gathered by slot and positions are scattered back by body
+ * index; sin and cos are the vector API's own lanewise versions. Elliptical
+ * orbits get their angle and distance from a scalar pass over the level first and
+ * are blended in by mask.
+ *
+ * Needs --add-modules jdk.incubator.vector both to build and to run. Use
+ * OrbitEvaluator.create() rather than this class directly, so a JVM without the
+ * module gets the scalar evaluator instead of a NoClassDefFoundError.
+ */
+public class VectorOrbitEvaluator extends OrbitEvaluator {
+    // At most 256 bits: on AVX-512, JDK 17's C2 gets 8-lane double gathers wrong
+    // here, while the interpreter, and the same code at 4 lanes, agree with the
+    // scalar evaluator.
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED.length() > 4
+            ? DoubleVector.SPECIES_256 : DoubleVector.SPECIES_PREFERRED;
+    private static final double ROUNDING = 1.5 * (1L << 52);
+
+    public VectorOrbitEvaluator(SceneGraph sceneGraph) {
+        super(sceneGraph);
+    }
+
+    @Override
+    public boolean isVectorized() {
+        return true;
+    }
+
+    @Override
+    protected void evaluateLevel(double t, int from, int to, double[] x, double[] y, double[] z) {
+        int lanes = SPECIES.length();
+        int s = from;
+        int vectorEnd = from + (to - from) / lanes * lanes;
+        if (anyElliptical) {
+            for (int e = from; e < vectorEnd; e++) {
+                if (elliptical[e]) {
+                    orbitAngle(t, e);
+                }
+            }
+        }
+        for (; s < vectorEnd; s += lanes) {
+            // phase minus its nearest whole number, in [-0.5, 0.5]: adding and taking
+            // away 1.5 * 2^52 rounds any phase below 2^51 to a whole number without a
+            // double to long conversion, which few CPUs can do a vector at a time
+            DoubleVector phase = DoubleVector.fromArray(SPECIES, invPeriods, s).mul(t);
+            DoubleVector fraction = phase.sub(phase.add(ROUNDING).sub(ROUNDING));
+
+            DoubleVector orbitAngle = fraction.mul(TWO_PI);
+            DoubleVector distance = DoubleVector.fromArray(SPECIES, distances, s);
+            if (anyElliptical) {
+                VectorMask<Double> mask = VectorMask.fromArray(SPECIES, elliptical, s);
+                orbitAngle = orbitAngle.blend(DoubleVector.fromArray(SPECIES, orbitAngles, s), mask);
+                distance = distance.blend(DoubleVector.fromArray(SPECIES, radii, s), mask);
+            }
+            DoubleVector angle = DoubleVector.fromArray(SPECIES, angles, 0, parentSlots, s).add(orbitAngle);
+            DoubleVector cos = angle.lanewise(VectorOperators.COS);
+            DoubleVector sin = angle.lanewise(VectorOperators.SIN);
+            DoubleVector fx = DoubleVector.fromArray(SPECIES, frameX, 0, parentSlots, s).add(distance.mul(cos));
+            DoubleVector fy = DoubleVector.fromArray(SPECIES, frameY, 0, parentSlots, s);
+            DoubleVector fz = DoubleVector.fromArray(SPECIES, frameZ, 0, parentSlots, s).sub(distance.mul(sin));
+            angle.intoArray(angles, s);
+            fx.intoArray(frameX, s);
+            fy.intoArray(frameY, s);
+            fz.intoArray(frameZ, s);
+
+            fx.add(cos.mul(offsetX)).add(sin.mul(offsetZ)).intoArray(x, 0, bodies, s);
+            fy.add(offsetY).intoArray(y, 0, bodies, s);
+            fz.sub(sin.mul(offsetX)).add(cos.mul(offsetZ)).intoArray(z, 0, bodies, s);
+        }
+        for (; s < to; s++) {
+            evaluate(t, s, x, y, z);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+#version 410
+
+in vec3 varyingVertPos;
+in float varyingViewDepth;
+
+uniform vec3 beltColor;
+
+// the clustered light list, shared with the bodies, see LightClusters
+uniform samplerBuffer lights;
+uniform usamplerBuffer clusters;
+uniform usamplerBuffer lightIndices;
+
+out vec4 fragColor;
+
+layout (std140) uniform Frame {
+	mat4 v_matrix;
+	mat4 p_matrix;
+	vec4 eye; // camera position in world space
+};
+
+layout (std140) uniform Lighting {
+	vec4 ambient;
+	vec4 diffuse;
+	vec4 specular;
+	vec4 color;
+	float linAtt;
+	float cutoff;
+	float sliceScale;
+	float sliceBias;
+	ivec4 clusterGrid;
+};
+
+void main(void) {
+	// each point is drawn as a little sphere facing the camera
+	vec2 p = gl_PointCoord * 2.0 - 1.0;
+	p.y = -p.y;
+	float r2 = dot(p, p);
+	if(r2 > 1.0){
+		discard;
+	}
+	vec3 N = transpose(mat3(v_matrix)) * vec3(p, sqrt(1.0 - r2));
+
+	ivec2 tile = min(ivec2(gl_FragCoord.xy) / clusterGrid.w, clusterGrid.xy - 1);
+	int slice = clamp(int(floor(log(varyingViewDepth) * sliceScale + sliceBias)), 0, clusterGrid.z - 1);
+	uvec2 cluster = texelFetch(clusters, (slice * clusterGrid.y + tile.y) * clusterGrid.x + tile.x).xy;
+
+	// rock has no highlight worth drawing at this size, so diffuse only
+	vec3 diffuseSum = vec3(0.0);
+	for(uint k = 0u; k < cluster.y; k++){
+		vec3 toLight = texelFetch(lights, int(texelFetch(lightIndices, int(cluster.x + k)).r)).xyz - varyingVertPos;
+		float a = 1 / (length(toLight) * linAtt + 1);
+		a = max(a - cutoff, 0.0) / (1.0 - cutoff);
+		diffuseSum += diffuse.xyz * max(dot(normalize(toLight), N), 0.0) * a;
+	}
+
+	fragColor = vec4((ambient.xyz + diffuseSum) * beltColor * color.rgb, 1.0);
+}
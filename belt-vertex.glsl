@@ -0,0 +1,33 @@
+#version 410
+
+// one particle per vertex, see AsteroidBelt
+layout (location = 0) in vec4 orbit; // radius, phase at time 0 in turns, turns per repeat period, tilt height
+layout (location = 1) in float node; // angle at which the tilted circle rises through the plane
+
+uniform mat4 beltMatrix;    // the body's orbit frame, moved to the centre of its sphere
+uniform float repeatTime;   // simulation time as a fraction of the belt's repeat period
+uniform float particleSize;
+uniform float pointScale;   // pixels per world unit at a view depth of 1
+
+out vec3 varyingVertPos;
+out float varyingViewDepth;
+
+layout (std140) uniform Frame {
+	mat4 v_matrix;
+	mat4 p_matrix;
+	vec4 eye; // camera position in world space
+};
+
+void main(void) {
+	// the same direction bodies orbit in: rotateY(angle) * (radius, 0, 0)
+	float angle = 6.2831853 * fract(orbit.y + orbit.z * repeatTime);
+	vec3 local = vec3(orbit.x * cos(angle), orbit.w * sin(angle - node), -orbit.x * sin(angle));
+
+	vec4 world = beltMatrix * vec4(local, 1.0);
+	vec4 view = v_matrix * world;
+	gl_Position = p_matrix * view;
+	// never smaller than a pixel, so distant belts still show
+	gl_PointSize = max(particleSize * pointScale / -view.z, 1.0);
+	varyingVertPos = world.xyz;
+	varyingViewDepth = -view.z;
+}
@@ -0,0 +1,119 @@
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.DoubleFunction;
+import java.util.function.Supplier;
+
+/**
+ * The work each benchmark measures, wrapped in plain JDK functional interfaces.
+ *
+ * The SolarSystem classes live in the default package, which no named package can
+ * import, while JMH only accepts benchmarks in a named package. The benchmarks look
+ * these factories up by name once per trial (see solarsystem.benchmarks.Targets) and
+ * then only ever make ordinary interface calls.
+ */
+public class BenchmarkTargets {
+    private BenchmarkTargets() {}
+
+    public static Supplier<Object> sphere(int precision) {
+        return () -> new Sphere(precision);
+    }
+
+    /**
+     * Writes a synthetic scene to a temporary .sol file, or .solb when compiled is set.
+     */
+    public static String writeScene(int numBodies, int maxDepth, long seed, boolean compiled) {
+        try {
+            Path sol = Files.createTempFile("synthetic", ".sol");
+            Files.write(sol, SyntheticScenes.solText(numBodies, maxDepth, seed).getBytes(StandardCharsets.UTF_8));
+            if (!compiled) {
+                return sol.toString();
+            }
+            Path solb = Files.createTempFile("synthetic", ".solb");
+            SolbFile.write(SolFile.read(sol.toString()), solb.toString());
+            Files.delete(sol);
+            return solb.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static Supplier<Object> readScene(String fileName) {
+        return () -> {
+            try {
+                return SolFile.read(fileName);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    /**
+     * The per-frame transform pass of display(), minus any GL: evaluates every world,
+     * model and normal matrix of a synthetic scene at the given time.
+     */
+    public static DoubleFunction<Object> frameTransforms(int numBodies, int maxDepth, long seed, boolean elliptical) {
+        SceneGraph sceneGraph = new Simulation(SyntheticScenes.bodies(numBodies, maxDepth, seed, elliptical))
+                .getSceneGraph();
+        return time -> {
+            sceneGraph.update(time);
+            return sceneGraph.getModelMatrices();
+        };
+    }
+
+    /**
+     * Positions of every body of a synthetic scene at the given time, as a batch
+     * ephemeris query, with the vector evaluator if asked and available.
+     */
+    public static DoubleFunction<Object> orbitPositions(int numBodies, int maxDepth, long seed, boolean vector) {
+        SceneGraph sceneGraph = new Simulation(SyntheticScenes.bodies(numBodies, maxDepth, seed)).getSceneGraph();
+        OrbitEvaluator evaluator = vector ? OrbitEvaluator.create(sceneGraph) : new OrbitEvaluator(sceneGraph);
+        if (vector && !evaluator.isVectorized()) {
+            throw new IllegalStateException("The vector evaluator needs --add-modules jdk.incubator.vector");
+        }
+        double[] x = new double[numBodies], y = new double[numBodies], z = new double[numBodies];
+        return time -> {
+            evaluator.positionsAt(time, x, y, z);
+            return x;
+        };
+    }
+
+    /**
+     * One N-body step of a synthetic scene: octree rebuild, parallel forces and the
+     * leapfrog update.
+     */
+    public static Supplier<Object> gravityStep(int numBodies, int maxDepth, long seed) {
+        SceneGraph sceneGraph = new Simulation(SyntheticScenes.bodies(numBodies, maxDepth, seed)).getSceneGraph();
+        GravitySimulation gravity = GravitySimulation.fromOrbits(sceneGraph, GravitySimulation.DEFAULT_THETA);
+        return () -> {
+            gravity.step(Simulation.DEFAULT_TIME_STEP);
+            return gravity.getX();
+        };
+    }
+
+    /**
+     * The bodies of a synthetic scene moved to their positions at the given time
+     * in a SpatialIndex with cells of the given distance, and every pair within
+     * that distance found, as a CloseApproachMonitor does each tick. Positions come
+     * from the scalar OrbitEvaluator, see orbitPositions for their cost alone.
+     */
+    public static DoubleFunction<Object> closeApproaches(int numBodies, int maxDepth, long seed, double distance) {
+        SceneGraph sceneGraph = new Simulation(SyntheticScenes.bodies(numBodies, maxDepth, seed)).getSceneGraph();
+        OrbitEvaluator evaluator = new OrbitEvaluator(sceneGraph);
+        SpatialIndex index = new SpatialIndex(numBodies, distance);
+        double[] x = new double[numBodies], y = new double[numBodies], z = new double[numBodies];
+        return time -> {
+            evaluator.positionsAt(time, x, y, z);
+            index.update(x, y, z);
+            return index.closeApproaches(distance);
+        };
+    }
+
+    public static Supplier<Object> rgbaPixelData(int size, long seed) {
+        BufferedImage image = SyntheticScenes.texture(size, seed);
+        return () -> Utils.getRGBAPixelData(image, true);
+    }
+}
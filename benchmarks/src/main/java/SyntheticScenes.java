@@ -0,0 +1,128 @@
+import java.awt.image.BufferedImage;
+import java.util.*;
+
+/**
+ * Deterministic synthetic scenes for the benchmarks, so timings can be tracked as
+ * the body count and nesting depth grow.
+ */
+public class SyntheticScenes {
+    private SyntheticScenes() {}
+
+    /**
+     * A random orbit tree: body 0 is the sun and every other body orbits a random
+     * earlier body that is less than maxDepth levels deep. parents[i] < i always.
+     */
+    public static int[] randomHierarchy(int numBodies, int maxDepth, long seed) {
+        Random random = new Random(seed);
+        int[] parents = new int[numBodies];
+        int[] depths = new int[numBodies];
+        int[] canHaveChildren = new int[numBodies];
+        int numCanHaveChildren = 0;
+        parents[0] = SceneGraph.NO_PARENT;
+        if (maxDepth > 0) {
+            canHaveChildren[numCanHaveChildren++] = 0;
+        }
+        for (int i = 1; i < numBodies; i++) {
+            int parent = canHaveChildren[random.nextInt(numCanHaveChildren)];
+            parents[i] = parent;
+            depths[i] = depths[parent] + 1;
+            if (depths[i] < maxDepth) {
+                canHaveChildren[numCanHaveChildren++] = i;
+            }
+        }
+        return parents;
+    }
+
+    public static SolarBody[] bodies(int numBodies, int maxDepth, long seed) {
+        return bodies(numBodies, maxDepth, seed, false);
+    }
+
+    /**
+     * @param elliptical give every planet an eccentricity up to 0.9, an inclination
+     *                   up to 10 degrees and random node and periapsis angles, on
+     *                   top of the same hierarchy and circular elements
+     */
+    public static SolarBody[] bodies(int numBodies, int maxDepth, long seed, boolean elliptical) {
+        int[] parents = randomHierarchy(numBodies, maxDepth, seed);
+        Random random = new Random(seed + 1);
+        Random elements = new Random(seed + 2);
+        SolarBody[] bodies = new SolarBody[numBodies];
+        bodies[0] = new Sun("sun.jpeg", 5, 2.8f);
+        for (int i = 1; i < numBodies; i++) {
+            String texture = "planet" + random.nextInt(8) + ".jpeg";
+            float radius = 0.1f + 2 * random.nextFloat();
+            float rotationPeriod = 0.5f + 5 * random.nextFloat();
+            float distance = 2 + 50 * random.nextFloat();
+            float orbitalPeriod = 1 + 100 * random.nextFloat();
+            float specular = 1 + 9 * random.nextFloat();
+            bodies[i] = elliptical
+                    ? new Planet(texture, radius, rotationPeriod, distance, orbitalPeriod, specular, bodies[parents[i]],
+                            0.9f * elements.nextFloat(), 10 * elements.nextFloat(), 360 * elements.nextFloat(),
+                            360 * elements.nextFloat())
+                    : new Planet(texture, radius, rotationPeriod, distance, orbitalPeriod, specular, bodies[parents[i]]);
+        }
+        return bodies;
+    }
+
+    /**
+     * The same scene as bodies() written out as .sol text, each body indented one
+     * tab deeper than the body it orbits.
+     */
+    public static String solText(int numBodies, int maxDepth, long seed) {
+        SolarBody[] bodies = bodies(numBodies, maxDepth, seed);
+        int[] parents = randomHierarchy(numBodies, maxDepth, seed);
+
+        // children of each body in compressed rows, for a pre-order walk
+        int[] childStarts = new int[numBodies + 1];
+        for (int i = 1; i < numBodies; i++) {
+            childStarts[parents[i] + 1]++;
+        }
+        for (int i = 0; i < numBodies; i++) {
+            childStarts[i + 1] += childStarts[i];
+        }
+        int[] children = new int[numBodies];
+        int[] next = Arrays.copyOf(childStarts, numBodies);
+        for (int i = 1; i < numBodies; i++) {
+            children[next[parents[i]]++] = i;
+        }
+
+        StringBuilder sol = new StringBuilder(numBodies * 48);
+        sol.append("20\t80\t20\n1\t1\t1\t0.1\t0.9\t0.9\t0.0001\n");
+        int[] stack = new int[numBodies];
+        int[] depths = new int[numBodies];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int body = stack[--top];
+            for (int d = 0; d < depths[body]; d++) {
+                sol.append('\t');
+            }
+            SolarBody b = bodies[body];
+            sol.append(b.getTextureFile()).append('\t').append(b.getRadius()).append('\t').append(b.getRotationPeriod());
+            if (b instanceof Planet) {
+                sol.append('\t').append(b.distFromCenter()).append('\t').append(b.orbitalPeriod())
+                        .append('\t').append(((Planet) b).specularComponent);
+            }
+            sol.append('\n');
+            for (int c = childStarts[body + 1] - 1; c >= childStarts[body]; c--) {
+                depths[children[c]] = depths[body] + 1;
+                stack[top++] = children[c];
+            }
+        }
+        return sol.toString();
+    }
+
+    /**
+     * A noisy RGB image of the given size, standing in for a planet texture.
+     */
+    public static BufferedImage texture(int size, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_3BYTE_BGR);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        return image;
+    }
+}
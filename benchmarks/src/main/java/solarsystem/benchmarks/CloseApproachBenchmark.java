@@ -0,0 +1,42 @@
+package solarsystem.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleFunction;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * One close approach check on synthetic scenes of growing size: new positions,
+ * the incremental spatial index update and the search for close pairs. Compare
+ * with OrbitEvaluatorBenchmark for the positions alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CloseApproachBenchmark {
+    private static final double FRAME_TIME = 1.0 / 60.0;
+
+    @Param({"10000", "100000", "1000000"})
+    public int bodies;
+
+    @Param({"0.1", "1"})
+    public double distance;
+
+    private DoubleFunction<Object> check;
+    // well past time 0, where every synthetic orbit starts on the same line
+    private double time = 1000;
+
+    @Setup
+    public void setup() {
+        check = Targets.create("closeApproaches", bodies, 8, 42L, distance);
+    }
+
+    @Benchmark
+    public Object check() {
+        time += FRAME_TIME;
+        return check.apply(time);
+    }
+}
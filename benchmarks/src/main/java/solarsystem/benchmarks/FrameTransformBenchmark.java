@@ -0,0 +1,44 @@
+package solarsystem.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleFunction;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The per-frame world transform pass from display(), run without GL on synthetic
+ * scenes of growing size and depth, with circular orbits or with eccentric,
+ * inclined ones that go through the Kepler solver.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameTransformBenchmark {
+    private static final double FRAME_TIME = 1.0 / 60.0;
+
+    @Param({"100", "10000", "100000"})
+    public int bodies;
+
+    @Param({"2", "8"})
+    public int maxDepth;
+
+    @Param({"false", "true"})
+    public boolean elliptical;
+
+    private DoubleFunction<Object> update;
+    private double time;
+
+    @Setup
+    public void setup() {
+        update = Targets.create("frameTransforms", bodies, maxDepth, 42L, elliptical);
+    }
+
+    @Benchmark
+    public Object frame() {
+        time += FRAME_TIME;
+        return update.apply(time);
+    }
+}
@@ -0,0 +1,33 @@
+package solarsystem.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * One Barnes-Hut gravity step on synthetic scenes of growing size, using every
+ * core the common fork/join pool has.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GravityStepBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int bodies;
+
+    private Supplier<Object> step;
+
+    @Setup
+    public void setup() {
+        step = Targets.create("gravityStep", bodies, 4, 42L);
+    }
+
+    @Benchmark
+    public Object step() {
+        return step.get();
+    }
+}
@@ -0,0 +1,41 @@
+package solarsystem.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleFunction;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Batch ephemeris queries over synthetic scenes, scalar against the Vector API
+ * evaluator. Compare with FrameTransformBenchmark, which gets the same positions
+ * through full matrices.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class OrbitEvaluatorBenchmark {
+    private static final double FRAME_TIME = 1.0 / 60.0;
+
+    @Param({"10000", "1000000"})
+    public int bodies;
+
+    @Param({"false", "true"})
+    public boolean vector;
+
+    private DoubleFunction<Object> positions;
+    private double time;
+
+    @Setup
+    public void setup() {
+        positions = Targets.create("orbitPositions", bodies, 8, 42L, vector);
+    }
+
+    @Benchmark
+    public Object positions() {
+        time += FRAME_TIME;
+        return positions.apply(time);
+    }
+}
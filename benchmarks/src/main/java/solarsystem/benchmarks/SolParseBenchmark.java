@@ -0,0 +1,48 @@
+package solarsystem.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Loading synthetic scenes, from .sol text and from the compiled .solb form.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class SolParseBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int bodies;
+
+    @Param({"8"})
+    public int maxDepth;
+
+    @Param({"sol", "solb"})
+    public String format;
+
+    private String fileName;
+    private Supplier<Object> read;
+
+    @Setup
+    public void setup() {
+        fileName = Targets.create("writeScene", bodies, maxDepth, 42L, format.equals("solb"));
+        read = Targets.create("readScene", fileName);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(Paths.get(fileName));
+    }
+
+    @Benchmark
+    public Object read() {
+        return read.get();
+    }
+}
@@ -0,0 +1,32 @@
+package solarsystem.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Building a Sphere mesh at several tessellation levels.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SphereBenchmark {
+    @Param({"16", "48", "128", "512"})
+    public int prec;
+
+    private Supplier<Object> build;
+
+    @Setup
+    public void setup() {
+        build = Targets.create("sphere", prec);
+    }
+
+    @Benchmark
+    public Object construct() {
+        return build.get();
+    }
+}
@@ -0,0 +1,28 @@
+package solarsystem.benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Looks up the factories in the default-package BenchmarkTargets class by name.
+ * Only used from @Setup methods, never inside a measured method.
+ */
+final class Targets {
+    private Targets() {}
+
+    @SuppressWarnings("unchecked")
+    static <T> T create(String factory, Object... args) {
+        try {
+            for (Method method : Class.forName("BenchmarkTargets").getMethods()) {
+                if (method.getName().equals(factory) && method.getParameterCount() == args.length) {
+                    return (T) method.invoke(null, args);
+                }
+            }
+        } catch (ClassNotFoundException | IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        throw new IllegalArgumentException("No benchmark target named " + factory);
+    }
+}
@@ -0,0 +1,32 @@
+package solarsystem.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Converting a decoded image to flipped RGBA bytes with Utils.getRGBAPixelData.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Djava.awt.headless=true"})
+public class TextureDecodeBenchmark {
+    @Param({"512", "2048"})
+    public int size;
+
+    private Supplier<Object> convert;
+
+    @Setup
+    public void setup() {
+        convert = Targets.create("rgbaPixelData", size, 42L);
+    }
+
+    @Benchmark
+    public Object rgbaPixelData() {
+        return convert.get();
+    }
+}
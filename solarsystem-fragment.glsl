@@ -1,59 +1,81 @@
 #version 410
 
 in vec3 varyingNormal;
-in vec3 varyingLightDir;
 in vec3 varyingVertPos;
-in vec3 varyingHalfVector; // new input for Blinn-Phong
 
 uniform sampler2D s;
+uniform sampler2DArray layers; // every texture as one layer, used instead of s when useLayers is set
+uniform bool useLayers;
+
+// the clustered light list, see LightClusters
+uniform samplerBuffer lights;        // world position of each sun
+uniform usamplerBuffer clusters;     // first index and light count of each cluster
+uniform usamplerBuffer lightIndices; // the lights of every cluster, one after another
+
 in vec2 tc;
+flat in float shininess;
+flat in int isSun;
+flat in float layer;
+flat in int textureReady;
 
 out vec4 fragColor;
 
-struct PositionalLight {
-	vec4 ambient;  
-	vec4 diffuse;  
-	vec4 specular;  
-	vec3 position;
+layout (std140) uniform Frame {
+	mat4 v_matrix;
+	mat4 p_matrix;
+	vec4 eye; // camera position in world space
 };
 
+// shared by every light
+layout (std140) uniform Lighting {
+	vec4 ambient;
+	vec4 diffuse;
+	vec4 specular;
+	vec4 color;
+	float linAtt;
+	float cutoff;      // attenuation at the edge of a light's range, where it is faded out
+	float sliceScale;  // slice = log(view depth) * sliceScale + sliceBias
+	float sliceBias;
+	ivec4 clusterGrid; // tiles across, tiles up, depth slices, tile size in pixels
+};
 
-uniform float shininess;
-uniform float linAtt;
-uniform PositionalLight light;
+void main(void) {
+	// grey until the body's texture has been loaded
+	vec4 texel = vec4(0.5, 0.5, 0.5, 1.0);
+	if(textureReady == 1){
+		texel = useLayers ? texture(layers, vec3(tc, layer)) : texture(s, tc);
+	}
 
-uniform mat4 v_matrix;
-uniform int isSun;
-uniform vec4 color;
+	if(isSun == 1){
+		fragColor = texel;
+		return;
+	}
 
-void main(void) {
-	// normalize the light, normal, and view vectors:
-	vec3 L = normalize(varyingLightDir);
 	vec3 N = normalize(varyingNormal);
-	vec3 V = normalize(-v_matrix[3].xyz - varyingVertPos);
-	
-	// get the angle between the light and surface normal:
-	float cosTheta = dot(L,N);
-	
-	// halfway vector varyingHalfVector was computed in the vertex shader,
-	// and interpolated prior to reaching the fragment shader.
-	// It is copied into variable H here for convenience later.
-	vec3 H = normalize(varyingHalfVector);
-	
-	// get angle between the normal and the halfway vector
-	float cosPhi = dot(H,N);
-
-	// compute ADS contributions (per pixel):
-	vec3 ambient = light.ambient.xyz;
-	vec3 diffuse = light.diffuse.xyz  * max(cosTheta,0.0);
-	vec3 specular = light.specular.xyz * pow(max(cosPhi,0.0), shininess);
-
-	float dist = abs(distance(varyingVertPos,light.position));
-	float a = 1 /(dist * linAtt + 1);
+	vec3 V = normalize(eye.xyz - varyingVertPos);
 
-	if(isSun == 1){
-		fragColor = texture(s, tc);
-	}else{
-		fragColor = vec4(ambient + (diffuse*a), 1.0) * texture(s, tc) * color + vec4((specular*a),1.0);
+	// find this fragment's cluster
+	ivec2 tile = min(ivec2(gl_FragCoord.xy) / clusterGrid.w, clusterGrid.xy - 1);
+	float viewDepth = -(v_matrix * vec4(varyingVertPos, 1.0)).z;
+	int slice = clamp(int(floor(log(viewDepth) * sliceScale + sliceBias)), 0, clusterGrid.z - 1);
+	uvec2 cluster = texelFetch(clusters, (slice * clusterGrid.y + tile.y) * clusterGrid.x + tile.x).xy;
+
+	// Blinn-Phong from every light in the cluster
+	vec3 diffuseSum = vec3(0.0);
+	vec3 specularSum = vec3(0.0);
+	for(uint k = 0u; k < cluster.y; k++){
+		vec3 lightPos = texelFetch(lights, int(texelFetch(lightIndices, int(cluster.x + k)).r)).xyz;
+		vec3 toLight = lightPos - varyingVertPos;
+		vec3 L = normalize(toLight);
+		vec3 H = normalize(L + V);
+
+		// attenuation, taken down to exactly 0 at the light's range so cluster edges never show
+		float a = 1 / (length(toLight) * linAtt + 1);
+		a = max(a - cutoff, 0.0) / (1.0 - cutoff);
+
+		diffuseSum += diffuse.xyz * max(dot(L,N), 0.0) * a;
+		specularSum += specular.xyz * pow(max(dot(H,N), 0.0), shininess) * a;
 	}
+
+	fragColor = vec4(ambient.xyz + diffuseSum, 1.0) * texel * color + vec4(specularSum, 1.0);
 }
@@ -3,37 +3,36 @@
 layout (location = 0) in vec3 vertPos;
 layout (location = 2) in vec3 vertNormal;
 layout (location = 1) in vec2 tex_coord;
+
+// per-instance attributes, one set per body
+layout (location = 3) in mat4 m_matrix;
+layout (location = 7) in mat4 norm_matrix;
+layout (location = 11) in vec4 material; // shininess, isSun, texture index, texture ready
+
 out vec2 tc;
+flat out float shininess;
+flat out int isSun;
+flat out float layer;
+flat out int textureReady;
 
 out vec3 varyingNormal;
-out vec3 varyingLightDir;
 out vec3 varyingVertPos;
-out vec3 varyingHalfVector; // new output for Blinn-Phong
 
-struct PositionalLight {
-	vec4 ambient;
-	vec4 diffuse;
-	vec4 specular;
-	vec3 position;
+layout (std140) uniform Frame {
+	mat4 v_matrix;
+	mat4 p_matrix;
+	vec4 eye; // camera position in world space
 };
 
-uniform PositionalLight light;
-uniform float shininess;
-uniform mat4 m_matrix;
-uniform mat4 v_matrix;
-uniform mat4 p_matrix;
-uniform mat4 norm_matrix;
-uniform sampler2D s;
-uniform int isSun;
-
 void main(void) {
+	// lights are per fragment now, looked up in the fragment's cluster
 	varyingVertPos = (m_matrix * vec4(vertPos,1.0)).xyz;
-	varyingLightDir = light.position - varyingVertPos;
 	varyingNormal = (norm_matrix * vec4(vertNormal,1.0)).xyz;
 
-	// this is the only added line, for Blinn-Phong
-	varyingHalfVector = normalize(normalize(varyingLightDir) + normalize(-varyingVertPos)).xyz;
-
 	gl_Position = p_matrix * v_matrix * m_matrix * vec4(vertPos,1.0);
 	tc = tex_coord;
+	shininess = material.x;
+	isSun = int(material.y);
+	layer = material.z;
+	textureReady = int(material.w);
 }
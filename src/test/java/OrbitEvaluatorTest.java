@@ -0,0 +1,107 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+/**
+ * OrbitEvaluator against the renderer's matrix math, and the Vector API evaluator
+ * against the scalar one. Surefire starts the JVM with jdk.incubator.vector, so
+ * OrbitEvaluator.create really returns the vector evaluator here.
+ */
+class OrbitEvaluatorTest {
+    private static final int TIMES = 1000;
+    // SceneGraph works in float, so a few float ulps at the sample scene's distances
+    // of up to 60; the largest deviation is about 4.4e-6
+    private static final double SCENE_GRAPH_TOLERANCE = 1e-5;
+    // both evaluators work in double and differ only in the order of a few operations
+    private static final double SCALAR_TOLERANCE = 1e-9;
+
+    @Test
+    void matchesSceneGraphOnTheSampleScene() throws Exception {
+        SceneGraph sceneGraph = sceneGraph(SolFile.read("SolarSystem.sol").getSolarBodies());
+        OrbitEvaluator vector = OrbitEvaluator.create(sceneGraph);
+        OrbitEvaluator scalar = new OrbitEvaluator(sceneGraph);
+        assertTrue(vector.isVectorized(), "the vector evaluator needs --add-modules jdk.incubator.vector");
+        Random random = new Random(1);
+        for (int k = 0; k < TIMES; k++) {
+            double t = (random.nextDouble() - 0.5) * 2e4;
+            assertEquals(0, deviationFromSceneGraph(vector, sceneGraph, t), SCENE_GRAPH_TOLERANCE, "vector at t " + t);
+            assertEquals(0, deviationFromSceneGraph(scalar, sceneGraph, t), SCENE_GRAPH_TOLERANCE, "scalar at t " + t);
+        }
+    }
+
+    /** Enough bodies per level to fill whole vectors, half of them on elliptical orbits. */
+    @Test
+    void vectorMatchesScalarOnAGeneratedScene() {
+        SceneGraph sceneGraph = sceneGraph(generatedScene(1000, 3, 2));
+        OrbitEvaluator vector = OrbitEvaluator.create(sceneGraph);
+        OrbitEvaluator scalar = new OrbitEvaluator(sceneGraph);
+        assertTrue(vector.isVectorized(), "the vector evaluator needs --add-modules jdk.incubator.vector");
+        int n = sceneGraph.size();
+        double[] x = new double[n], y = new double[n], z = new double[n];
+        double[] sx = new double[n], sy = new double[n], sz = new double[n];
+        Random random = new Random(3);
+        for (int k = 0; k < TIMES; k++) {
+            double t = (random.nextDouble() - 0.5) * 2e4;
+            vector.positionsAt(t, x, y, z);
+            scalar.positionsAt(t, sx, sy, sz);
+            for (int i = 0; i < n; i++) {
+                assertEquals(0, distance(x[i] - sx[i], y[i] - sy[i], z[i] - sz[i]), SCALAR_TOLERANCE,
+                        "body " + i + " at t " + t);
+            }
+        }
+    }
+
+    @Test
+    void rejectsInclinedOrbits() {
+        SolarBody sun = new Sun("sun.jpeg", 5, 2.8f);
+        SolarBody planet = new Planet("earth.jpeg", 2, 1, 20, 36.5f, 3, sun, 0, 5, 0, 0);
+        SceneGraph sceneGraph = sceneGraph(new SolarBody[] {sun, planet});
+        assertFalse(OrbitEvaluator.supports(sceneGraph));
+        assertThrows(IllegalArgumentException.class, () -> new OrbitEvaluator(sceneGraph));
+    }
+
+    /** The scene graph of a window showing these bodies, with the same body offset display() draws with. */
+    private static SceneGraph sceneGraph(SolarBody[] bodies) {
+        return new Simulation(bodies, new Vector3f(0, 0, -1), Simulation.DEFAULT_TIME_STEP).getSceneGraph();
+    }
+
+    /** A sun and random planets no more than maxDepth levels below it, none of them inclined. */
+    private static SolarBody[] generatedScene(int numBodies, int maxDepth, long seed) {
+        Random random = new Random(seed);
+        SolarBody[] bodies = new SolarBody[numBodies];
+        int[] depths = new int[numBodies];
+        bodies[0] = new Sun("sun.jpeg", 5, 2.8f);
+        for (int i = 1; i < numBodies; i++) {
+            int parent;
+            do {
+                parent = random.nextInt(i);
+            } while (depths[parent] >= maxDepth);
+            depths[i] = depths[parent] + 1;
+            float eccentricity = random.nextBoolean() ? 0.9f * random.nextFloat() : 0;
+            bodies[i] = new Planet("planet.jpeg", 1, 1, 2 + 50 * random.nextFloat(), 1 + 100 * random.nextFloat(), 3,
+                    bodies[parent], eccentricity, 0, 360 * random.nextFloat(), 360 * random.nextFloat());
+        }
+        return bodies;
+    }
+
+    private static double deviationFromSceneGraph(OrbitEvaluator evaluator, SceneGraph sceneGraph, double t) {
+        int n = evaluator.size();
+        double[] x = new double[n], y = new double[n], z = new double[n];
+        evaluator.positionsAt(t, x, y, z);
+        sceneGraph.update(t);
+        float[] models = sceneGraph.getModelMatrices();
+        double worst = 0;
+        for (int i = 0; i < n; i++) {
+            int m = i * SceneGraph.MATRIX_SIZE + 12;
+            worst = Math.max(worst, distance(x[i] - models[m], y[i] - models[m + 1], z[i] - models[m + 2]));
+        }
+        return worst;
+    }
+
+    private static double distance(double dx, double dy, double dz) {
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+}
@@ -0,0 +1,90 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * SolParser.parseNumber has to give exactly the float Float.parseFloat gives, bit
+ * for bit, whether or not a string takes its fast path.
+ */
+class SolParserTest {
+    private static final int STRINGS = 1_000_000;
+
+    /** Random plain decimals, from short ones the fast path takes to long ones it leaves alone. */
+    @Test
+    void plainDecimalsMatchParseFloat() {
+        Random random = new Random(1);
+        StringBuilder text = new StringBuilder();
+        for (int n = 0; n < STRINGS; n++) {
+            text.setLength(0);
+            appendSign(random, text);
+            int whole = random.nextInt(9);
+            int fraction = random.nextInt(17);
+            for (int d = 0; d < whole; d++) {
+                text.append((char) ('0' + random.nextInt(10)));
+            }
+            if (fraction > 0 || whole == 0) {
+                text.append('.');
+                for (int d = 0; d < Math.max(1, fraction); d++) {
+                    text.append((char) ('0' + random.nextInt(10)));
+                }
+            }
+            assertParsesLikeParseFloat(text.toString());
+        }
+    }
+
+    /**
+     * Decimals a few digits either side of a point halfway between two floats,
+     * where rounding to a double first and then to a float goes wrong.
+     */
+    @Test
+    void nearHalfwayDecimalsMatchParseFloat() {
+        Random random = new Random(2);
+        StringBuilder text = new StringBuilder();
+        for (int n = 0; n < STRINGS; n++) {
+            text.setLength(0);
+            appendSign(random, text);
+            float below = (float) Math.pow(10, 6 * random.nextDouble() - 2);
+            BigDecimal halfway = new BigDecimal(below).add(new BigDecimal(Math.nextUp(below)))
+                    .divide(BigDecimal.valueOf(2));
+            text.append(halfway.round(new MathContext(6 + random.nextInt(12))).toPlainString());
+            assertParsesLikeParseFloat(text.toString());
+        }
+    }
+
+    @Test
+    void otherSyntaxGoesThroughParseFloat() {
+        String[] texts = {"0", "-0", "+0.0", "5.", ".5", "007", "1234567", "12345678", "0.0000000001",
+                "0.00000000001", "1e3", "-2.5E-4", "3.4028235e38", "Infinity", "-Infinity", "NaN", "0x1p3"};
+        for (String text : texts) {
+            assertParsesLikeParseFloat(text);
+        }
+    }
+
+    @Test
+    void rejectsWhatParseFloatRejects() {
+        for (String text : new String[] {".", "-", "1.2.3", "12a", "--1"}) {
+            byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+            assertThrows(NumberFormatException.class, () -> SolParser.parseNumber(bytes, 0, bytes.length), text);
+        }
+    }
+
+    private static void appendSign(Random random, StringBuilder text) {
+        if (random.nextInt(4) == 0) {
+            text.append(random.nextBoolean() ? '-' : '+');
+        }
+    }
+
+    private static void assertParsesLikeParseFloat(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        float parsed = SolParser.parseNumber(bytes, 0, bytes.length);
+        float expected = Float.parseFloat(text);
+        if (Float.floatToRawIntBits(parsed) != Float.floatToRawIntBits(expected)) {
+            fail(text + ": " + parsed + ", Float.parseFloat gives " + expected);
+        }
+    }
+}